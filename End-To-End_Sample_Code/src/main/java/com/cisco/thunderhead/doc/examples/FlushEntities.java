@@ -7,7 +7,17 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FlushEntities {
     // Logger
@@ -16,8 +26,30 @@ public class FlushEntities {
     // Maximum time, in seconds, to wait for flush to complete before throwing an exception
     private final static int MAX_FLUSH_WAIT_IN_SECONDS = 30;
 
+    // Maximum time, in seconds, to wait for all of the flushes started by flushAllEntities to complete
+    private final static int MAX_FLUSH_ALL_WAIT_IN_SECONDS = 90;
+
+    // The interval at which to poll the status of a flush starts at this, and doubles while the flush is still going...
+    private final static int MIN_POLL_INTERVAL_IN_SECONDS = 1;
+
+    // ...up to this
+    private final static int MAX_POLL_INTERVAL_IN_SECONDS = 16;
+
+    // Daemon threads, so that a poll which is stuck in the SDK can't keep the JVM from exiting
+    private final static ThreadFactory POLLER_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "flush-poller-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
     /**
-     * Flush all entities (pods, request, customers) at once and wait for each flush to complete.
+     * Flush all entities (pods, request, customers) at once and wait for the flushes to complete.
+     * The flushes are waited for at the same time, each on its own thread, with a single deadline for all of them.
      * Note: Flush is only supported in lab mode.
      *
      * @param contextServiceClient Context Service Client
@@ -27,38 +59,94 @@ public class FlushEntities {
     public static void flushAllEntities(ContextServiceClient contextServiceClient) throws InterruptedException, TimeoutException {
         LOGGER.info("Flushing workgroup data...");
 
-        contextServiceClient.flush(ContextObject.Types.DETAIL + ".comment");
-        contextServiceClient.flush(ContextObject.Types.DETAIL + ".feedback");
-        contextServiceClient.flush(ContextObject.Types.POD);
-        contextServiceClient.flush(ContextObject.Types.REQUEST);
-        contextServiceClient.flush(ContextObject.Types.CUSTOMER);
+        List<String> contextObjectTypes = Arrays.asList(ContextObject.Types.DETAIL + ".comment", ContextObject.Types.DETAIL + ".feedback",
+                ContextObject.Types.POD, ContextObject.Types.REQUEST, ContextObject.Types.CUSTOMER);
+        for (String contextObjectType : contextObjectTypes) {
+            contextServiceClient.flush(contextObjectType);
+        }
 
-        waitForFlushComplete(contextServiceClient, ContextObject.Types.DETAIL + ".comment");
-        waitForFlushComplete(contextServiceClient, ContextObject.Types.DETAIL + ".feedback");
-        waitForFlushComplete(contextServiceClient, ContextObject.Types.POD);
-        waitForFlushComplete(contextServiceClient, ContextObject.Types.CUSTOMER);
-        waitForFlushComplete(contextServiceClient, ContextObject.Types.REQUEST);
+        waitForFlushesComplete(contextServiceClient, contextObjectTypes, MAX_FLUSH_ALL_WAIT_IN_SECONDS);
 
         LOGGER.info("Flushed workgroup data.");
     }
 
     /**
-     * waitForFlushComplete
+     * Wait for the flushes of several types to complete, polling each of them on its own thread.
      * @param contextServiceClient the contextServiceClient
-     * @param contextObjectType the type of the ContextObject to be flushed
+     * @param contextObjectTypes the types of the ContextObjects being flushed
+     * @param maxWaitInSeconds the time allowed for all of the flushes to complete
+     * @throws InterruptedException
      * @throws TimeoutException
      */
-    private static void waitForFlushComplete(ContextServiceClient contextServiceClient, String contextObjectType) throws TimeoutException {
-        FlushStatusBean status;// Use SDK to wait for flush to complete.  In this case, allow up to 30 seconds...
-        status = contextServiceClient.waitForFlushComplete(contextObjectType, MAX_FLUSH_WAIT_IN_SECONDS);
-        if (status.isCompleted()) {
-            LOGGER.info("Flush of " + contextObjectType + "s complete. Flushed " + status.getNumberFlushed() + " " + contextObjectType + "s.");
-        } else {
-            LOGGER.info("Flush of " + contextObjectType + "s not complete. Flushed " + status.getNumberFlushed() + " " + contextObjectType + "s." + (!StringUtils.isEmpty(status.getMessage()) ? status.getMessage() : ""));
-            throw new TimeoutException();
+    private static void waitForFlushesComplete(ContextServiceClient contextServiceClient, List<String> contextObjectTypes, int maxWaitInSeconds) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + maxWaitInSeconds * 1000L;
+        ExecutorService pollers = Executors.newFixedThreadPool(contextObjectTypes.size(), POLLER_THREAD_FACTORY);
+        try {
+            List<Future<FlushStatusBean>> polls = new ArrayList<>();
+            for (String contextObjectType : contextObjectTypes) {
+                polls.add(pollers.submit(pollFlushStatus(contextServiceClient, contextObjectType, deadline)));
+            }
+            for (Future<FlushStatusBean> poll : polls) {
+                try {
+                    poll.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        throw (TimeoutException) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pollers.shutdownNow();
         }
     }
 
+    /**
+     * Returns a task which polls the status of a flush until it completes, logging the number flushed so far.
+     * Each poll waits for the flush to complete for a while; the wait doubles each time the flush is still going,
+     * so a large workgroup isn't polled too often, but never goes past the deadline.
+     * The Import/Export sample's FlushMonitor polls the same way; this copy is kept because each sample builds on
+     * its own, with only the SDK as a dependency.
+     * @param contextServiceClient the contextServiceClient
+     * @param contextObjectType the type of the ContextObject being flushed
+     * @param deadline the time by which the flush must complete, in milliseconds
+     * @return the task, which returns the final status, or throws a TimeoutException
+     */
+    private static Callable<FlushStatusBean> pollFlushStatus(final ContextServiceClient contextServiceClient, final String contextObjectType, final long deadline) {
+        return new Callable<FlushStatusBean>() {
+            @Override
+            public FlushStatusBean call() throws Exception {
+                int intervalInSeconds = MIN_POLL_INTERVAL_IN_SECONDS;
+                int lastFlushed = 0;
+                while (true) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        LOGGER.info("Flush of " + contextObjectType + "s not complete. Flushed " + lastFlushed + " " + contextObjectType + "s.");
+                        throw new TimeoutException("Flush of " + contextObjectType + "s not complete");
+                    }
+                    int waitInSeconds = (int) Math.max(MIN_POLL_INTERVAL_IN_SECONDS, Math.min(intervalInSeconds, (remaining + 999) / 1000));
+                    FlushStatusBean status = contextServiceClient.waitForFlushComplete(contextObjectType, waitInSeconds);
+                    if (status.isCompleted()) {
+                        LOGGER.info("Flush of " + contextObjectType + "s complete. Flushed " + status.getNumberFlushed() + " " + contextObjectType + "s.");
+                        return status;
+                    }
+                    if (status.getNumberFlushed() != lastFlushed) {
+                        lastFlushed = status.getNumberFlushed();
+                        LOGGER.info("Flush of " + contextObjectType + "s in progress. Flushed " + lastFlushed + " " + contextObjectType + "s so far."
+                                + (!StringUtils.isEmpty(status.getMessage()) ? " " + status.getMessage() : ""));
+                    }
+                    intervalInSeconds = Math.min(intervalInSeconds * 2, MAX_POLL_INTERVAL_IN_SECONDS);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        };
+    }
+
     /**
      * Note: flush is only supported in "lab" (not "production") mode.
      *
@@ -118,20 +206,14 @@ public class FlushEntities {
      * flush context object
      * @param contextServiceClient
      * @param contextObjectType
+     * @throws InterruptedException
      * @throws TimeoutException
      */
-    private static void flushContextObject(ContextServiceClient contextServiceClient, String contextObjectType) throws TimeoutException {
+    private static void flushContextObject(ContextServiceClient contextServiceClient, String contextObjectType) throws InterruptedException, TimeoutException {
         LOGGER.info("Flushing " + contextObjectType + " data...");
         contextServiceClient.flush(contextObjectType);
 
-        FlushStatusBean status = null;
-        status = contextServiceClient.waitForFlushComplete(contextObjectType, MAX_FLUSH_WAIT_IN_SECONDS);
-        if (status.isCompleted()) {
-            LOGGER.info("Flush of "  + contextObjectType + " requests complete. Flushed " + status.getNumberFlushed() + contextObjectType + ".");
-        } else {
-            LOGGER.info("Flush of requests not complete. Flushed " + status.getNumberFlushed() + contextObjectType + "."  + (!StringUtils.isEmpty(status.getMessage()) ? status.getMessage() : ""));
-            throw new TimeoutException();
-        }
+        waitForFlushesComplete(contextServiceClient, Arrays.asList(contextObjectType), MAX_FLUSH_WAIT_IN_SECONDS);
 
         LOGGER.info("Flushed " + contextObjectType + " data.");
     }
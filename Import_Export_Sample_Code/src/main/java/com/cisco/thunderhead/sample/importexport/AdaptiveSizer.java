@@ -0,0 +1,156 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Chooses how many entities to ask Context Service for per request.
+ * The size grows by a quarter after each request that completes within the target latency, shrinks by a
+ * quarter after a request that takes longer, and is halved when Context Service times out or throttles the
+ * request.  When adaptive sizing is disabled, the initial size is always used.
+ */
+class AdaptiveSizer {
+    private static Logger LOGGER = LoggerFactory.getLogger(AdaptiveSizer.class);
+
+    private final String name;
+    private final boolean adaptive;
+    private final int min;
+    private final int max;
+    private final long targetLatencyMillis;
+    private int size;
+
+    // for the throughput summary
+    private long requests = 0;
+    private long entities = 0;
+    private long totalLatencyMillis = 0;
+    private int smallest;
+    private int largest;
+
+    /**
+     * @param name what is being sized, for logging
+     * @param adaptive whether to adapt the size, or always use the initial size
+     * @param initial the size to start with
+     * @param min smallest size to use
+     * @param max largest size to use
+     * @param targetLatencyMillis the size is grown while requests take less than this
+     */
+    AdaptiveSizer(String name, boolean adaptive, int initial, int min, int max, long targetLatencyMillis) {
+        this.name = name;
+        this.adaptive = adaptive;
+        this.min = min;
+        this.max = max;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.size = initial;
+        this.smallest = initial;
+        this.largest = initial;
+    }
+
+    /**
+     * The number of entities to ask for in the next request.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Makes a request, and adjusts the size according to how long it took or how it failed.
+     * @param requestedSize the number of entities asked for by the request
+     * @param request the request
+     */
+    <T> T request(int requestedSize, Supplier<T> request) {
+        long start = System.currentTimeMillis();
+        try {
+            T result = request.get();
+            succeeded(requestedSize, System.currentTimeMillis() - start);
+            return result;
+        } catch (RuntimeException e) {
+            if (isThrottled(e)) {
+                throttled(requestedSize);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Records the number of entities received, for the throughput summary.
+     */
+    synchronized void received(int count) {
+        entities += count;
+    }
+
+    /**
+     * Describes the sizes chosen and the throughput achieved over the given time.
+     */
+    synchronized String summary(long elapsedMillis) {
+        return String.format(Locale.ROOT, "%s: size %d (range %d-%d), %d requests averaging %d ms, %.1f entities/sec",
+                name, size, smallest, largest, requests, requests > 0 ? totalLatencyMillis / requests : 0,
+                elapsedMillis > 0 ? entities * 1000.0 / elapsedMillis : 0.0);
+    }
+
+    private synchronized void succeeded(int requestedSize, long latencyMillis) {
+        requests++;
+        totalLatencyMillis += latencyMillis;
+        if (!adaptive) {
+            return;
+        }
+
+        // only requests made at the current size say anything about it
+        if (latencyMillis <= targetLatencyMillis && requestedSize >= size) {
+            resize(size + Math.max(1, size / 4));
+        } else if (latencyMillis > targetLatencyMillis && requestedSize <= size) {
+            resize(size - Math.max(1, size / 4));
+        }
+    }
+
+    private synchronized void throttled(int requestedSize) {
+        requests++;
+        if (adaptive && requestedSize <= size) {
+            resize(size / 2);
+        }
+    }
+
+    private void resize(int newSize) {
+        newSize = Math.max(min, Math.min(max, newSize));
+        if (newSize != size) {
+            LOGGER.info("Changing " + name + " from " + size + " to " + newSize);
+            size = newSize;
+            smallest = Math.min(smallest, size);
+            largest = Math.max(largest, size);
+        }
+    }
+
+    /**
+     * Whether the request failed because it timed out, so that a smaller request may succeed.  Only the type of
+     * the exception is looked at, not its message, which may contain any ID or value.
+     */
+    static boolean isThrottled(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof ApiException && ((ApiException) cause).getError() != null
+                    && ApiErrorType.TIMEOUT_REQUEST.equals(((ApiException) cause).getError().getErrorType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a request which returned the given HTTP status was throttled or timed out by Context Service.
+     */
+    static boolean isThrottled(int status) {
+        return status == 429 || status == 503 || status == 504;
+    }
+}
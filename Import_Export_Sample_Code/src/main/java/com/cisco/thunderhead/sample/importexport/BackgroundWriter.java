@@ -0,0 +1,102 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes and writes chunks of entities to an EntityWriter on a thread of its own, so that the threads
+ * fetching the entities can fetch the next chunk while the previous one is being written.
+ * At most a fixed number of chunks may be waiting to be written; once that many are waiting, the fetching
+ * threads are blocked until the writer catches up, so the memory used stays bounded.
+ */
+class BackgroundWriter {
+    // marks the end of the chunks
+    private static final List<Object> END = Collections.emptyList();
+
+    private final EntityWriter writer;
+    private final BlockingQueue<List<?>> chunks;
+    private final ExecutorService thread;
+    private volatile Exception failure;
+
+    /**
+     * @param writer the writer to write the entities with
+     * @param name name of the writer thread
+     * @param depth maximum number of chunks waiting to be written
+     */
+    BackgroundWriter(EntityWriter writer, String name, int depth) {
+        this.writer = writer;
+        this.chunks = new ArrayBlockingQueue<>(depth);
+        this.thread = Executors.newSingleThreadExecutor(Utils.newThreadFactory(name, false));
+        thread.execute(this::run);
+    }
+
+    /**
+     * Queues a chunk of entities to be written, waiting while the queue is full.
+     * @throws IOException an earlier chunk couldn't be written
+     */
+    void write(List<?> entities) throws IOException {
+        checkFailure();
+        try {
+            chunks.put(entities);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write entities");
+        }
+    }
+
+    /**
+     * Waits for the queued chunks to be written, then stops the writer thread.  The EntityWriter is left open.
+     * @throws IOException a chunk couldn't be written
+     */
+    void finish() throws IOException {
+        try {
+            chunks.put(END);
+            thread.shutdown();
+            thread.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            thread.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for entities to be written");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the writer thread without waiting for the queued chunks to be written.
+     */
+    void stop() {
+        thread.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            List<?> entities;
+            while ((entities = chunks.take()) != END) {
+                // once writing has failed, keep draining the queue so that the fetching threads aren't blocked
+                if (failure == null) {
+                    try {
+                        writer.writeEntities(entities);
+                    } catch (IOException | RuntimeException e) {
+                        // e.g. a serialization error, which mustn't stop the thread before the queue is drained
+                        failure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write entities", failure);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs create tasks on a fixed number of worker threads.
+ * The number of objects that have been read but not yet created is bounded, so that a fast reader
+ * cannot load an entire export into memory while the workers are waiting on Context Service.
+ * Tasks which have to be retried wait on a scheduler thread rather than on a worker, and the reader is blocked
+ * while too many are waiting.
+ */
+class CreatePipeline {
+
+    private static Logger LOGGER = Logger.getLogger("importexport");
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retries;
+    private final Semaphore permits;
+    private final int capacity;
+    private int inFlight = 0;
+    private int waitingRetries = 0;
+
+    /**
+     * @param concurrency number of worker threads issuing creates
+     * @param capacity maximum number of objects queued or in flight at once
+     * @param virtualThreads use virtual threads for the workers if the JVM supports them
+     */
+    CreatePipeline(int concurrency, int capacity, boolean virtualThreads) {
+        this.permits = new Semaphore(capacity);
+        this.capacity = capacity;
+        this.workers = Executors.newFixedThreadPool(concurrency, Utils.newThreadFactory("import-worker", virtualThreads));
+        this.retries = Executors.newSingleThreadScheduledExecutor(Utils.newThreadFactory("import-retry", false));
+    }
+
+    /**
+     * Queues a task, blocking the reader while the queue is full, or while too many tasks are waiting to be retried.
+     */
+    void submit(Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            synchronized (this) {
+                while (waitingRetries >= capacity) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            permits.release();
+            throw e;
+        }
+        execute(task, true);
+    }
+
+    /**
+     * Queues a task to be run again once the delay has passed, without blocking.  This is for a task running on a
+     * worker thread which has to be retried.  The task counts as in flight until it has been run again.
+     */
+    void retryLater(Runnable task, long delayMillis) {
+        synchronized (this) {
+            inFlight++;
+            waitingRetries++;
+        }
+        try {
+            retries.schedule(() -> {
+                synchronized (this) {
+                    waitingRetries--;
+                    notifyAll();
+                }
+                try {
+                    execute(task, false);
+                } finally {
+                    finished(false);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                waitingRetries--;
+            }
+            finished(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a task without waiting for room in the queue.  This is for tasks queued by the worker threads
+     * themselves, which must never block; the caller is responsible for bounding the number of such tasks.
+     */
+    void submitWithoutBlocking(Runnable task) {
+        execute(task, false);
+    }
+
+    /**
+     * The number of tasks queued, running or waiting to be retried.
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The number of tasks waiting to be retried.
+     */
+    synchronized int getWaitingRetries() {
+        return waitingRetries;
+    }
+
+    /**
+     * The number of tasks which can be submitted before the reader is blocked.
+     */
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Waits for every task submitted so far to finish.  The pipeline can still be used afterwards.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (inFlight > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Waits for the queued tasks to finish, then stops the worker threads.
+     */
+    void shutdown() throws InterruptedException {
+        awaitCompletion();
+        retries.shutdown();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void execute(Runnable task, boolean releasePermit) {
+        synchronized (this) {
+            inFlight++;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Unexpected exception in import worker", e);
+                } finally {
+                    finished(releasePermit);
+                }
+            });
+        } catch (RuntimeException e) {
+            finished(releasePermit);
+            throw e;
+        }
+    }
+
+    private void finished(boolean releasePermit) {
+        if (releasePermit) {
+            permits.release();
+        }
+        synchronized (this) {
+            if (--inFlight == 0) {
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DeltaCompactor: Merges the delta sets written by Export --incremental into a single full export, which holds the
+ * latest version of each entity.  No connection to Context Service is needed.
+ *
+ * Program arguments :
+ * -b, --binary          If set, writes a binary snapshot file for each type instead of JSON arrays (disabled by default)
+ * -d, --deleteExisting  If set, overwrites existing files in the output directory (disabled by default)
+ * -i, --input           Specify the directory of the incremental export, holding export-state.json and the delta sets
+ * -o, --output          Specify the output directory
+ * -p, --pretty          If set, pretty prints the output json (disabled by default)
+ *
+ * The delta sets are read newest first, and each entity is only written the first time its ID is found, so an
+ * entity which changed several times is written as it was last exported.  Delta sets left incomplete by a failed
+ * export are ignored.  The output can be imported with the Import sample as usual.
+ */
+public class DeltaCompactor {
+    private static Logger LOGGER = LoggerFactory.getLogger(DeltaCompactor.class);
+
+    private static final String[] TYPES = {"pod", "customer", "request"};
+
+    public static void main(String args[]) throws Exception {
+        Arguments arguments = new Arguments();
+        arguments.parseArguments(args);
+        compact(Paths.get(arguments.inputDir), Paths.get(arguments.outputDir), arguments.binary, arguments.pretty, arguments.deleteExisting);
+    }
+
+    /**
+     * Merges the complete delta sets in the input directory.
+     * @param binary whether to write snapshots, or JSON arrays
+     * @return the number of entities written
+     */
+    static int compact(Path inputDir, Path outputDir, boolean binary, boolean pretty, boolean deleteExisting) throws IOException {
+        ExportState state = ExportState.load(inputDir);
+        List<Path> deltas = ExportState.deltaDirs(inputDir, state.getLastDelta());
+        if (deltas.isEmpty()) {
+            throw new FileNotFoundException("No complete delta sets found in " + inputDir);
+        }
+        Collections.reverse(deltas);
+        LOGGER.info("Compacting " + deltas.size() + " delta sets from " + inputDir);
+
+        Gson gson = CSGsonFactory.getCSJson();
+        int total = 0;
+        for (String type : TYPES) {
+            // IDs of the entities already written from a newer delta set
+            UUIDSet ids = new UUIDSet();
+            int superseded = 0;
+            try (EntityWriter writer = binary ? new SnapshotWriter(type, outputDir, deleteExisting) : new JsonArrayWriter(type, outputDir, pretty, deleteExisting)) {
+                for (Path delta : deltas) {
+                    for (Path file : Import.findInputFiles(delta, type)) {
+                        try (ElementReader reader = Import.openReader(file, 0)) {
+                            ElementReader.Element element;
+                            while ((element = reader.next()) != null) {
+                                ContextObject entity = element.toContextObject(gson);
+                                if (entity.getId() == null || ids.add(entity.getId())) {
+                                    writer.writeEntity(entity);
+                                } else {
+                                    superseded++;
+                                }
+                            }
+                        }
+                    }
+                }
+                LOGGER.info("Compacted " + writer.getNumberOfEntities() + " " + type + " entities, skipping " + superseded + " older versions");
+                total += writer.getNumberOfEntities();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Command line argument specifications
+     */
+    static class Arguments {
+        @Parameter(names = {"-i", "--input"}, description = "Specify the directory of the incremental export", required = true)
+        String inputDir;
+
+        @Parameter(names = {"-o", "--output"}, description = "Specify the output directory", required = true)
+        String outputDir;
+
+        @Parameter(names = {"-b", "--binary"}, description = "Write a binary snapshot file for each type, instead of JSON arrays (Default: false)", required = false)
+        boolean binary = false;
+
+        @Parameter(names = {"-p", "--pretty"}, description = "Specify pretty print output (Default: false)", required = false)
+        boolean pretty = false;
+
+        @Parameter(names = {"-d", "--deleteExisting"}, description = "Overwrite existing files in the output directory (Default: false)", required = false)
+        boolean deleteExisting = false;
+
+        /**+
+         * parseArguments : parse the arguments using JCommander
+         * @param args
+         */
+        void parseArguments(String args[]) {
+            try {
+                new JCommander(this, args);
+
+                if (binary && pretty) {
+                    throw new ParameterException("binary cannot be used with pretty");
+                }
+
+                if (!new File(inputDir, ExportState.FILE_NAME).isFile()) {
+                    throw new ParameterException("Input directory " + inputDir + " does not hold an incremental export");
+                }
+
+                if (!new File(outputDir).isDirectory()) {
+                    throw new ParameterException("Output directory " + outputDir + " does not exist");
+                }
+
+                if (Paths.get(inputDir).toAbsolutePath().normalize().equals(Paths.get(outputDir).toAbsolutePath().normalize())) {
+                    throw new ParameterException("The output directory must not be the input directory");
+                }
+            } catch (ParameterException e) {
+                // Display usage - this will catch the case where no args are specified as well as the case where required args are missing
+                JCommander jCommander = new JCommander(this);
+                jCommander.usage();
+                throw (e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the exported objects of a file one at a time, without parsing them.
+ * The byte offset of every object in the file is tracked, so that reading can later be restarted from any object.
+ */
+interface ElementReader extends Closeable {
+
+    /**
+     * Returns the next object in the file, or null once the end of the file has been reached.
+     */
+    Element next() throws IOException;
+
+    /**
+     * A single object read from the file, with its location in the file.
+     */
+    class Element {
+        private final long start;
+        private final long end;
+        private final byte[] json;
+
+        Element(long start, long end, byte[] json) {
+            this.start = start;
+            this.end = end;
+            this.json = json;
+        }
+
+        /**
+         * Byte offset of the first character of the object.
+         */
+        long getStart() {
+            return start;
+        }
+
+        /**
+         * Byte offset just past the last character of the object.
+         */
+        long getEnd() {
+            return end;
+        }
+
+        /**
+         * The object's JSON.  The files are written and read using the platform's default encoding.
+         */
+        String getJson() {
+            return new String(json, Charset.defaultCharset());
+        }
+
+        /**
+         * Deserializes the object.
+         */
+        ContextObject toContextObject(Gson gson) {
+            return gson.fromJson(getJson(), ContextObject.class);
+        }
+    }
+}
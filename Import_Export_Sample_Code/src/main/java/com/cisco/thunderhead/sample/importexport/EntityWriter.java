@@ -0,0 +1,30 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes exported entities to files over time, instead of needing to hold all of them in memory.
+ * Implementations may be shared between threads.
+ */
+interface EntityWriter extends Closeable {
+
+    /**
+     * Writes a single entity.
+     */
+    <T> void writeEntity(T jsonObject) throws IOException;
+
+    /**
+     * Writes each entity in the list.
+     */
+    <T> void writeEntities(List<T> jsonList) throws IOException;
+
+    /**
+     * Finishes writing the files, then closes them.
+     */
+    @Override
+    void close() throws IOException;
+
+    int getNumberOfEntities();
+}
@@ -13,35 +13,63 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
-import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**+
  * Export : This utility class is to export data for a specific org within a
  * given range of time.
  *
  * Program arguments :
+ * -a, --adaptive               If set, adapts maxSummaryIds and windowSize to how quickly Context Service responds (disabled by default)
+ * -b, --binary                 If set, writes a binary snapshot file for each type instead of JSON arrays, which is much faster to import (disabled by default)
  * -c, --connection             Specify the connection data as Base64 string
  * -d, --deleteExistingExports  If set, deletes existing export files in the same directory (disabled by default)
  * -e, --endDate                Specify the end date for the date range should be backup in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z') (Default: NOW)
+ * -f, --prefetch               The number of fetched chunks of each type that may be waiting to be written (Default: 2)
+ * -g, --gzip                   If set, writes gzipped newline-delimited JSON segments and a manifest for each type instead of JSON arrays (disabled by default)
+ * -i, --incremental            If set, exports the entities changed since the last incremental export to the output directory into a new delta set (disabled by default)
+ * -k, --partitions             The number of time windows to split the date range into (Default: same as concurrency)
  * -m, --maxSummaryIds          The number of entity IDs to fetch per call (Max: 100000, Default: 1000)
+ * -n, --concurrency            The number of calls to Context Service to make in parallel (Default: 1)
  * -o, --output                 Specify the output directory
  * -p, --pretty                 If set, enables pretty printing the output json (disabled by default)
- * -s, --startDate              Specify the start date from which data to be backup in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z')
+ * -s, --startDate              Specify the start date from which data to be backup in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z') (not needed by an incremental export after the first)
+ * -t, --targetLatency          With --adaptive, the time in milliseconds a search should take (Default: 2000)
  * -w, --windowSize             The number of entities to fetch per call (Max: 200, Default: 50)
+ * -z, --segmentSize            With --gzip, the uncompressed size in MB at which to start a new segment (Default: 256)
+ *
+ * An incremental export keeps the last updated date up to which each type has been exported in export-state.json in
+ * the output directory, and writes each delta set to its own numbered directory (delta-00001, delta-00002 etc.).
+ * The delta sets can be merged into a single full export with DeltaCompactor (compact.sh).
  */
 public class Export {
 
     private static Logger LOGGER = LoggerFactory.getLogger(Export.class);
     private static ContextServiceClient contextServiceClient;
+    // Number of times to try a search which is throttled or times out, when adapting the size of searches
+    private static final int MAX_ATTEMPTS = 3;
+    // Entities exported so far, by entity type
+    private static Map<String, ExportedEntities> exports = new LinkedHashMap<>();
+    // Permits for the calls to Context Service, one per call allowed at once
+    private static Semaphore calls;
 
     public static void main(String[] args) throws Exception {
 
@@ -50,7 +78,7 @@ public class Export {
         contextServiceClient = Utils.initContextServiceClient(arguments.connection);
 
         try {
-            doExport(contextServiceClient, arguments.outputDir, arguments.pretty, arguments.deleteExistingExports, arguments.windowSize, arguments.startDate, arguments.endDate, arguments.maxSummaryIds);
+            doExport(contextServiceClient, arguments);
         } finally {
             // Destroys and cleanups connector threads and tokens.
             contextServiceClient.destroy();
@@ -58,6 +86,18 @@ public class Export {
     }
 
     static void doExport(ContextServiceClient contextServiceClient, String outDir, boolean pretty, boolean deleteExistingExports, int windowSize, RFC3339Date startDate, RFC3339Date endDate, int maxSummaryIds) throws Exception {
+        Arguments arguments = new Arguments();
+        arguments.outputDir = outDir;
+        arguments.pretty = pretty;
+        arguments.deleteExistingExports = deleteExistingExports;
+        arguments.windowSize = windowSize;
+        arguments.startDate = startDate;
+        arguments.endDate = endDate;
+        arguments.maxSummaryIds = maxSummaryIds;
+        doExport(contextServiceClient, arguments);
+    }
+
+    static void doExport(ContextServiceClient contextServiceClient, Arguments arguments) throws Exception {
         Export.contextServiceClient = contextServiceClient;
 
         // start timer to log performance
@@ -67,45 +107,68 @@ public class Export {
         // We want to write entities to file as we fetch them, instead of all at once
         // because for large exports, the amount of memory required to hold every entity might be very large
         LOGGER.info("Creating output files...");
-        Path outputDir = Paths.get(outDir);
-        JsonArrayWriter podWriter = new JsonArrayWriter("pod", outputDir, pretty, deleteExistingExports);
-        JsonArrayWriter custWriter = new JsonArrayWriter("customer", outputDir, pretty, deleteExistingExports);
-        JsonArrayWriter reqWriter = new JsonArrayWriter("request", outputDir, pretty, deleteExistingExports);
+        Path outputDir = Paths.get(arguments.outputDir);
+        boolean deleteExisting = arguments.deleteExistingExports;
+        ExportState state = null;
+        int delta = 0;
+        if (arguments.incremental) {
+            // a delta set directory which already exists was left incomplete by a failed export, so is overwritten
+            state = ExportState.load(outputDir);
+            delta = state.getLastDelta() + 1;
+            outputDir = ExportState.deltaDir(outputDir, delta);
+            Files.createDirectories(outputDir);
+            deleteExisting = true;
+            LOGGER.info("Exporting delta set " + delta + " to " + outputDir);
+        }
+        EntityWriter podWriter = createWriter("pod", outputDir, arguments, deleteExisting);
+        EntityWriter custWriter = createWriter("customer", outputDir, arguments, deleteExisting);
+        EntityWriter reqWriter = createWriter("request", outputDir, arguments, deleteExisting);
+
+        // Up to this many calls to Context Service are made at once.  The pool may add threads to make up for
+        // workers waiting for the tasks they forked, so the calls are limited by permits rather than by the pool.
+        ForkJoinPool workers = new ForkJoinPool(arguments.concurrency);
+        calls = new Semaphore(arguments.concurrency);
+
+        exports.clear();
+        exports.put(ContextObject.Types.POD, new ExportedEntities(ContextObject.Types.POD, podWriter, arguments));
+        exports.put(ContextObject.Types.CUSTOMER, new ExportedEntities(ContextObject.Types.CUSTOMER, custWriter, arguments));
+        exports.put(ContextObject.Types.REQUEST, new ExportedEntities(ContextObject.Types.REQUEST, reqWriter, arguments));
 
         try {
-            // First, fetch pod IDs only from search API (with summary=true)
+            // Fetch the entity IDs from search API (with summary=true)
             // summary=true tells Context Service to only return the entity IDs matching the query, not the whole object
             // In summary mode, search returns up to 100000 entities (vs. 200 wth normal search API)
-            // So we fetch all of the IDs in summary mode, and based on those IDs list, fetch each entity
-            // Limit the search to the entities changed within the given time window
-            Set<String> podIds = fetchEntityIds(ContextObject.Types.POD, startDate, endDate, maxSummaryIds);
-            Set<String> customerIds = fetchEntityIds(ContextObject.Types.CUSTOMER, startDate, endDate, maxSummaryIds);
-            Set<String> requestIds = fetchEntityIds(ContextObject.Types.REQUEST, startDate, endDate, maxSummaryIds);
-
-            // Java 8 lambda expression to run on each pod that is retrieved
-            // The customer and request associated with each pod might not have been updated within the given window
-            // so for each pod, explicitly extract the customer and request ids,
-            // and them to their respective sets if they're not already included.
-            Consumer<ContextObject> extractCustomerIdAndRequestId = pod -> {
-                UUID customerId = pod.getCustomerId();
-                UUID requestId = pod.getParentId();
-
-                if (customerId != null) {
-                    customerIds.add(customerId.toString());
-                }
-
-                if (requestId != null) {
-                    requestIds.add(requestId.toString());
-                }
-            };
-
-            // Now that we have a list of ids for each entity type,
-            // fetch the full entities from Context Service in chunks.
-            // Write them to the file as we go so that we don't have to store them in memory.
-            fetchVisitAndWriteEntities(ContextObject.Types.POD, podIds, podWriter, windowSize, extractCustomerIdAndRequestId);
-            fetchAndWriteEntities(ContextObject.Types.CUSTOMER, customerIds, custWriter, windowSize);
-            fetchAndWriteEntities(ContextObject.Types.REQUEST, requestIds, reqWriter, windowSize);
+            // So we fetch the IDs in summary mode, and as soon as each page of IDs arrives, fetch those entities
+            // in chunks and write them to the file, so that we never have to hold all of the IDs or entities in memory.
+            // Limit the search to the entities changed within the given time window.
+            // The date range is split into smaller windows which are searched in parallel.
+            // An incremental export starts each type from its high-water mark instead.
+            int partitions = arguments.partitions > 0 ? arguments.partitions : arguments.concurrency;
+            long endTime = arguments.endDate.getDate().getTime();
+            List<ForkJoinTask<?>> searches = new ArrayList<>();
+            for (ExportedEntities exported : exports.values()) {
+                exported.startTime = startTime(exported.entityType, state, arguments);
+                searches.addAll(searchWindows(exported, exported.startTime, endTime, partitions));
+            }
+            runAll(workers, searches);
+
+            // The customer and request associated with each pod might not have been updated within the given window,
+            // so they are fetched as the pods are written.  Fetch the last few, which didn't fill a chunk.
+            List<ForkJoinTask<?>> remaining = new ArrayList<>();
+            remaining.addAll(exports.get(ContextObject.Types.CUSTOMER).remaining());
+            remaining.addAll(exports.get(ContextObject.Types.REQUEST).remaining());
+            runAll(workers, remaining);
+
+            // Wait for the fetched entities to be written
+            for (ExportedEntities exported : exports.values()) {
+                exported.writer.finish();
+            }
         } finally {
+            workers.shutdownNow();
+            for (ExportedEntities exported : exports.values()) {
+                exported.writer.stop();
+            }
+
             // Finish writing the files
             LOGGER.info("Closing writers...");
             podWriter.close();
@@ -118,108 +181,429 @@ public class Export {
             LOGGER.info("Number of pod written: " + podWriter.getNumberOfEntities());
             LOGGER.info("Number of customer written: " + custWriter.getNumberOfEntities());
             LOGGER.info("Number of request written: " + reqWriter.getNumberOfEntities());
+            for (ExportedEntities exported : exports.values()) {
+                LOGGER.info(exported.pageSizer.summary(lEndTime - lStartTime));
+                LOGGER.info(exported.chunkSizer.summary(lEndTime - lStartTime));
+            }
         }
-    }
 
+        if (state != null) {
+            // Only now that the delta set is complete, move the high-water marks on.
+            // Entities updated after the end of the range (while they were being exported) are not allowed to move
+            // the mark past it, or the entities updated in between would be missed by the next delta set.
+            Map<String, RFC3339Date> marks = new LinkedHashMap<>();
+            for (ExportedEntities exported : exports.values()) {
+                long newest = Math.min(exported.getNewestSearched(), arguments.endDate.getDate().getTime());
+                marks.put(exported.entityType, new RFC3339Date(Math.max(newest, exported.startTime)));
+            }
+            state.completed(delta, marks);
+            state.save(Paths.get(arguments.outputDir));
+            LOGGER.info("Completed delta set " + delta + ", high-water marks: " + marks);
+        }
+    }
 
     /**
-     * Fetch all of the entity IDs of the given type within the given window.
-     * Uses the ContextService search API with (summary=true) to get a lot of IDs at once.
-     * If there are more IDs in the database than allowed by one call (maximum allowed by ContextService is 100,000),
-     * then make recursive calls with smaller windows, and combine the results.
-     * @param entityType
-     * @param startDate start of window
-     * @param endDate end of the window   @return a set of Entity Ids that were last updated within the given time window
-     * */
-    private static Set<String> fetchEntityIds(String entityType, RFC3339Date startDate, RFC3339Date endDate, int maxSummaryIds) {
-
-        LOGGER.info("Fetching ContextObject of type " + entityType + " ids...");
-
-        // perform a summary search or a given time window using Context Service SDK
-        SearchParameters searchParameters = new SearchParameters();
-        searchParameters.add("summary", "true");
-        searchParameters.add("startDate", startDate.toString());
-        searchParameters.add("endDate", endDate.toString());
-        searchParameters.add("maxEntries", Integer.toString(maxSummaryIds)); // explicitly set bound in case the default changes
-        searchParameters.add("type", entityType);
-        List<ContextObject> entityIdBeans  = contextServiceClient.search(ContextObject.class, searchParameters, Operation.OR);
-
-        // extract the id from every entity
-        Set<String> entityIds = new HashSet<String>();
-
-        // Recursive case:
-        // If the summary API returns the maxed we ask for,
-        // that means there may be more entities in the database that match the criteria.
-        // Context service returns the ids in order of lastUpdated (newest to oldest),
-        // so the approach here is to get the last updated date of the oldest one in the set,
-        // and use that as our new end date, so we only get entities at least as old as that one.
-        if (entityIdBeans.size() >= maxSummaryIds) {
-            // fetch the oldest entity from the list
-            String id = entityIdBeans.get(entityIdBeans.size() -1).getId().toString();
-            String url = "context/context/v1/id/" + id;
-            ContextObject entity = contextServiceClient.getContextObject(entityType, url);
-
-            // make a recursive call, with that end date of the oldest pod so far as the new end date
-            RFC3339Date newEndDate = entity.getLastUpdated();
-            if (newEndDate != endDate) { // make sure our conditions changed
-                Set<String> olderIds = fetchEntityIds(entityType, startDate, newEndDate, maxSummaryIds);
-                entityIds.addAll(olderIds); // add these IDs to our results set
-            } else { // our conditions are the same, can't recurse, so print warning and continue
-                LOGGER.warn("May be missing entity IDs, but cannot shrink window size. " + // should never happen
-                        "Matched " + entityIdBeans.size() + " in range: " + startDate + " - " + endDate);
+     * Returns where the search for the given type starts: its high-water mark, when exporting incrementally and a
+     * delta set has been completed before, or else the start date.  The search includes the high-water mark itself,
+     * so that entities updated in the same millisecond as the last one exported aren't missed; the entities last
+     * updated at exactly that time are exported again, and DeltaCompactor keeps only one copy.
+     * @param state state of the incremental export, or null if not exporting incrementally
+     * @return the start of the range, in milliseconds
+     */
+    private static long startTime(String entityType, ExportState state, Arguments arguments) {
+        RFC3339Date mark = state != null ? state.getHighWaterMark(entityType) : null;
+        if (mark != null) {
+            if (arguments.startDate != null) {
+                LOGGER.warn("Ignoring startDate for " + entityType + ", exporting the entities changed since " + mark);
             }
+            return mark.getDate().getTime();
+        }
+        if (arguments.startDate == null) {
+            throw new ParameterException("startDate is required, as no " + entityType + " entities have been exported incrementally yet");
         }
+        return arguments.startDate.getDate().getTime();
+    }
 
-        // extract the ids out and add them to our results set
-        for (ContextBean bean: entityIdBeans) {
-            entityIds.add(bean.getId().toString());
+    /**
+     * Creates the writer for the entities of one type: either a JSON array file, a binary snapshot file,
+     * or gzipped newline-delimited JSON segments which can be imported in parallel.
+     */
+    private static EntityWriter createWriter(String name, Path outputDir, Arguments arguments, boolean deleteExisting) throws IOException {
+        if (arguments.binary) {
+            return new SnapshotWriter(name, outputDir, deleteExisting);
         }
+        if (arguments.gzip) {
+            return new NdjsonSegmentWriter(name, outputDir, arguments.segmentSize * 1024 * 1024, deleteExisting);
+        }
+        return new JsonArrayWriter(name, outputDir, arguments.pretty, deleteExisting);
+    }
 
-        LOGGER.info("Fetched ContextObject of type " + entityType + " ids=" + entityIds.toString());
 
-        return entityIds;
+    /**
+     * Split the time range into windows of equal length, and return a task to search each of them.
+     * @param exported the entity type to search for
+     * @param startTime start of the range, in milliseconds
+     * @param endTime end of the range, in milliseconds
+     * @param partitions number of windows
+     * @return a task per window
+     */
+    private static List<SearchWindow> searchWindows(ExportedEntities exported, long startTime, long endTime, int partitions) {
+        List<SearchWindow> windows = new ArrayList<>();
+        long length = Math.max(endTime - startTime, 0);
+        partitions = (int) Math.max(1, Math.min(partitions, length));
+        for (int i = 0; i < partitions; i++) {
+            // windows share their boundaries, as the search includes both ends; entities are only exported once
+            windows.add(new SearchWindow(exported, startTime + length * i / partitions, startTime + length * (i + 1) / partitions));
+        }
+        return windows;
     }
 
     /**
-     * Fetch entities in chunks, and write each chunk to a file
-     * Context Service will only return up to 200 full entities at a time, so we need to loop through the ids
-     * @param entityType
-     * @param ids a collection of entity ids
-     * @param writer JsonArrayWriter, to write entities to file as we go
-     * @param visitor a callback to run on each individual entity before we write it.    @throws Exception
-     * */
-    private static void fetchVisitAndWriteEntities(
-            String entityType, Collection<String> ids, JsonArrayWriter writer, int windowSize, Consumer<ContextObject> visitor) throws Exception{
+     * Fetch the entity IDs of the given type within the given window, and fetch and write those entities.
+     * Uses the ContextService search API with (summary=true) to get a lot of IDs at once.
+     * If there are more IDs in the database than allowed by one call (maximum allowed by ContextService is 100,000),
+     * then page through the rest of the window, or when running in parallel, split the rest of the window in two
+     * and search both halves in parallel.
+     */
+    private static class SearchWindow extends RecursiveAction {
+        private final ExportedEntities exported;
+        private final long startTime;
+        private final long endTime;
+
+        /**
+         * @param exported the entity type to search for
+         * @param startTime start of window, in milliseconds
+         * @param endTime end of the window, in milliseconds
+         */
+        SearchWindow(ExportedEntities exported, long startTime, long endTime) {
+            this.exported = exported;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        @Override
+        protected void compute() {
+            String entityType = exported.entityType;
+            // chunks being fetched in the background while the next page is searched
+            List<FetchChunk> forked = new ArrayList<>();
+            long pageEndTime = endTime;
+            int attempt = 1;
+
+            while (true) {
+                RFC3339Date startDate = new RFC3339Date(startTime);
+                RFC3339Date endDate = new RFC3339Date(pageEndTime);
+                int maxSummaryIds = exported.pageSizer.size();
+                LOGGER.info("Fetching ContextObject of type " + entityType + " ids in range: " + startDate + " - " + endDate + "...");
+
+                // perform a summary search or a given time window using Context Service SDK
+                SearchParameters searchParameters = new SearchParameters();
+                searchParameters.add("summary", "true");
+                searchParameters.add("startDate", startDate.toString());
+                searchParameters.add("endDate", endDate.toString());
+                searchParameters.add("maxEntries", Integer.toString(maxSummaryIds)); // explicitly set bound in case the default changes
+                searchParameters.add("type", entityType);
+                List<ContextObject> entityIdBeans;
+                try {
+                    entityIdBeans = call(() -> exported.pageSizer.request(maxSummaryIds, () -> contextServiceClient.search(ContextObject.class, searchParameters, Operation.OR)));
+                } catch (RuntimeException e) {
+                    // try again with a smaller page
+                    if (exported.pageSizer.isAdaptive() && AdaptiveSizer.isThrottled(e) && attempt++ < MAX_ATTEMPTS) {
+                        LOGGER.warn("Search for ContextObject of type " + entityType + " ids was throttled or timed out, retrying: " + e.getMessage());
+                        continue;
+                    }
+                    throw e;
+                }
+                exported.pageSizer.received(entityIdBeans.size());
+                attempt = 1;
+
+                LOGGER.info("Fetched " + entityIdBeans.size() + " ContextObject of type " + entityType + " ids in range: " + startDate + " - " + endDate);
+
+                // fetch the entities which haven't already been exported
+                List<FetchChunk> fetches = exported.fetch(entityIdBeans);
+                if (entityIdBeans.size() < maxSummaryIds) {
+                    invokeAll(fetches);
+                    break;
+                }
+
+                // If the summary API returns the maxed we ask for,
+                // that means there may be more entities in the database that match the criteria.
+                // Context service returns the ids in order of lastUpdated (newest to oldest),
+                // so the approach here is to get the last updated date of the oldest one in the page,
+                // and search the rest of the window, up to that date.
+                long newEndTime = fetchOldest(entityIdBeans, fetches, forked);
+                if (newEndTime >= pageEndTime) { // our conditions are the same, can't shrink the window, so print warning and continue
+                    LOGGER.warn("May be missing entity IDs, but cannot shrink window size. " + // should never happen
+                            "Matched " + entityIdBeans.size() + " in range: " + startDate + " - " + endDate);
+                    break;
+                }
 
-        LOGGER.info("Fetching ContextObject of type " + entityType + " entities...");
+                // when there are threads to spare, the rest of the window is likely to be dense too,
+                // so search it in two halves
+                if (getPool().getParallelism() > 1 && newEndTime - startTime >= 2) {
+                    long middle = startTime + (newEndTime - startTime) / 2;
+                    invokeAll(new SearchWindow(exported, startTime, middle),
+                            new SearchWindow(exported, middle, newEndTime));
+                    break;
+                }
+                pageEndTime = newEndTime;
+            }
 
-        // convert to list make chunking easier
-        List<String> idList = new ArrayList<String>(ids);
+            for (FetchChunk fetch : forked) {
+                fetch.join();
+            }
+        }
+
+        /**
+         * Fetches the chunk holding the oldest IDs of a full page straight away, and the others in the background
+         * (when there are threads to spare), and returns the last updated date of the oldest entity in that chunk.  This is where the next page ends,
+         * so it doesn't have to be looked up separately.  If the entities in the chunk were updated after the page
+         * was searched, the date may be a little later than the oldest entity of the page; the next page then
+         * overlaps this one, and the overlapping entities are not exported again.
+         * @return last updated date of the oldest entity, in milliseconds
+         */
+        private long fetchOldest(List<ContextObject> entityIdBeans, List<FetchChunk> fetches, List<FetchChunk> forked) {
+            if (!fetches.isEmpty()) {
+                FetchChunk oldest = fetches.get(fetches.size() - 1);
+                List<FetchChunk> others = fetches.subList(0, fetches.size() - 1);
+                if (getPool().getParallelism() > 1) {
+                    for (FetchChunk fetch : others) {
+                        fetch.fork();
+                        forked.add(fetch);
+                    }
+                } else {
+                    // there is no other thread to fetch them in the background
+                    invokeAll(others);
+                }
+                oldest.invoke();
+                if (oldest.getOldestLastUpdated() != null) {
+                    return oldest.getOldestLastUpdated().getDate().getTime();
+                }
+            }
+
+            // every entity in the page has already been exported, so fetch the oldest entity from the list
+            String id = entityIdBeans.get(entityIdBeans.size() -1).getId().toString();
+            String url = "context/context/v1/id/" + id;
+            ContextObject entity = call(() -> contextServiceClient.getContextObject(exported.entityType, url));
+            return entity.getLastUpdated().getDate().getTime();
+        }
+    }
 
-        // fetch entities in chunks of WINDOW_SIZE (maximum allowed by Context Service is 200)
-        List<List<String>> idListChunks =  chunk(idList, windowSize);
+    /**
+     * Fetch one chunk of entities, and write them to a file
+     * Context Service will only return up to 200 full entities at a time, so the ids are fetched in chunks
+     */
+    private static class FetchChunk extends RecursiveAction {
+        private final ExportedEntities exported;
+        private final List<String> idListChunk;
+        private final int attempt;
+        // whether the IDs were found by searching the range, rather than referenced by pods
+        private final boolean searched;
+        private RFC3339Date oldestLastUpdated;
+
+        FetchChunk(ExportedEntities exported, List<String> idListChunk, int attempt, boolean searched) {
+            this.exported = exported;
+            this.idListChunk = idListChunk;
+            this.attempt = attempt;
+            this.searched = searched;
+        }
 
-        for (List<String> idListChunk: idListChunks) {
+        @Override
+        protected void compute() {
             // Fetch the chunk using Context Service search API
             SearchParameters searchParameters = new SearchParameters();
             searchParameters.addAll("id", idListChunk);
-            searchParameters.add("type", entityType);
-            List<ContextObject> someEntities = contextServiceClient.search(ContextObject.class, searchParameters, Operation.OR);
+            searchParameters.add("type", exported.entityType);
+            List<ContextObject> someEntities;
+            try {
+                someEntities = call(() -> exported.chunkSizer.request(idListChunk.size(), () -> contextServiceClient.search(ContextObject.class, searchParameters, Operation.OR)));
+            } catch (RuntimeException e) {
+                // try again in smaller chunks
+                if (exported.chunkSizer.isAdaptive() && AdaptiveSizer.isThrottled(e) && attempt < MAX_ATTEMPTS) {
+                    LOGGER.warn("Search for ContextObject of type " + exported.entityType + " entities was throttled or timed out, retrying: " + e.getMessage());
+                    List<FetchChunk> smaller = exported.chunks(idListChunk, attempt + 1, searched);
+                    invokeAll(smaller);
+                    // the page may end at the oldest of them, as if the chunk hadn't been split
+                    for (FetchChunk chunk : smaller) {
+                        fetched(chunk.getOldestLastUpdated());
+                    }
+                    return;
+                }
+                throw e;
+            }
+            exported.chunkSizer.received(someEntities.size());
 
-            // Perform callback on every entity (Java 8 stream API)
-            if (visitor != null) {
-                someEntities.forEach(visitor);
+            for (ContextObject entity : someEntities) {
+                RFC3339Date lastUpdated = entity.getLastUpdated();
+                fetched(lastUpdated);
+                if (lastUpdated != null && searched) {
+                    exported.searched(lastUpdated.getDate().getTime());
+                }
             }
-            // write the entities to a file
+
+            // The customer and request associated with each pod might not have been updated within the given window
+            // so for each pod, explicitly extract the customer and request ids, and fetch them too
+            // if they haven't already been exported.
+            List<FetchChunk> referenced = new ArrayList<>();
+            if (exported.entityType.equals(ContextObject.Types.POD)) {
+                for (ContextObject pod : someEntities) {
+                    referenced.addAll(exports.get(ContextObject.Types.CUSTOMER).reference(pod.getCustomerId()));
+                    referenced.addAll(exports.get(ContextObject.Types.REQUEST).reference(pod.getParentId()));
+                }
+            }
+
+            // queue the entities to be written to a file, so that the next chunk can be fetched in the meantime
             if(someEntities.size() > 0) {
-                writer.writeEntities(someEntities);
+                try {
+                    exported.writer.write(someEntities);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
+
+            invokeAll(referenced);
+        }
+
+        /**
+         * Keeps the last updated date of the oldest entity fetched.
+         */
+        private void fetched(RFC3339Date lastUpdated) {
+            if (lastUpdated != null && (oldestLastUpdated == null || lastUpdated.getDate().before(oldestLastUpdated.getDate()))) {
+                oldestLastUpdated = lastUpdated;
+            }
+        }
+
+        /**
+         * The last updated date of the oldest entity fetched, or null if none were fetched.
+         */
+        RFC3339Date getOldestLastUpdated() {
+            return oldestLastUpdated;
         }
     }
 
-    // no callback
-    private static void fetchAndWriteEntities(String entityType, Collection<String> ids, JsonArrayWriter writer, int windowSize) throws Exception{
-        fetchVisitAndWriteEntities(entityType, ids, writer, windowSize, null);
+    /**
+     * Keeps track of the entities of one type which have been exported, so that each is only fetched once
+     * no matter how many times it is found.  The IDs are kept in a compact set rather than as strings, as
+     * an export may contain tens of millions of them.
+     */
+    private static class ExportedEntities {
+        private final String entityType;
+        private final BackgroundWriter writer;
+        private final AdaptiveSizer pageSizer;
+        private final AdaptiveSizer chunkSizer;
+        private final UUIDSet ids = new UUIDSet();
+        // IDs referenced by pods that have yet to be fetched
+        private List<String> pendingIds = new ArrayList<>();
+        // start of the range searched, in milliseconds
+        private long startTime;
+        // last updated date of the newest entity found by searching the range, in milliseconds
+        private final AtomicLong newestSearched = new AtomicLong(Long.MIN_VALUE);
+
+        ExportedEntities(String entityType, EntityWriter writer, Arguments arguments) {
+            this.entityType = entityType;
+            this.writer = new BackgroundWriter(writer, "export-writer-" + entityType, arguments.prefetch);
+            this.pageSizer = new AdaptiveSizer(entityType + " maxSummaryIds", arguments.adaptive, arguments.maxSummaryIds, 2, arguments.MAX_SUMMARY_ENTRIES, arguments.targetLatency);
+            this.chunkSizer = new AdaptiveSizer(entityType + " windowSize", arguments.adaptive, arguments.windowSize, 1, arguments.MAX_WINDOW_SIZE, arguments.targetLatency);
+        }
+
+        /**
+         * Returns tasks to fetch the entities which haven't already been exported, in chunks of windowSize.
+         */
+        List<FetchChunk> fetch(List<? extends ContextBean> beans) {
+            List<String> idList = new ArrayList<>();
+            for (ContextBean bean : beans) {
+                if (ids.add(bean.getId())) {
+                    idList.add(bean.getId().toString());
+                }
+            }
+
+            return chunks(idList, 1, true);
+        }
+
+        /**
+         * Returns tasks to fetch the entities in chunks of windowSize (maximum allowed by Context Service is 200).
+         */
+        List<FetchChunk> chunks(List<String> idList, int attempt, boolean searched) {
+            List<FetchChunk> tasks = new ArrayList<>();
+            for (List<String> idListChunk : chunk(idList, chunkSizer.size())) {
+                tasks.add(new FetchChunk(this, idListChunk, attempt, searched));
+            }
+            return tasks;
+        }
+
+        /**
+         * Records the last updated date of an entity found by searching the range.
+         */
+        void searched(long lastUpdated) {
+            newestSearched.accumulateAndGet(lastUpdated, Math::max);
+        }
+
+        /**
+         * The last updated date of the newest entity found by searching the range, or Long.MIN_VALUE if none were found.
+         */
+        long getNewestSearched() {
+            return newestSearched.get();
+        }
+
+        /**
+         * Records that a pod refers to the entity.  Entities are fetched once enough of them have been referenced
+         * to fill a chunk.
+         * @param id ID of the entity, may be null
+         * @return a task to fetch a chunk of entities, if one is ready
+         */
+        synchronized List<FetchChunk> reference(UUID id) {
+            if (id == null || !ids.add(id)) {
+                return Collections.emptyList();
+            }
+            pendingIds.add(id.toString());
+            if (pendingIds.size() < chunkSizer.size()) {
+                return Collections.emptyList();
+            }
+            return remaining();
+        }
+
+        /**
+         * Returns a task to fetch the referenced entities which have yet to be fetched.
+         */
+        synchronized List<FetchChunk> remaining() {
+            if (pendingIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<FetchChunk> tasks = chunks(pendingIds, 1, false);
+            pendingIds = new ArrayList<>();
+            return tasks;
+        }
+    }
+
+    /**
+     * Makes a call to Context Service once a permit is free, so that no more than the given concurrency of calls
+     * are made at once.  The time spent waiting for the permit isn't counted in the latency the sizers see.
+     */
+    private static <T> T call(Supplier<T> call) {
+        calls.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            calls.release();
+        }
+    }
+
+    /**
+     * Run the tasks on the worker pool, and wait for them all to finish
+     * @param workers worker pool
+     * @param tasks tasks to run
+     * @throws IOException a task failed to write to a file
+     */
+    private static void runAll(ForkJoinPool workers, Collection<? extends ForkJoinTask<?>> tasks) throws IOException {
+        try {
+            workers.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /**
@@ -251,11 +635,17 @@ public class Export {
             parseArguments(args);
         }
 
+        /**
+         * Default arguments, for running the export programmatically.
+         */
+        Arguments() {
+        }
+
         final Logger LOGGER = LoggerFactory.getLogger(Arguments.class);
         @Parameter(names = {"-c", "--connection"}, description = "Specify the connection data as Base64 string", required = true)
         String connection;
 
-        @Parameter(names = {"-s", "--startDate"}, converter = RFC3339Converter.class, description = "Specify the start date from which data to be export in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z') ", required = true)
+        @Parameter(names = {"-s", "--startDate"}, converter = RFC3339Converter.class, description = "Specify the start date from which data to be export in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z'). Not needed by an incremental export after the first", required = false)
         RFC3339Date startDate;
 
         @Parameter(names = {"-e", "--endDate"}, converter = RFC3339Converter.class, description = "Specify the end date untill data should be export in the RFC3339 format (yyyy-MM-dd'T'HH:mm:ss.SSS'Z') ", required = false)
@@ -278,6 +668,33 @@ public class Export {
         int windowSize = 50;
         private int MAX_WINDOW_SIZE = 200;
 
+        @Parameter(names = {"-n", "--concurrency"}, arity = 1, description = "The number of calls to Context Service to make in parallel (Default: 1)", required = false)
+        int concurrency = 1;
+
+        @Parameter(names = {"-a", "--adaptive"}, description = "Adapt maxSummaryIds and windowSize to how quickly Context Service responds, starting from the given values (Default: false)", required = false)
+        boolean adaptive = false;
+
+        @Parameter(names = {"-t", "--targetLatency"}, arity = 1, description = "With --adaptive, the time in milliseconds a search should take (Default: 2000)", required = false)
+        long targetLatency = 2000;
+
+        @Parameter(names = {"-f", "--prefetch"}, arity = 1, description = "The number of fetched chunks of each type that may be waiting to be written (Default: 2)", required = false)
+        int prefetch = 2;
+
+        @Parameter(names = {"-g", "--gzip"}, description = "Write gzipped newline-delimited JSON segments and a manifest for each type, instead of JSON arrays (Default: false)", required = false)
+        boolean gzip = false;
+
+        @Parameter(names = {"-z", "--segmentSize"}, arity = 1, description = "With --gzip, the uncompressed size in MB at which to start a new segment (Default: 256)", required = false)
+        long segmentSize = 256;
+
+        @Parameter(names = {"-b", "--binary"}, description = "Write a binary snapshot file for each type, instead of JSON arrays (Default: false)", required = false)
+        boolean binary = false;
+
+        @Parameter(names = {"-i", "--incremental"}, description = "Export the entities changed since the last incremental export to the output directory into a new delta set (Default: false)", required = false)
+        boolean incremental = false;
+
+        @Parameter(names = {"-k", "--partitions"}, arity = 1, description = "The number of time windows to split the date range into (Default: same as concurrency)", required = false)
+        int partitions = 0;
+
         /**+
          * parseArguments : parse the arguments using JCommander
          * @param args
@@ -294,6 +711,34 @@ public class Export {
                     throw new ParameterException("windowSize must be between " + 1 + " and " + MAX_WINDOW_SIZE);
                 }
 
+                if (concurrency < 1) {
+                    throw new ParameterException("concurrency must be at least 1");
+                }
+
+                if (targetLatency < 1) {
+                    throw new ParameterException("targetLatency must be at least 1");
+                }
+
+                if (prefetch < 1) {
+                    throw new ParameterException("prefetch must be at least 1");
+                }
+
+                if (segmentSize < 1) {
+                    throw new ParameterException("segmentSize must be at least 1");
+                }
+
+                if (gzip && pretty) {
+                    throw new ParameterException("pretty cannot be used with gzip, as each entity is written on a single line");
+                }
+
+                if (binary && (gzip || pretty)) {
+                    throw new ParameterException("binary cannot be used with gzip or pretty");
+                }
+
+                if (partitions < 0) {
+                    throw new ParameterException("partitions must not be negative");
+                }
+
                 File outDir = new File(outputDir);
                 if (!outDir.exists()) {
                     throw new ParameterException("Output directory " + outputDir + " does not exist");
@@ -303,7 +748,11 @@ public class Export {
                     throw new ParameterException("Output directory specified is not a directory: " + outputDir);
                 }
 
-                LOGGER.info("Arguments- " + "StartDate: " + startDate + ", EndDate: " + endDate + ", Connection String: " + connection);
+                if (startDate == null && !(incremental && new File(outDir, ExportState.FILE_NAME).isFile())) {
+                    throw new ParameterException("startDate is required, unless continuing an incremental export");
+                }
+
+                LOGGER.info("Arguments- " + "StartDate: " + startDate + ", EndDate: " + endDate + ", Concurrency: " + concurrency + ", Connection String: " + connection);
             }catch (ParameterException e) {
                 // Display usage - this will catch the case where no args are specified as well as the case where required args are missing
                 LOGGER.error("Invalid parameter: ", e);
@@ -0,0 +1,129 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.cisco.thunderhead.util.RFC3339Date;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The state of an incremental export (Export --incremental), kept in export-state.json in the output directory:
+ * the number of the last delta set written, and for each type, the last updated date up to which entities have
+ * been exported (the high-water mark).  The next delta set holds the entities changed since then.
+ *
+ * Each delta set is a directory named delta-00001, delta-00002 etc. holding the usual pod, customer and request
+ * files, so it can be imported on its own.  The state is only saved once a delta set is complete, so a delta set
+ * which was left incomplete by a failed export is written again by the next one.
+ */
+class ExportState {
+    static final String FILE_NAME = "export-state.json";
+    private static final String DELTA_PREFIX = "delta-";
+    private static final Pattern DELTA_NAME = Pattern.compile(DELTA_PREFIX + "(\\d+)");
+
+    private int lastDelta;
+    private Map<String, RFC3339Date> highWaterMarks = new LinkedHashMap<>();
+
+    /**
+     * Reads the state of the incremental export in the given directory.
+     * @return the state, or an empty state if nothing has been exported incrementally to the directory yet
+     */
+    static ExportState load(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return new ExportState();
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            ExportState state = CSGsonFactory.getCSJson().fromJson(reader, ExportState.class);
+            if (state == null) {
+                throw new IOException(file + " is empty");
+            }
+            if (state.highWaterMarks == null) {
+                state.highWaterMarks = new LinkedHashMap<>();
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Writes the state to a temporary file and renames it, so that a failure part way through leaves the previous state.
+     */
+    void save(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        Path temp = outputDir.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            CSGsonFactory.getCSJson().toJson(this, writer);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Whether any delta set has been completed.
+     */
+    boolean isEmpty() {
+        return lastDelta == 0;
+    }
+
+    int getLastDelta() {
+        return lastDelta;
+    }
+
+    /**
+     * The last updated date up to which entities of the given type have been exported, or null if none have.
+     */
+    RFC3339Date getHighWaterMark(String type) {
+        return highWaterMarks.get(type);
+    }
+
+    /**
+     * Records that a delta set has been completed.
+     * @param delta number of the delta set
+     * @param marks the new high-water mark of each type
+     */
+    void completed(int delta, Map<String, RFC3339Date> marks) {
+        lastDelta = delta;
+        highWaterMarks.putAll(marks);
+    }
+
+    /**
+     * The directory holding the given delta set.
+     */
+    static Path deltaDir(Path outputDir, int delta) {
+        return outputDir.resolve(String.format(Locale.ROOT, DELTA_PREFIX + "%05d", delta));
+    }
+
+    /**
+     * Returns the delta set directories in the output directory, oldest first.
+     * @param lastDelta number of the last complete delta set; any later ones are incomplete, and are left out
+     */
+    static List<Path> deltaDirs(Path outputDir, int lastDelta) throws IOException {
+        Map<Integer, Path> deltas = new TreeMap<>();
+        try (Stream<Path> files = Files.list(outputDir)) {
+            files.filter(Files::isDirectory).forEach(dir -> {
+                Matcher matcher = DELTA_NAME.matcher(dir.getFileName().toString());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) <= lastDelta) {
+                    deltas.put(Integer.parseInt(matcher.group(1)), dir);
+                }
+            });
+        }
+        return new ArrayList<>(deltas.values());
+    }
+}
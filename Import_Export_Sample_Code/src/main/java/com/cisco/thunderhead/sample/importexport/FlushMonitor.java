@@ -0,0 +1,109 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.client.ContextServiceClient;
+import com.cisco.thunderhead.rest.FlushStatusBean;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the flushes of several types to complete at the same time, rather than one after another, with a
+ * single deadline shared by all of them.
+ *
+ * Each type is polled on its own thread with short calls to waitForFlushComplete, so that the number flushed so
+ * far can be logged while a large workgroup is flushed.  The polling interval starts at one second and doubles
+ * each time the flush is still going, up to a maximum, so a long flush is only polled now and again.
+ */
+class FlushMonitor {
+    private static Logger LOGGER = Logger.getLogger("importexport");
+
+    private static final int MIN_POLL_SECONDS = 1;
+    private static final int MAX_POLL_SECONDS = 16;
+
+    private final ContextServiceClient contextServiceClient;
+    private final long timeoutMillis;
+
+    /**
+     * @param timeoutMillis the time allowed for all of the flushes to complete
+     */
+    FlushMonitor(ContextServiceClient contextServiceClient, long timeoutMillis) {
+        this.contextServiceClient = contextServiceClient;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Waits for the flushes of the given types, which must already have been started, to complete.
+     * @return the final status of each type
+     * @throws TimeoutException a flush did not complete before the deadline; the others are not waited for
+     */
+    Map<String, FlushStatusBean> awaitAll(List<String> types) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        ExecutorService pollers = Executors.newFixedThreadPool(types.size(), Utils.newThreadFactory("flush-poller", false));
+        try {
+            List<Future<FlushStatusBean>> polls = new ArrayList<>();
+            for (String type : types) {
+                polls.add(pollers.submit(poll(type, deadline)));
+            }
+
+            Map<String, FlushStatusBean> statuses = new LinkedHashMap<>();
+            for (int i = 0; i < types.size(); i++) {
+                try {
+                    statuses.put(types.get(i), polls.get(i).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        throw (TimeoutException) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return statuses;
+        } finally {
+            pollers.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a task which polls the flush of one type until it completes, or the deadline passes.
+     */
+    private Callable<FlushStatusBean> poll(String type, long deadline) {
+        return () -> {
+            int intervalSeconds = MIN_POLL_SECONDS;
+            int lastFlushed = -1;
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Flush of " + type + "s not complete. Flushed " + Math.max(lastFlushed, 0) + " " + type + "s.");
+                }
+                // don't wait past the deadline, but always wait at least a second, the shortest wait the SDK allows
+                int waitSeconds = (int) Math.max(MIN_POLL_SECONDS, Math.min(intervalSeconds, (remaining + 999) / 1000));
+                FlushStatusBean status = contextServiceClient.waitForFlushComplete(type, waitSeconds);
+                if (status.isCompleted()) {
+                    LOGGER.info("Flush of " + type + "s complete. Flushed " + status.getNumberFlushed() + " " + type + "s.");
+                    return status;
+                }
+                if (status.getNumberFlushed() != lastFlushed) {
+                    lastFlushed = status.getNumberFlushed();
+                    LOGGER.info("Flush of " + type + "s in progress. Flushed " + lastFlushed + " " + type + "s so far."
+                            + (!StringUtils.isEmpty(status.getMessage()) ? " " + status.getMessage() : ""));
+                }
+                intervalSeconds = Math.min(intervalSeconds * 2, MAX_POLL_SECONDS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        };
+    }
+}
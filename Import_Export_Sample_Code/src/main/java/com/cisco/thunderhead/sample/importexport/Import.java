@@ -3,29 +3,34 @@ package com.cisco.thunderhead.sample.importexport;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
-import com.cisco.thunderhead.ContextBean;
 import com.cisco.thunderhead.ContextObject;
 import com.cisco.thunderhead.client.ClientResponse;
 import com.cisco.thunderhead.client.ContextServiceClient;
-import com.cisco.thunderhead.rest.FlushStatusBean;
 import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
 import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
-import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -37,10 +42,22 @@ import java.util.logging.SimpleFormatter;
  * objects' IDs and creation/update timestamps are not preserved.
  *
  * Program arguments :
- * -c, --connection    Specify the connection data as Base64 string
+ * -c, --connection    Specify the connection data as Base64 string (not needed with --dry-run)
  * -f, --flush         Specify whether or not to flush all workgroup data (disabled by default)
- * -d, --dir           Specify the directory containing the exported data (pod.json, customer.json, request.json)
+ * -d, --dir           Specify the directory containing the exported data (pod.json, customer.json, request.json,
+ *                     pod.snapshot, customer.snapshot, request.snapshot written by Export --binary,
+ *                     or the pod, customer and request manifests and segments written by Export --gzip)
  * -o, --output        Specify the output directory which will contain summary file and error files
+ * -n, --concurrency   Specify the number of objects to create in parallel (Default: 1)
+ * -p, --parsers       Specify the number of threads parsing each JSON array file (Default: 1)
+ * -v, --virtualThreads  Use virtual threads for the create workers when the JVM supports them (disabled by default)
+ * -r, --resume        Resume an interrupted import, using the journal in the output directory (disabled by default)
+ * -m, --maxAttempts   Specify the number of times to try to create each object, retrying throttling, timeouts and
+ *                     server errors; 1 disables retries (Default: 5)
+ * -b, --retryDelay    Specify the delay in milliseconds before the first retry, which doubles for each retry (Default: 1000)
+ * -t, --flushTimeout  With --flush, specify the time in seconds allowed for the flushes of all types to complete (Default: 90)
+ * --dry-run           Parse and check every object without importing anything, and report the parse throughput.
+ *                     No connection is needed (disabled by default)
  *
  *
  * Program output :
@@ -49,9 +66,22 @@ import java.util.logging.SimpleFormatter;
  * as the reason why any object failed to be imported.
  * Total number of objects imported.
  * Total number of objects that failed to be imported.
+ * The latency percentiles of the create calls for each type, the throughput, the time spent parsing compared with
+ * the time spent in create calls, and the largest queue depths.  These are also written to `metrics.json`, along
+ * with the number of objects created per second and the queue depths every 10 seconds, so that runs can be compared.
  *
  * Any objects that failed to be imported will be copied to the output directory into the
- * appropriate file (pod_error.json, customer_error.json, request_error.json).
+ * appropriate file (pod_error.json, customer_error.json, request_error.json).  Objects which fail
+ * because Context Service is throttling requests, times out or returns a server error are retried
+ * first, and are only copied to the error files once they have used up their attempts.  Note that
+ * an object whose create timed out may have been created, so retrying it may create it twice.
+ *
+ * Exports written as gzipped segments are imported by reading several segments of each type in parallel.
+ *
+ * The progress of the import is recorded in `import.journal` in the output directory.  If the import
+ * is interrupted, run it again with the same output directory and --resume to continue where it left
+ * off.  Objects which fail to import after resuming are written to a new set of error files
+ * (e.g. pod_error_resume1.json).
  */
 public class Import {
 
@@ -59,79 +89,196 @@ public class Import {
     private static FileHandler logHandler;
     private static ContextServiceClient contextServiceClient;
     private static Gson gson = CSGsonFactory.getCSJson();
+    // Number of objects each worker may have waiting in the queue
+    private static final int QUEUE_CAPACITY_PER_WORKER = 16;
+    // Maximum number of pods held back waiting for their customer or request to be imported
+    private static final int MAX_WAITING_PODS = 10000;
+    // How often the throughput and queue depths are sampled for the metrics report
+    private static final long METRICS_SAMPLE_MILLIS = 10000;
 
     // Map of bean type to file writer
     private static HashMap<String, JsonArrayWriter> writerMap = new HashMap<>();
     // Mapping between the original (exported) object IDs and their new IDs after import.
-    private static Map<UUID, UUID> idMap = new HashMap<>();
-
-    private static int numberOfImportedEntities = 0;
-    private static int numberOfFailedEntities = 0;
-
-    private static File podFile;
-    private static File custFile;
-    private static File reqFile;
+    // Written by the worker threads, so it must be safe for concurrent use.  Stores the IDs
+    // as longs, as a map of UUID objects needs several GB of heap for a large import.
+    private static UUIDMap idMap = new UUIDMap();
+    // Creates the objects on worker threads while the files are being read
+    private static CreatePipeline pipeline;
+    // Decides which failed creates are retried, and counts the retries
+    private static RetryPolicy retryPolicy = new RetryPolicy(1, 0);
+    // Time allowed for the flushes of all three types to complete
+    private static int flushTimeoutSeconds = 90;
+    // Holds back pods until the customer and request they refer to have been imported
+    private static PodScheduler scheduler;
+    // Records the progress of the import, so that it can be resumed
+    private static ImportJournal journal;
+    // Latencies, throughput and queue depths, for the metrics report
+    private static ImportMetrics metrics = new ImportMetrics(METRICS_SAMPLE_MILLIS);
+    // Objects which were imported (in idMap) or failed (in previouslyFailedIds) before the import was resumed
+    private static Set<UUID> previouslyFailedIds = ConcurrentHashMap.newKeySet();
+    private static boolean resuming = false;
+    private static AtomicInteger numberOfSkippedEntities = new AtomicInteger();
+
+    // Number of objects of each type read from the files, and successfully created
+    private static Map<String, AtomicInteger> readEntities = new ConcurrentHashMap<>();
+    private static Map<String, AtomicInteger> createdEntities = new ConcurrentHashMap<>();
+    private static AtomicInteger numberOfImportedEntities = new AtomicInteger();
+    private static AtomicInteger numberOfFailedEntities = new AtomicInteger();
+
+    // Files to import, by type: either a JSON array file or the segments listed in the manifest
+    private static Map<String, List<Path>> inputFiles = new HashMap<>();
+    // Number of threads parsing each JSON array file
+    private static int parserThreads = 1;
     private static File summary;
 
     public static void main(String args[]) throws Exception {
 
         Arguments arguments = new Arguments(args);
-        ContextServiceClient contextServiceClient = Utils.initContextServiceClient(arguments.connection);
+        ContextServiceClient contextServiceClient = arguments.dryRun ? null : Utils.initContextServiceClient(arguments.connection);
         try {
-            doImport(contextServiceClient, arguments.inputDirectory, arguments.outputDirectory, arguments.flush);
+            doImport(contextServiceClient, arguments);
         } finally {
             cleanup();
         }
     }
 
     static void doImport(ContextServiceClient contextServiceClient, String inputDirectory, String outputDirectory, boolean flush) throws Exception {
+        Arguments arguments = new Arguments();
+        arguments.inputDirectory = inputDirectory;
+        arguments.outputDirectory = outputDirectory;
+        arguments.flush = flush;
+        doImport(contextServiceClient, arguments);
+    }
+
+    static void doImport(ContextServiceClient contextServiceClient, Arguments arguments) throws Exception {
         // validate the arguments
-        Path inputDirectoryPath = Paths.get(inputDirectory);
-        Path outputDirectoryPath = Paths.get(outputDirectory);
-        setupAndVerifyFiles(inputDirectoryPath, outputDirectoryPath);
+        Path inputDirectoryPath = Paths.get(arguments.inputDirectory);
+        Path outputDirectoryPath = Paths.get(arguments.outputDirectory);
+        setupAndVerifyFiles(inputDirectoryPath, outputDirectoryPath, arguments.resume);
+
+        // start from a clean slate in case of a previous import in this JVM
+        writerMap.clear();
+        idMap.clear();
+        previouslyFailedIds.clear();
+        readEntities.clear();
+        createdEntities.clear();
+        numberOfImportedEntities.set(0);
+        numberOfFailedEntities.set(0);
+        numberOfSkippedEntities.set(0);
 
         // initialize the Context Service SDK using the connection data
         Import.contextServiceClient = contextServiceClient;
+        parserThreads = arguments.parsers;
+        retryPolicy = new RetryPolicy(arguments.maxAttempts, arguments.retryDelay);
+        flushTimeoutSeconds = arguments.flushTimeout;
+
+        if (arguments.dryRun) {
+            setupLogger();
+            new ImportValidator(inputFiles, parserThreads).validate();
+            return;
+        }
+
+        // reload the progress of the interrupted import
+        Path journalPath = outputDirectoryPath.resolve(ImportJournal.FILE_NAME);
+        Map<String, Long> startOffsets = Collections.emptyMap();
+        resuming = arguments.resume;
+        if (resuming) {
+            startOffsets = ImportJournal.load(journalPath, idMap, previouslyFailedIds);
+            LOGGER.info("Resuming import. Objects already handled: " + (idMap.size() + previouslyFailedIds.size()) + ", file offsets: " + startOffsets);
+        }
+        journal = new ImportJournal(journalPath);
 
         // create error files
-        createFailedObjectFiles(outputDirectoryPath, "pod_error", "customer_error", "request_error");
+        String suffix = resuming ? getResumeSuffix(outputDirectoryPath) : "";
+        createFailedObjectFiles(outputDirectoryPath, "pod_error" + suffix, "customer_error" + suffix, "request_error" + suffix);
 
         // write summary and error log to summary.txt
         setupLogger();
 
         // flush all workgroup data from the database
-        if (flush) {
+        if (arguments.flush) {
             flush();
         }
 
-        // Open input streams to the import object files. Read each json object from the file.
-        // Create context objects. Log summary of results.
-        try(BufferedReader pod = new BufferedReader(new FileReader(podFile));
-            BufferedReader cust = new BufferedReader(new FileReader(custFile));
-            BufferedReader req = new BufferedReader(new FileReader(reqFile));
-        ){
+        // Open input streams to the import object files. Read each json object from the file and
+        // hand it to the worker threads, which create the context objects. Log summary of results.
+        pipeline = new CreatePipeline(arguments.concurrency, arguments.concurrency * QUEUE_CAPACITY_PER_WORKER, arguments.virtualThreads);
+        List<Path> parentFiles = new ArrayList<>(inputFiles.get(ContextObject.Types.CUSTOMER));
+        parentFiles.addAll(inputFiles.get(ContextObject.Types.REQUEST));
+        List<Path> podFiles = inputFiles.get(ContextObject.Types.POD);
+        scheduler = new PodScheduler(pipeline, idMap, parentFiles.size(), MAX_WAITING_PODS);
+        // the customers and requests which failed before are skipped, so they would never be resolved
+        scheduler.parentsFailed(previouslyFailedIds);
+        metrics = new ImportMetrics(METRICS_SAMPLE_MILLIS);
+        ImportMetrics.Gauges gauges = new ImportMetrics.Gauges();
+        gauges.created = () -> createdEntities.values().stream().mapToInt(AtomicInteger::get).sum();
+        gauges.inFlight = pipeline::getInFlight;
+        gauges.waitingRetries = pipeline::getWaitingRetries;
+        gauges.waitingPods = scheduler::getNumberOfWaitingPods;
+        // Pod readers may be blocked waiting for customers and requests, so those are read by a pool of their own
+        ExecutorService parentReaders = Executors.newFixedThreadPool(readerThreads(parentFiles), Utils.newThreadFactory("import-reader", false));
+        ExecutorService podReaders = Executors.newFixedThreadPool(readerThreads(podFiles), Utils.newThreadFactory("import-pod-reader", false));
+        try {
             long lStartTime = System.currentTimeMillis();
-            readAndVisit(cust, ContextObject.class, createAndMapCustomerAndRequest);
-            readAndVisit(req, ContextObject.class, createAndMapCustomerAndRequest);
-            readAndVisit(pod, ContextObject.class, createPodEntity);
+            metrics.start(gauges);
+            // Customers and requests are read at the same time as the pods.
+            // Each pod is created as soon as the customer and request it refers to have been created.
+            List<Future<Void>> reads = new ArrayList<>();
+            for (String type : new String[]{ContextObject.Types.CUSTOMER, ContextObject.Types.REQUEST}) {
+                for (Path file : inputFiles.get(type)) {
+                    reads.add(parentReaders.submit(parentReader(file, type, startOffsets)));
+                }
+            }
+            for (Path file : podFiles) {
+                reads.add(podReaders.submit(podReader(file, startOffsets)));
+            }
+            for (Future<Void> read : reads) {
+                read.get();
+            }
+            pipeline.awaitCompletion();
             long lEndTime = System.currentTimeMillis();
+            metrics.stop();
 
+            logSummary(ContextObject.Types.CUSTOMER);
+            logSummary(ContextObject.Types.REQUEST);
+            logSummary(ContextObject.Types.POD);
+            if (resuming) {
+                LOGGER.info("Total number of objects skipped because they were handled before resuming : " + numberOfSkippedEntities);
+            }
+            for (Map.Entry<String, Integer> retries : retryPolicy.getRetries().entrySet()) {
+                LOGGER.info("Number of retries after " + retries.getKey() + " : " + retries.getValue());
+            }
+            if (retryPolicy.getExhausted() > 0) {
+                LOGGER.info("Number of objects that failed after " + retryPolicy.getMaxAttempts() + " attempts : " + retryPolicy.getExhausted());
+            }
             LOGGER.info("Total number of objects imported : " + numberOfImportedEntities);
             LOGGER.info("Total number of objects that failed to import : " + numberOfFailedEntities);
             LOGGER.info("Total time elapsed in importing : " + (lEndTime - lStartTime) + " milliseconds");
+
+            Map<String, Integer> created = new HashMap<>();
+            createdEntities.forEach((type, count) -> created.put(type, count.get()));
+            metrics.report(created, numberOfFailedEntities.get(), retryPolicy.getRetries(), retryPolicy.getExhausted(),
+                    outputDirectoryPath.resolve("metrics" + suffix + ".json"));
+        } finally {
+            metrics.stop();
+            parentReaders.shutdownNow();
+            podReaders.shutdownNow();
+            pipeline.shutdown();
+            journal.close();
         }
     }
 
     static int getNumberOfImportedEntities() {
-        return numberOfImportedEntities;
+        return numberOfImportedEntities.get();
     }
 
     static int getNumberOfFailedEntities() {
-        return numberOfFailedEntities;
+        return numberOfFailedEntities.get();
     }
 
     /**
      * Flushes (deletes) all of the objects in an organization's workgroup.
+     * The flushes of the three types run at the same time, so they are waited for together.
      */
     private static void flush() throws InterruptedException, TimeoutException {
         LOGGER.info("Flushing workgroup data...");
@@ -140,145 +287,358 @@ public class Import {
         contextServiceClient.flush(ContextObject.Types.REQUEST);
         contextServiceClient.flush(ContextObject.Types.CUSTOMER);
 
-        FlushStatusBean status = null;
+        // Use SDK to wait for flush to complete, allowing up to flushTimeout seconds for all of them...
+        new FlushMonitor(contextServiceClient, flushTimeoutSeconds * 1000L).awaitAll(
+                Arrays.asList(ContextObject.Types.POD, ContextObject.Types.REQUEST, ContextObject.Types.CUSTOMER));
 
-        // Use SDK to wait for flush to complete.  In this case, allow up to 30 seconds...
-        status = contextServiceClient.waitForFlushComplete(ContextObject.Types.POD, 30);
-        if (status.isCompleted()) {
-            LOGGER.info("Flush of pods complete. Flushed " + status.getNumberFlushed() + " pods.");
-        } else {
-            LOGGER.info("Flush of pods not complete. Flushed " + status.getNumberFlushed() + " pods. " + (!StringUtils.isEmpty(status.getMessage()) ? status.getMessage() : ""));
-            throw new TimeoutException();
+        LOGGER.info("Flushed workgroup data.");
+
+    }
+
+    /**
+     * This method reads the specified file and invokes the specified callback function for each
+     * object contained in the file.
+     * @param  file  File of objects to import.
+     * @param  type  Type of object to import.
+     * @param  startOffsets  Byte offset in each file at which to start reading, by journal key.
+     * @param  visitor  Callback which gets invoked for each object, and queues it for creation.
+     */
+    private static void readAndVisit(Path file, String type, Map<String, Long> startOffsets, Visitor visitor) throws Exception {
+        AtomicInteger totalReadEntities = counter(readEntities, type);
+        String key = journalKey(file, type);
+        ImportJournal.FileProgress progress = journal.progress(key);
+        long startOffset = startOffsets.getOrDefault(key, 0L);
+
+        if (parserThreads > 1 && !isSegment(file) && !isSnapshot(file)) {
+            // The objects are journaled in file order as they are found, but parsed and visited in parallel.
+            // Nothing depends on the order they are visited in: the scheduler holds each pod back until its
+            // customer and request have been imported.
+            ParallelJsonArrayReader reader = new ParallelJsonArrayReader(file, startOffset, parserThreads, gson);
+            try {
+                reader.read(progress::read, (bean, sequence) -> visit(bean, sequence, progress, visitor, totalReadEntities));
+            } finally {
+                metrics.recordParse(reader.getParseNanos());
+            }
+            return;
         }
 
-        status = contextServiceClient.waitForFlushComplete(ContextObject.Types.REQUEST, 30);
-        if (status.isCompleted()) {
-            LOGGER.info("Flush of requests complete. Flushed " + status.getNumberFlushed() + " requests.");
-        } else {
-            LOGGER.info("Flush of requests not complete. Flushed " + status.getNumberFlushed() + " requests. " + (!StringUtils.isEmpty(status.getMessage()) ? status.getMessage() : ""));
-            throw new TimeoutException();
+        try (ElementReader reader = openReader(file, startOffset)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                // deserialize a bean and invoke the callback function
+                long parseStart = System.nanoTime();
+                ContextObject bean = element.toContextObject(gson);
+                metrics.recordParse(System.nanoTime() - parseStart);
+                long sequence = progress.read(element.getStart(), element.getEnd());
+                visit(bean, sequence, progress, visitor, totalReadEntities);
+            }
         }
+    }
 
-        status = contextServiceClient.waitForFlushComplete(ContextObject.Types.CUSTOMER, 30);
-        if (status.isCompleted()) {
-            LOGGER.info("Flush of customers complete. Flushed " + status.getNumberFlushed() + " customers.");
-        } else {
-            LOGGER.info("Flush of customers not complete. Flushed " + status.getNumberFlushed() + " customers. " + (!StringUtils.isEmpty(status.getMessage()) ? status.getMessage() : ""));
-            throw new TimeoutException();
+    private static void visit(ContextObject bean, long sequence, ImportJournal.FileProgress progress, Visitor visitor, AtomicInteger totalReadEntities) throws InterruptedException {
+        // objects after the resume offset may already have been handled before the import was interrupted
+        if (resuming && bean.getId() != null && (idMap.containsKey(bean.getId()) || previouslyFailedIds.contains(bean.getId()))) {
+            progress.committed(sequence);
+            numberOfSkippedEntities.incrementAndGet();
+            return;
         }
 
-        LOGGER.info("Flushed workgroup data.");
+        visitor.visit(bean, () -> progress.committed(sequence));
+        totalReadEntities.incrementAndGet();
+    }
+
+    /**
+     * Segments are gzipped newline-delimited JSON, anything else is a JSON array file.
+     */
+    private static boolean isSegment(Path file) {
+        return file.getFileName().toString().endsWith(NdjsonSegmentWriter.EXTENSION);
+    }
 
+    private static boolean isSnapshot(Path file) {
+        return file.getFileName().toString().endsWith(SnapshotFormat.EXTENSION);
+    }
+
+    static ElementReader openReader(Path file, long startOffset) throws IOException {
+        if (isSnapshot(file)) {
+            return new SnapshotElementReader(file, startOffset);
+        }
+        return isSegment(file) ? new NdjsonElementReader(file, startOffset) : new JsonArrayElementReader(file, startOffset);
     }
 
     /**
-     * This method reads the specified file and invokes the specified callback function for each
-     * object contained in the file.
-     * @param  bufferedReader  Input stream of objects to import.
-     * @param  clazz  Type of object to import.
-     * @param  visitor  Consumer lambda which gets invoked for each object.
+     * The progress through a JSON array or snapshot file is journaled by type, as before segments were supported,
+     * and the progress through each segment by the segment's file name.
      */
-    private static <T extends ContextBean> void readAndVisit(BufferedReader bufferedReader, Class<T> clazz, Function visitor) throws Exception {
+    private static String journalKey(Path file, String type) {
+        return isSegment(file) ? file.getFileName().toString() : type;
+    }
+
+    /**
+     * Reads the files of one type with up to one thread per file, and no more threads than there are processors.
+     */
+    private static int readerThreads(List<Path> files) {
+        return Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+    }
 
-        int totalReadEntities = 0;
-        int totalCreatedEntities = 0;
+    /**
+     * Returns a task which reads pods and hands them to the scheduler, which queues each one for creation
+     * once the customer and request it refers to have been created.
+     */
+    private static Callable<Void> podReader(Path file, Map<String, Long> startOffsets) {
+        return () -> {
+            readAndVisit(file, ContextObject.Types.POD, startOffsets, (pod, committed) ->
+                    scheduler.offer(pod, new CreateTask(pod, Import::createPodEntity, created -> {
+                        try {
+                            countCreated(pod, created);
+                        } finally {
+                            committed.run();
+                        }
+                    })));
+            return null;
+        };
+    }
+
+    /**
+     * Returns a task which reads customers or requests and queues them for creation.
+     */
+    private static Callable<Void> parentReader(Path file, String type, Map<String, Long> startOffsets) {
+        return () -> {
+            try {
+                readAndVisit(file, type, startOffsets, Import::queueCustomerOrRequest);
+            } finally {
+                scheduler.parentReaderFinished();
+            }
+            return null;
+        };
+    }
 
-        try (JsonReader reader = new JsonReader(bufferedReader)) {
-            reader.beginArray();
-            while (reader.hasNext()) {
-                // deserialize a bean from json and invoke the callback function
-                totalCreatedEntities += (int) visitor.apply(gson.fromJson(reader, clazz));
-                totalReadEntities++;
+    /**
+     * Queues a customer or request for creation, and lets the scheduler know once it has been
+     * imported, so that any pods waiting for it can be created.
+     */
+    private static void queueCustomerOrRequest(ContextObject bean, Runnable committed) throws InterruptedException {
+        scheduler.parentQueued();
+        UUID oldId = bean.getId();
+        pipeline.submit(new CreateTask(bean, Import::createAndMapCustomerAndRequest, created -> {
+            try {
+                countCreated(bean, created);
+            } finally {
+                committed.run();
+                scheduler.parentResolved(oldId, created == 1);
             }
-            reader.endArray();
-        }
+        }));
+    }
+
+    private static int countCreated(ContextObject bean, int created) {
+        counter(createdEntities, bean.getType()).addAndGet(created);
+        return created;
+    }
+
+    private static AtomicInteger counter(Map<String, AtomicInteger> counters, String type) {
+        return counters.computeIfAbsent(type, key -> new AtomicInteger());
+    }
 
-        LOGGER.info("Total number of " + clazz.getSimpleName() + " created : " + totalCreatedEntities);
+    /**
+     * Logs the number of objects of the given type that were created, and adds them to the totals.
+     */
+    private static void logSummary(String type) {
+        int totalReadEntities = counter(readEntities, type).get();
+        int totalCreatedEntities = counter(createdEntities, type).get();
+        LOGGER.info("Total number of " + type + " created : " + totalCreatedEntities);
 
         // Count number of imports failed and log them
         int createFailCount = totalReadEntities - totalCreatedEntities;
         if (createFailCount > 0) {
-            numberOfFailedEntities += createFailCount;
-            LOGGER.info("Failed to create " + createFailCount +" "+ clazz.getSimpleName());
+            numberOfFailedEntities.addAndGet(createFailCount);
+            LOGGER.info("Failed to create " + createFailCount +" "+ type);
         }
 
         // Add number of objects created to total number of imports
-        numberOfImportedEntities += totalCreatedEntities;
+        numberOfImportedEntities.addAndGet(totalCreatedEntities);
     }
 
     /**
-     * This lambda function is invoked for each imported customer and request.  It both creates
+     * This method is invoked for each attempt to import a customer or request.  It both creates
      * the object and maintains the mapping between an object's original (exported) ID and its
      * new (after import) ID.
-     * The function returns the number of objects created. 1 or 0
+     * The method returns the status of the create.
      */
-    private static Function<ContextObject, Integer> createAndMapCustomerAndRequest = (bean) -> {
-        try {
-            UUID oldId = bean.getId();
-            ClientResponse res = contextServiceClient.create(bean);
-            // If bean successfully created
-            if (res.getStatus() == 201) {
-                UUID newId = bean.getId();
-                idMap.put(oldId,newId);
-                return 1; // success!
-            }
-            LOGGER.info("Error while creating " + bean.toString()+ " , " + res.getStatus());
+    private static int createAndMapCustomerAndRequest(ContextObject bean, UUID oldId) {
+        ClientResponse res = create(bean);
+        // If bean successfully created
+        if (res.getStatus() == 201) {
+            UUID newId = bean.getId();
+            idMap.put(oldId,newId);
+            journalCreated(bean, oldId);
+        }
+        return res.getStatus();
+    }
+
+    /**
+     * This method is invoked for each attempt to import a pod.  Before importing the pod, the method
+     * replaces the original (exported) customer and request IDs in the pod with the new (imported) IDs
+     * for those objects.
+     * The method returns the status of the create.
+     */
+    private static int createPodEntity(ContextObject podBean, UUID oldId) {
+        // Map the original customer and request IDs to their newly imported values.
+        UUID customerId = podBean.getCustomerId();
+        UUID requestId = podBean.getParentId();
+
+        UUID newCustomerId = idMap.get(customerId);
+        if (newCustomerId != null) {
+            podBean.setCustomerId(newCustomerId);
         }
-        catch(Exception e){
-            // display error and continue
-            LOGGER.log(Level.SEVERE,"Exception while creating " + bean.toString(), e);
+
+        UUID newRequestId = idMap.get(requestId);
+        if (newRequestId != null) {
+            podBean.setParentId(newRequestId);
         }
 
-        // A problem occurred importing the object.  Record the object in the output directory.
-        try {
-            writerMap.get(bean.getType()).writeEntity(bean);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE,"Exception while writing " + bean.toString(), e);
+        // Create the pod
+        ClientResponse res = create(podBean);
+        //If bean successfully created
+        if (res.getStatus() == 201) {
+            journalCreated(podBean, oldId);
         }
-        return 0;
-    };
+        return res.getStatus();
+    }
 
     /**
-     * This lambda function is invoked for each imported pod.  Before importing the pod, the function
-     * replaces the original (exported) customer and request IDs in the pod with the new (imported) IDs
-     * for those objects.
-     * The function returns the number of objects created. 1 or 0
+     * Creates an object, recording how long the call to Context Service took.
      */
-    private static Function<ContextObject, Integer> createPodEntity = (podBean) -> {
+    private static ClientResponse create(ContextObject bean) {
+        long start = System.nanoTime();
         try {
-            // Map the original customer and request IDs to their newly imported values.
-            UUID customerId = podBean.getCustomerId();
-            UUID requestId = podBean.getParentId();
+            return contextServiceClient.create(bean);
+        } finally {
+            metrics.recordCreate(bean.getType(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * One attempt to create an object.
+     */
+    @FunctionalInterface
+    private interface CreateAttempt {
+        /**
+         * @param bean the object to create
+         * @param oldId the original (exported) ID of the object
+         * @return the status of the create
+         */
+        int create(ContextObject bean, UUID oldId) throws Exception;
+    }
+
+    /**
+     * Creates an object on a worker thread.  If the create fails in a way which may be transient, the task is
+     * queued to run again after a backoff instead of blocking the worker.  Once the object has been created, or
+     * has failed on its last attempt (in which case it is written to the error file), the callback is run with
+     * the number of objects created: 1 or 0.
+     */
+    private static class CreateTask implements Runnable {
+        private final ContextObject bean;
+        private final UUID oldId;
+        private final CreateAttempt attempt;
+        private final IntConsumer finished;
+        private int attempts = 0;
+
+        CreateTask(ContextObject bean, CreateAttempt attempt, IntConsumer finished) {
+            this.bean = bean;
+            // the create gives the object a new ID, so remember the original one for any retries
+            this.oldId = bean.getId();
+            this.attempt = attempt;
+            this.finished = finished;
+        }
 
-            if (idMap.containsKey(customerId)) {
-                podBean.setCustomerId(idMap.get(customerId));
+        @Override
+        public void run() {
+            attempts++;
+            boolean lastAttempt = attempts >= retryPolicy.getMaxAttempts();
+            try {
+                int status = attempt.create(bean, oldId);
+                if (status == 201) {
+                    finished.accept(1); // success!
+                    return;
+                }
+                if (RetryPolicy.isRetryable(status) && retried(Integer.toString(status), lastAttempt)) {
+                    return;
+                }
+                // a customer or request that Context Service turned down is only logged as info
+                Level level = ContextObject.Types.POD.equals(bean.getType()) ? Level.SEVERE : Level.INFO;
+                LOGGER.log(level, "Error while creating " + bean.toString() + " , " + status + attemptsMade());
+            }
+            catch (Exception e) {
+                if (RetryPolicy.isRetryable(e) && retried(e.getClass().getSimpleName(), lastAttempt)) {
+                    return;
+                }
+                // display error and continue
+                LOGGER.log(Level.SEVERE, "Exception while creating " + bean.toString() + attemptsMade(), e);
             }
 
-            if (idMap.containsKey(requestId)) {
-                podBean.setParentId(idMap.get(requestId));
+            // A problem occurred importing the object.  Record the object in the output directory.
+            try {
+                writerMap.get(bean.getType()).writeEntity(bean);
+            } catch (IOException | RuntimeException e) {
+                // the failure is still journaled and the task finished, so its dependents aren't left waiting
+                LOGGER.log(Level.SEVERE,"Exception while writing " + bean.toString(), e);
             }
+            journalFailed(bean, oldId);
+            finished.accept(0);
+        }
 
-            // Create the pod
-            ClientResponse res = contextServiceClient.create(podBean);
-            //If bean successfully created
-            if (res.getStatus() == 201) {
-                return 1; // success!
+        /**
+         * Queues the task to be run again, unless this was its last attempt.
+         * @param reason the status, or name of the exception, that caused the failure
+         * @return whether the task will be run again
+         */
+        private boolean retried(String reason, boolean lastAttempt) {
+            if (lastAttempt) {
+                retryPolicy.exhausted();
+                return false;
             }
+            retryPolicy.retrying(reason);
+            pipeline.retryLater(this, retryPolicy.delayMillis(attempts));
+            return true;
+        }
 
-            LOGGER.log(Level.SEVERE,"Error while creating " + podBean.toString()+ " , " + res.getStatus());
+        private String attemptsMade() {
+            return attempts > 1 ? " (after " + attempts + " attempts)" : "";
         }
-        catch (Exception e){
-            LOGGER.log(Level.SEVERE,"Exception while creating " + podBean.toString(), e);
+    }
+
+    /**
+     * Records in the journal that an object was imported.
+     */
+    private static void journalCreated(ContextObject bean, UUID oldId) {
+        try {
+            journal.created(bean.getType(), oldId, bean.getId());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Exception while writing to the journal", e);
         }
+    }
 
-        //When there is error while creating, write to summary file and return 0
+    /**
+     * Records in the journal that an object failed to import.
+     */
+    private static void journalFailed(ContextObject bean, UUID oldId) {
         try {
-            writerMap.get(podBean.getClass()).writeEntity(podBean);
+            journal.failed(bean.getType(), oldId);
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE,"Exception while writing " + podBean.toString(), e);
+            LOGGER.log(Level.SEVERE, "Exception while writing to the journal", e);
         }
-        return 0;
-    };
+    }
+
+    /**
+     * Invoked by the file reader for each object read from the file.
+     */
+    @FunctionalInterface
+    private interface Visitor {
+        /**
+         * @param bean the object read from the file
+         * @param committed to be run once the object has been imported or recorded as failed
+         */
+        void visit(ContextObject bean, Runnable committed) throws InterruptedException;
+    }
 
     /**
      * Verify that the input directory contains exported json files and that the output directory
@@ -289,20 +649,43 @@ public class Import {
      * @throws IOException the input or output directory is not valid
      */
     public static void setupAndVerifyFiles(Path inputDirectoryPath, Path outputDirectoryPath) throws IOException {
+        setupAndVerifyFiles(inputDirectoryPath, outputDirectoryPath, false);
+    }
+
+    /**
+     * Verify that the input directory contains exported json files (or manifests and segments) and that the output
+     * directory is empty, or when resuming, that it contains the journal of the interrupted import.
+     *
+     * @param inputDirectoryPath Path to directory containing the files from the Export sample
+     * @param outputDirectoryPath Path to directory in which to record the import attempt
+     * @param resume Whether an interrupted import is being resumed
+     * @throws IOException the input or output directory is not valid
+     */
+    public static void setupAndVerifyFiles(Path inputDirectoryPath, Path outputDirectoryPath, boolean resume) throws IOException {
         File inputDirectory = inputDirectoryPath.toFile();
         File outputDirectory = outputDirectoryPath.toFile();
-        podFile  = inputDirectoryPath.resolve("pod.json").toFile();
-        custFile = inputDirectoryPath.resolve("customer.json").toFile();
-        reqFile = inputDirectoryPath.resolve("request.json").toFile();
 
         //Throw error if input directory does not exist or does not contain exported files
-        if(!inputDirectory.exists() || !inputDirectory.isDirectory()
-                || !podFile.exists() || !custFile.exists() || !reqFile.exists()
-                || !podFile.isFile() || !custFile.isFile() || !reqFile.isFile()){
+        if(!inputDirectory.exists() || !inputDirectory.isDirectory()){
             throw new FileNotFoundException("The specified input directory does not appear to be from an export");
         }
+        inputFiles.clear();
+        inputFiles.put(ContextObject.Types.POD, findInputFiles(inputDirectoryPath, "pod"));
+        inputFiles.put(ContextObject.Types.CUSTOMER, findInputFiles(inputDirectoryPath, "customer"));
+        inputFiles.put(ContextObject.Types.REQUEST, findInputFiles(inputDirectoryPath, "request"));
+
+        if (resume) {
+            //Throw error if there is no import to resume
+            if (!outputDirectoryPath.resolve(ImportJournal.FILE_NAME).toFile().isFile()) {
+                throw new FileNotFoundException("The specified directory does not contain an import journal - " + outputDirectoryPath.toString());
+            }
 
-        boolean exist = outputDirectory.listFiles((File pathname) -> (pathname.getName().endsWith(".json") || pathname.getName().endsWith(".txt"))).length != 0 ;
+            //append to the existing summary file
+            summary = outputDirectoryPath.resolve("summary.txt").toFile();
+            return;
+        }
+
+        boolean exist = outputDirectory.listFiles((File pathname) -> (pathname.getName().endsWith(".json") || pathname.getName().endsWith(".txt") || pathname.getName().equals(ImportJournal.FILE_NAME))).length != 0 ;
         //Throw error if output directory is not empty or does not exist
         if(!outputDirectory.exists() || !outputDirectory.isDirectory() || exist){
             throw new FileNotFoundException("The specified directory does not exist or already contains files - "+outputDirectoryPath.toString());
@@ -312,6 +695,46 @@ public class Import {
         summary = Files.createFile(outputDirectoryPath.resolve("summary.txt")).toFile();
     }
 
+    /**
+     * Returns the exported files of the given type: the JSON array file if there is one, otherwise the
+     * snapshot file if there is one, otherwise the segments listed in the manifest.
+     * @throws FileNotFoundException there are no exported files of the given type
+     */
+    static List<Path> findInputFiles(Path inputDirectoryPath, String name) throws IOException {
+        File jsonFile = inputDirectoryPath.resolve(name + ".json").toFile();
+        if (jsonFile.isFile()) {
+            return Collections.singletonList(jsonFile.toPath());
+        }
+
+        File snapshotFile = inputDirectoryPath.resolve(name + SnapshotFormat.EXTENSION).toFile();
+        if (snapshotFile.isFile()) {
+            return Collections.singletonList(snapshotFile.toPath());
+        }
+
+        if (SegmentManifest.path(inputDirectoryPath, name).toFile().isFile()) {
+            List<Path> segments = SegmentManifest.read(inputDirectoryPath, name).segmentPaths(inputDirectoryPath);
+            for (Path segment : segments) {
+                if (!segment.toFile().isFile()) {
+                    throw new FileNotFoundException("A segment listed in the manifest is missing - " + segment.toString());
+                }
+            }
+            return segments;
+        }
+
+        throw new FileNotFoundException("The specified input directory does not appear to be from an export");
+    }
+
+    /**
+     * Returns a suffix for the error files which doesn't clash with the error files of earlier attempts.
+     */
+    private static String getResumeSuffix(Path outputDirectoryPath) {
+        int attempt = 1;
+        while (outputDirectoryPath.resolve("pod_error_resume" + attempt + ".json").toFile().exists()) {
+            attempt++;
+        }
+        return "_resume" + attempt;
+    }
+
     /**
      * Creates files to store the json objects which failed to import.
      *
@@ -345,7 +768,7 @@ public class Import {
      * Close our opened files, our log handler, and destroy the contextServiceClient
      * @throws IOException
      */
-    private static void cleanup() throws IOException {
+    static void cleanup() throws IOException {
         if(logHandler != null){
             logHandler.flush();
             LOGGER.removeHandler(logHandler);
@@ -363,13 +786,19 @@ public class Import {
     /**
      * Command line argument specifications
      */
-    private static class Arguments {
+    static class Arguments {
 
         Arguments(String []args) throws IOException {
             parseArguments(args);
         }
 
-        @Parameter(names = {"-c", "--connection"}, description = "Specify the connection data as Base64 string", required = true)
+        /**
+         * Default arguments, for running the import programmatically.
+         */
+        Arguments() {
+        }
+
+        @Parameter(names = {"-c", "--connection"}, description = "Specify the connection data as Base64 string (required unless --dry-run)")
         String connection;
 
         @Parameter(names = {"-f", "--flush"}, description = "Causes all existing workgroup data to be flushed, disabled by default")
@@ -381,6 +810,30 @@ public class Import {
         @Parameter(names = {"-o", "--output"}, description = "Specify the directory in which to record the summary log and objects that failed to import", required = true)
         String outputDirectory;
 
+        @Parameter(names = {"-n", "--concurrency"}, arity = 1, description = "The number of objects to create in parallel (Default: 1)")
+        int concurrency = 1;
+
+        @Parameter(names = {"-p", "--parsers"}, arity = 1, description = "The number of threads parsing each JSON array file (Default: 1)")
+        int parsers = 1;
+
+        @Parameter(names = {"-v", "--virtualThreads"}, description = "Use virtual threads for the create workers when the JVM supports them, disabled by default")
+        boolean virtualThreads = false;
+
+        @Parameter(names = {"-r", "--resume"}, description = "Resume an interrupted import using the journal in the output directory, disabled by default")
+        boolean resume = false;
+
+        @Parameter(names = {"-m", "--maxAttempts"}, arity = 1, description = "The number of times to try to create each object, retrying throttling, timeouts and server errors (Default: 5)")
+        int maxAttempts = 5;
+
+        @Parameter(names = {"-b", "--retryDelay"}, arity = 1, description = "The delay in milliseconds before the first retry, which doubles for each retry (Default: 1000)")
+        long retryDelay = 1000;
+
+        @Parameter(names = {"-t", "--flushTimeout"}, arity = 1, description = "With --flush, the time in seconds allowed for the flushes of all types to complete (Default: 90)")
+        int flushTimeout = 90;
+
+        @Parameter(names = {"--dry-run"}, description = "Parse and check every object without importing anything, disabled by default")
+        boolean dryRun = false;
+
         /**+
          * parseArguments : parse the arguments using JCommander
          * @param args
@@ -388,7 +841,40 @@ public class Import {
         private void parseArguments(String args[]) throws IOException {
             try {
                 JCommander jc = new JCommander(this, args);
-                LOGGER.info("Arguments- " + "Flush: " + flush + ", Input directory: " + inputDirectory + ", Output directory: "+outputDirectory+", Connection String: " + connection);
+
+                if (concurrency < 1) {
+                    throw new ParameterException("concurrency must be at least 1");
+                }
+
+                if (connection == null && !dryRun) {
+                    throw new ParameterException("The following option is required: -c, --connection");
+                }
+
+                if (dryRun && (resume || flush)) {
+                    throw new ParameterException("flush and resume cannot be used with dry-run");
+                }
+
+                if (flushTimeout < 1) {
+                    throw new ParameterException("flushTimeout must be at least 1");
+                }
+
+                if (maxAttempts < 1) {
+                    throw new ParameterException("maxAttempts must be at least 1");
+                }
+
+                if (retryDelay < 0) {
+                    throw new ParameterException("retryDelay must not be negative");
+                }
+
+                if (parsers < 1) {
+                    throw new ParameterException("parsers must be at least 1");
+                }
+
+                if (resume && flush) {
+                    throw new ParameterException("flush cannot be used when resuming an import");
+                }
+
+                LOGGER.info("Arguments- " + "Flush: " + flush + ", Input directory: " + inputDirectory + ", Output directory: "+outputDirectory+", Concurrency: " + concurrency + ", Parsers: " + parsers + ", Resume: " + resume + ", Dry run: " + dryRun + ", Connection String: " + connection);
             }
             catch (ParameterException e) {
                 // Display usage - this will catch the case where no args are specified as well as the case where required args are missing
@@ -0,0 +1,222 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Append-only record of the progress of an import, used to resume an import which was interrupted.
+ *
+ * Each line of the journal is one of:
+ * M type oldId newId    an object was imported, and was given a new ID
+ * F type oldId          an object failed to import, and was written to the error file
+ * O key offset          every object before this byte offset in a file has been handled.  The key is the object
+ *                       type for a JSON array file, or the file name for a segment (whose offsets are uncompressed)
+ *
+ * Records are buffered and forced to disk in batches, so an import which is killed may lose the
+ * last batch of records; on resume those objects will be imported again.
+ */
+class ImportJournal implements Closeable {
+    static final String FILE_NAME = "import.journal";
+
+    // Force the journal to disk after this many records, or after this much time
+    static final int SYNC_BATCH_SIZE = 1000;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final FileOutputStream out;
+    private final BufferedWriter writer;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Map<String, Long> syncedOffsets = new HashMap<>();
+    private int unsyncedRecords = 0;
+    private long lastSync = System.currentTimeMillis();
+
+    /**
+     * Opens the journal for appending, creating it if it doesn't exist.
+     */
+    ImportJournal(Path file) throws IOException {
+        if (Files.exists(file)) {
+            // drop a record the interrupted import only partly wrote, rather than append to it
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long complete = completeRecordsLength(channel);
+                if (complete < channel.size()) {
+                    channel.truncate(complete);
+                }
+            }
+        }
+        out = new FileOutputStream(file.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records that an object was imported.
+     */
+    synchronized void created(String type, UUID oldId, UUID newId) throws IOException {
+        append("M " + type + " " + oldId + " " + newId);
+    }
+
+    /**
+     * Records that an object failed to import.
+     */
+    synchronized void failed(String type, UUID oldId) throws IOException {
+        append("F " + type + " " + oldId);
+    }
+
+    /**
+     * Forces all of the records written so far to disk.
+     */
+    synchronized void sync() throws IOException {
+        for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+            if (!offset.getValue().equals(syncedOffsets.get(offset.getKey()))) {
+                writer.write("O " + offset.getKey() + " " + offset.getValue());
+                writer.newLine();
+                syncedOffsets.put(offset.getKey(), offset.getValue());
+            }
+        }
+        writer.flush();
+        out.getChannel().force(false);
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns a tracker for the progress through a file.
+     * @param key the object type for a JSON array file, or the file name for a segment
+     */
+    FileProgress progress(String key) {
+        return new FileProgress(key);
+    }
+
+    private synchronized void committed(String key, long offset) {
+        offsets.put(key, offset);
+    }
+
+    private void append(String record) throws IOException {
+        writer.write(record);
+        writer.newLine();
+        if (++unsyncedRecords >= SYNC_BATCH_SIZE || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MILLIS) {
+            sync();
+        }
+    }
+
+    /**
+     * Reads a journal written by a previous import.
+     * @param file the journal
+     * @param idMap populated with the original and new IDs of every object that was imported
+     * @param failedIds populated with the original IDs of every object that failed to import
+     * @return the byte offset in each file from which to resume reading, by key
+     */
+    static Map<String, Long> load(Path file, UUIDMap idMap, Set<UUID> failedIds) throws IOException {
+        Map<String, Long> offsets = new HashMap<>();
+        // the last record may have been partially written when the import was killed, and a partial record can
+        // still look valid (an offset cut short, or a shortened UUID), so a record only counts once the line
+        // separator after it has been written
+        boolean lastRecordComplete;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            lastRecordComplete = completeRecordsLength(channel) == channel.size();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (next != null || lastRecordComplete) {
+                    loadRecord(line, idMap, failedIds, offsets);
+                }
+                line = next;
+            }
+        }
+        return offsets;
+    }
+
+    private static void loadRecord(String line, UUIDMap idMap, Set<UUID> failedIds, Map<String, Long> offsets) {
+        String[] fields = line.split(" ");
+        try {
+            if (fields.length == 4 && fields[0].equals("M")) {
+                idMap.put(UUID.fromString(fields[2]), UUID.fromString(fields[3]));
+            } else if (fields.length == 3 && fields[0].equals("F")) {
+                failedIds.add(UUID.fromString(fields[2]));
+            } else if (fields.length == 3 && fields[0].equals("O")) {
+                offsets.put(fields[1], Long.valueOf(fields[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // skip a corrupted record
+        }
+    }
+
+    /**
+     * Returns the length of the journal up to the end of its last complete record.
+     */
+    private static long completeRecordsLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        long length = channel.size();
+        while (length > 0) {
+            buffer.clear();
+            channel.read(buffer, length - 1);
+            if (buffer.get(0) == '\n') {
+                break;
+            }
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Tracks which objects of a file have been handled.  Objects are read in order but may finish importing
+     * in any order, so the resume offset is the start of the earliest object which hasn't finished yet.
+     */
+    class FileProgress {
+        private final String key;
+        // start offset of every object which has been read but not handled yet, by sequence number
+        private final TreeMap<Long, Long> outstanding = new TreeMap<>();
+        private long nextSequence = 0;
+        private long readEnd = 0;
+
+        private FileProgress(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Called when an object has been read from the file.
+         * @return the sequence number to pass to {@link #committed(long)}
+         */
+        synchronized long read(long start, long end) {
+            outstanding.put(nextSequence, start);
+            readEnd = end;
+            return nextSequence++;
+        }
+
+        /**
+         * Called once an object has been imported or recorded as failed.
+         */
+        void committed(long sequence) {
+            long offset;
+            synchronized (this) {
+                outstanding.remove(sequence);
+                offset = outstanding.isEmpty() ? readEnd : outstanding.firstEntry().getValue();
+            }
+            ImportJournal.this.committed(key, offset);
+        }
+    }
+}
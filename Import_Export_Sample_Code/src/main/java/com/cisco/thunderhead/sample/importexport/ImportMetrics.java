@@ -0,0 +1,227 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.google.gson.GsonBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Measures an import, so that runs can be compared: the latency of the create calls to Context Service for each
+ * type (as an HdrHistogram, so that the percentiles are accurate however many objects are imported), the time spent
+ * parsing the files compared with the time spent in create calls, and a timeline of the number of objects created
+ * per second and how many objects are queued, waiting to be retried or held back waiting for their parents.
+ *
+ * The report is logged (to the console and summary.txt), and written as JSON to a file in the output directory.
+ */
+class ImportMetrics {
+    private static Logger LOGGER = Logger.getLogger("importexport");
+
+    // latencies are recorded in microseconds, to 3 significant digits
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final long sampleIntervalMillis;
+    private final Map<String, ConcurrentHistogram> createLatencies = new ConcurrentHashMap<>();
+    private final LongAdder createNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final List<Sample> timeline = Collections.synchronizedList(new ArrayList<>());
+    private ScheduledExecutorService sampler;
+    private long startMillis;
+    private long endMillis;
+    private Gauges gauges;
+
+    /**
+     * What is sampled for the timeline.
+     */
+    static class Gauges {
+        // the number of objects created so far
+        IntSupplier created = () -> 0;
+        // the number of objects queued, being created or waiting to be retried
+        IntSupplier inFlight = () -> 0;
+        // the number of objects waiting to be retried
+        IntSupplier waitingRetries = () -> 0;
+        // the number of pods held back waiting for their customer or request
+        IntSupplier waitingPods = () -> 0;
+    }
+
+    /**
+     * @param sampleIntervalMillis how often to sample the timeline
+     */
+    ImportMetrics(long sampleIntervalMillis) {
+        this.sampleIntervalMillis = sampleIntervalMillis;
+    }
+
+    /**
+     * Starts the clock, and sampling the timeline.
+     */
+    synchronized void start(Gauges gauges) {
+        this.gauges = gauges;
+        startMillis = System.currentTimeMillis();
+        sampler = Executors.newSingleThreadScheduledExecutor(Utils.newThreadFactory("import-metrics", false));
+        sampler.scheduleAtFixedRate(this::sample, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the clock, and takes a last sample.  Does nothing if already stopped.
+     */
+    synchronized void stop() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdownNow();
+        sampler = null;
+        sample();
+        endMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Records one call to create an object, whether or not it succeeded.
+     */
+    void recordCreate(String type, long nanos) {
+        createNanos.add(nanos);
+        createLatencies.computeIfAbsent(type, key -> new ConcurrentHistogram(SIGNIFICANT_DIGITS))
+                .recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * Records the time taken to parse one or more objects.
+     */
+    void recordParse(long nanos) {
+        parseNanos.add(nanos);
+    }
+
+    private void sample() {
+        long elapsed = System.currentTimeMillis() - startMillis;
+        int created = gauges.created.getAsInt();
+        synchronized (timeline) {
+            Sample previous = timeline.isEmpty() ? new Sample() : timeline.get(timeline.size() - 1);
+            Sample sample = new Sample();
+            sample.elapsedMillis = elapsed;
+            sample.created = created;
+            sample.objectsPerSecond = elapsed > previous.elapsedMillis ? (created - previous.created) * 1000.0 / (elapsed - previous.elapsedMillis) : 0.0;
+            sample.inFlight = gauges.inFlight.getAsInt();
+            sample.waitingRetries = gauges.waitingRetries.getAsInt();
+            sample.waitingPods = gauges.waitingPods.getAsInt();
+            timeline.add(sample);
+        }
+    }
+
+    /**
+     * Logs the report, and writes it as JSON.
+     * @param created the number of objects created, by type
+     * @param failed the number of objects that failed to import
+     * @param retries the number of retries, by the status or exception that caused them
+     * @param exhausted the number of objects that failed on their last attempt
+     * @param jsonFile file to write the JSON report to
+     */
+    void report(Map<String, Integer> created, int failed, Map<String, Integer> retries, int exhausted, Path jsonFile) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        long elapsed = endMillis - startMillis;
+        int total = 0;
+        for (int count : created.values()) {
+            total += count;
+        }
+        report.put("elapsedMillis", elapsed);
+        report.put("created", new TreeMap<>(created));
+        report.put("failed", failed);
+        report.put("objectsPerSecond", round(elapsed > 0 ? total * 1000.0 / elapsed : 0.0));
+        report.put("retries", new TreeMap<>(retries));
+        report.put("retriesExhausted", exhausted);
+        report.put("parseMillis", TimeUnit.NANOSECONDS.toMillis(parseNanos.sum()));
+        report.put("createMillis", TimeUnit.NANOSECONDS.toMillis(createNanos.sum()));
+
+        Map<String, Object> latencies = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentHistogram> entry : createLatencies.entrySet()) {
+            ConcurrentHistogram histogram = entry.getValue();
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("count", histogram.getTotalCount());
+            latency.put("mean", round(histogram.getMean() / 1000.0));
+            for (double percentile : PERCENTILES) {
+                latency.put(percentileName(percentile), round(histogram.getValueAtPercentile(percentile) / 1000.0));
+            }
+            latency.put("max", round(histogram.getMaxValue() / 1000.0));
+            latencies.put(entry.getKey(), latency);
+
+            StringBuilder line = new StringBuilder("Create latency of " + entry.getKey() + " (ms) : count " + histogram.getTotalCount());
+            for (Map.Entry<String, Object> value : latency.entrySet()) {
+                if (!value.getKey().equals("count")) {
+                    line.append(", ").append(value.getKey()).append(' ').append(value.getValue());
+                }
+            }
+            LOGGER.info(line.toString());
+        }
+        report.put("createLatencyMillis", latencies);
+
+        int maxInFlight = 0;
+        int maxWaitingRetries = 0;
+        int maxWaitingPods = 0;
+        double peakObjectsPerSecond = 0;
+        List<Sample> samples;
+        synchronized (timeline) {
+            samples = new ArrayList<>(timeline);
+        }
+        for (Sample sample : samples) {
+            maxInFlight = Math.max(maxInFlight, sample.inFlight);
+            maxWaitingRetries = Math.max(maxWaitingRetries, sample.waitingRetries);
+            maxWaitingPods = Math.max(maxWaitingPods, sample.waitingPods);
+            peakObjectsPerSecond = Math.max(peakObjectsPerSecond, sample.objectsPerSecond);
+            sample.objectsPerSecond = round(sample.objectsPerSecond);
+        }
+        report.put("peakObjectsPerSecond", round(peakObjectsPerSecond));
+        report.put("maxInFlight", maxInFlight);
+        report.put("maxWaitingRetries", maxWaitingRetries);
+        report.put("maxWaitingPods", maxWaitingPods);
+        report.put("sampleIntervalMillis", sampleIntervalMillis);
+        report.put("timeline", samples);
+
+        LOGGER.info(String.format(Locale.ROOT, "Throughput : %.1f objects/sec overall, %.1f objects/sec at peak", report.get("objectsPerSecond"), round(peakObjectsPerSecond)));
+        LOGGER.info("Time spent parsing : " + report.get("parseMillis") + " ms, in create calls : " + report.get("createMillis") + " ms (summed over all threads)");
+        LOGGER.info("Most objects in flight : " + maxInFlight + ", waiting to be retried : " + maxWaitingRetries + ", pods waiting for their parents : " + maxWaitingPods);
+
+        try (Writer writer = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        }
+        LOGGER.info("Metrics written to " + jsonFile);
+    }
+
+    /**
+     * p50, p90, p99, p99_9
+     */
+    private static String percentileName(double percentile) {
+        return "p" + (percentile == Math.rint(percentile) ? Integer.toString((int) percentile) : Double.toString(percentile).replace('.', '_'));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    /**
+     * One point of the timeline.
+     */
+    private static class Sample {
+        private long elapsedMillis;
+        private int created;
+        private double objectsPerSecond;
+        private int inFlight;
+        private int waitingRetries;
+        private int waitingPods;
+    }
+}
@@ -0,0 +1,253 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.datatypes.PodMediaType;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Checks the exported files without importing anything (Import --dry-run).
+ *
+ * Every object is parsed and checked the way Context Service checks the objects it is asked to create: the type
+ * must match the file, a pod's media type must be valid, and each data element must have a key, a known type and
+ * a value of that type.  The customers and requests are read first, so that pods which refer to a customer or
+ * request that isn't part of the export can be counted.  Those pods would be imported with their original IDs.
+ *
+ * The number of objects read, the problems found and the parse throughput are logged for each type.
+ */
+class ImportValidator {
+    private static Logger LOGGER = Logger.getLogger("importexport");
+
+    // only the first problems found are logged individually; the rest are only counted
+    private static final int MAX_LOGGED_PROBLEMS = 100;
+
+    private static final List<String> DATA_ELEMENT_TYPES = Arrays.asList(ElementDataType.STRING,
+            ElementDataType.INTEGER, ElementDataType.LONG, ElementDataType.DOUBLE, ElementDataType.BOOLEAN);
+
+    private final Map<String, List<Path>> inputFiles;
+    private final int parserThreads;
+    private final Gson gson = CSGsonFactory.getCSJson();
+    private final UUIDSet customerIds = new UUIDSet();
+    private final UUIDSet requestIds = new UUIDSet();
+    private final Map<String, TypeSummary> summaries = new LinkedHashMap<>();
+    private final AtomicInteger loggedProblems = new AtomicInteger();
+    private final AtomicInteger podsWithoutCustomer = new AtomicInteger();
+    private final AtomicInteger podsWithoutRequest = new AtomicInteger();
+    private final AtomicInteger orphanPods = new AtomicInteger();
+
+    /**
+     * @param inputFiles the exported files, by type
+     * @param parserThreads the number of threads parsing each JSON array file
+     */
+    ImportValidator(Map<String, List<Path>> inputFiles, int parserThreads) {
+        this.inputFiles = inputFiles;
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * Reads and checks every exported object, and logs what was found.
+     * @return the number of objects which are invalid, or couldn't be parsed
+     */
+    int validate() throws Exception {
+        for (String type : new String[]{ContextObject.Types.CUSTOMER, ContextObject.Types.REQUEST, ContextObject.Types.POD}) {
+            TypeSummary summary = new TypeSummary();
+            summaries.put(type, summary);
+            long start = System.currentTimeMillis();
+            readFiles(type, summary);
+            summary.elapsedMillis = System.currentTimeMillis() - start;
+        }
+
+        int invalid = 0;
+        for (Map.Entry<String, TypeSummary> entry : summaries.entrySet()) {
+            TypeSummary summary = entry.getValue();
+            LOGGER.info(String.format(Locale.ROOT, "Dry run: read %d %s objects in %d ms (%.1f objects/sec, %.1f MB/sec)",
+                    summary.read.get(), entry.getKey(), summary.elapsedMillis,
+                    summary.elapsedMillis > 0 ? summary.read.get() * 1000.0 / summary.elapsedMillis : 0.0,
+                    summary.elapsedMillis > 0 ? summary.bytes * 1000.0 / summary.elapsedMillis / (1024 * 1024) : 0.0));
+            for (Map.Entry<String, AtomicInteger> problem : summary.problems.entrySet()) {
+                LOGGER.info("Dry run: " + problem.getValue() + " " + entry.getKey() + " objects: " + problem.getKey());
+            }
+            invalid += summary.invalid.get();
+        }
+        LOGGER.info("Dry run: " + orphanPods + " pods refer to a customer or request which is not part of the export ("
+                + podsWithoutCustomer + " to a customer, " + podsWithoutRequest + " to a request), and will be imported with their original IDs");
+        LOGGER.info("Dry run: total number of objects that would fail to import : " + invalid);
+        return invalid;
+    }
+
+    int getOrphanPods() {
+        return orphanPods.get();
+    }
+
+    int getNumberRead(String type) {
+        return summaries.get(type).read.get();
+    }
+
+    /**
+     * Reads the files of one type, several at a time if there is more than one.
+     */
+    private void readFiles(String type, TypeSummary summary) throws Exception {
+        List<Path> files = inputFiles.get(type);
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService readers = Executors.newFixedThreadPool(threads, Utils.newThreadFactory("dry-run-reader", false));
+        try {
+            List<Future<Void>> reads = new ArrayList<>();
+            for (Path file : files) {
+                summary.bytes += Files.size(file);
+                reads.add(readers.submit(() -> {
+                    readFile(file, type, summary);
+                    return null;
+                }));
+            }
+            for (Future<Void> read : reads) {
+                read.get();
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private void readFile(Path file, String type, TypeSummary summary) throws Exception {
+        if (parserThreads > 1 && file.getFileName().toString().endsWith(".json")) {
+            new ParallelJsonArrayReader(file, 0, parserThreads, gson).read((start, end) -> start,
+                    (bean, start) -> check(bean, type, summary),
+                    (start, e, token) -> problem(summary, "could not be parsed", file + " at offset " + start + ": " + e));
+            return;
+        }
+
+        try (ElementReader reader = Import.openReader(file, 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                ContextObject bean;
+                try {
+                    bean = element.toContextObject(gson);
+                } catch (RuntimeException e) {
+                    problem(summary, "could not be parsed", file + " at offset " + element.getStart() + ": " + e);
+                    continue;
+                }
+                check(bean, type, summary);
+            }
+        }
+    }
+
+    /**
+     * Checks a single object, and records the customers and requests so that the pods referring to them can be checked.
+     */
+    private void check(ContextObject bean, String type, TypeSummary summary) {
+        summary.read.incrementAndGet();
+        String problem = findProblem(bean, type);
+        if (problem != null) {
+            problem(summary, problem, bean.toString());
+        }
+
+        UUID id = bean.getId();
+        if (id != null && ContextObject.Types.CUSTOMER.equals(type)) {
+            customerIds.add(id);
+        } else if (id != null && ContextObject.Types.REQUEST.equals(type)) {
+            requestIds.add(id);
+        } else if (ContextObject.Types.POD.equals(type)) {
+            boolean missingCustomer = bean.getCustomerId() != null && !customerIds.contains(bean.getCustomerId());
+            boolean missingRequest = bean.getParentId() != null && !requestIds.contains(bean.getParentId());
+            if (missingCustomer) {
+                podsWithoutCustomer.incrementAndGet();
+            }
+            if (missingRequest) {
+                podsWithoutRequest.incrementAndGet();
+            }
+            if (missingCustomer || missingRequest) {
+                orphanPods.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns what is wrong with the object, or null if it can be imported.
+     */
+    static String findProblem(ContextObject bean, String type) {
+        if (!type.equals(bean.getType())) {
+            return "object type does not match the file";
+        }
+        if (!ContextObject.Types.POD.equals(type) && bean.getId() == null) {
+            return "no ID, so pods cannot refer to it";
+        }
+        if (ContextObject.Types.POD.equals(type) && bean.getMediaType() != null && !PodMediaType.isValidType(bean.getMediaType())) {
+            return "invalid pod media type";
+        }
+        if (bean.getDataElements() != null) {
+            for (DataElement dataElement : bean.getDataElements()) {
+                String problem = findProblem(dataElement);
+                if (problem != null) {
+                    return problem;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String findProblem(DataElement dataElement) {
+        if (dataElement == null || dataElement.getDataKey() == null) {
+            return "data element without a key";
+        }
+        String dataType = dataElement.getType();
+        Object value = dataElement.getDataValue();
+        if (dataType == null) {
+            return value == null || value instanceof String ? null : "data element without a type which is not a string";
+        }
+        if (!DATA_ELEMENT_TYPES.contains(dataType)) {
+            return "data element of an unknown type";
+        }
+        if (value == null) {
+            return null;
+        }
+        boolean valid;
+        if (ElementDataType.STRING.equals(dataType)) {
+            valid = value instanceof String;
+        } else if (ElementDataType.INTEGER.equals(dataType)) {
+            valid = value instanceof Integer;
+        } else if (ElementDataType.LONG.equals(dataType)) {
+            valid = value instanceof Long || value instanceof Integer;
+        } else if (ElementDataType.DOUBLE.equals(dataType)) {
+            valid = value instanceof Number;
+        } else {
+            valid = value instanceof Boolean;
+        }
+        return valid ? null : "data element value does not match its type";
+    }
+
+    private void problem(TypeSummary summary, String problem, String detail) {
+        summary.invalid.incrementAndGet();
+        summary.problems.computeIfAbsent(problem, key -> new AtomicInteger()).incrementAndGet();
+        if (loggedProblems.incrementAndGet() <= MAX_LOGGED_PROBLEMS) {
+            LOGGER.warning("Dry run: " + problem + " - " + detail);
+        }
+    }
+
+    /**
+     * What was found in the files of one type.
+     */
+    private static class TypeSummary {
+        private final AtomicInteger read = new AtomicInteger();
+        private final AtomicInteger invalid = new AtomicInteger();
+        private final Map<String, AtomicInteger> problems = new ConcurrentHashMap<>();
+        private long bytes;
+        private long elapsedMillis;
+    }
+}
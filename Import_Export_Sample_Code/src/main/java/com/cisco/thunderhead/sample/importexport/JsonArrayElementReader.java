@@ -0,0 +1,120 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the objects of a JSON array file (as written by JsonArrayWriter) one at a time, without parsing them.
+ * The byte offset of every object in the file is tracked, so that reading can later be restarted
+ * from any object by seeking straight to it instead of reading the file from the beginning.
+ */
+class JsonArrayElementReader implements ElementReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ByteArrayOutputStream element = new ByteArrayOutputStream();
+    private long position;
+    private boolean started;
+    private boolean finished = false;
+
+    /**
+     * @param file the JSON array file
+     * @param startOffset byte offset to start reading from: 0 for the start of the file, otherwise an offset
+     *                    previously returned by {@link Element#getStart()} or {@link Element#getEnd()}
+     */
+    JsonArrayElementReader(Path file, long startOffset) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(startOffset);
+        this.in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+        this.position = startOffset;
+        this.started = startOffset > 0;
+    }
+
+    /**
+     * Returns the next object in the array, or null once the end of the array has been reached.
+     */
+    @Override
+    public Element next() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        // skip to the start of the next object
+        int b = skipWhitespace();
+        if (!started) {
+            if (b != '[') {
+                throw new IOException("Expected a JSON array at offset " + (position - 1));
+            }
+            started = true;
+            b = skipWhitespace();
+        }
+        if (b == ',') {
+            b = skipWhitespace();
+        }
+        if (b == ']' || b == -1) {
+            finished = true;
+            return null;
+        }
+        if (b != '{') {
+            throw new IOException("Expected a JSON object at offset " + (position - 1));
+        }
+
+        // read up to the matching closing brace, ignoring any braces within strings
+        long start = position - 1;
+        element.reset();
+        element.write(b);
+        int depth = 1;
+        boolean inString = false;
+        boolean escaped = false;
+        while (depth > 0) {
+            b = read();
+            if (b == -1) {
+                throw new IOException("Unexpected end of file in object starting at offset " + start);
+            }
+            element.write(b);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return new Element(start, position, element.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            position++;
+        }
+        return b;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int b;
+        do {
+            b = read();
+        } while (b == ' ' || b == '\n' || b == '\r' || b == '\t');
+        return b;
+    }
+}
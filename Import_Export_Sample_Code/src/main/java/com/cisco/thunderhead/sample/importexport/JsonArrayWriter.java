@@ -2,6 +2,8 @@ package com.cisco.thunderhead.sample.importexport;
 
 import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,13 +18,15 @@ import java.util.List;
 /**+
  * Writes JSON entities to a file in an array.
  * Allows you to write the array to file over time, instead of needing to hold the entire array in memory.
+ * The writer may be shared between threads.
  */
-public class JsonArrayWriter {
+public class JsonArrayWriter implements EntityWriter {
     private static final String EXTENSION = ".json";
 
     private Gson gsonHandler;
     private FileWriter writer;
     private BufferedWriter bufferedWriter;
+    private JsonWriter jsonWriter;
 
     private int numberOfEntities = 0;
     private static Logger LOGGER = LoggerFactory.getLogger(JsonArrayWriter.class);
@@ -40,7 +44,7 @@ public class JsonArrayWriter {
         gsonHandler = CSGsonFactory.getCSJson(printPretty);
 
         Path filePath = createFile(name, outputDir, deleteExisting);
-        initWriter(filePath);
+        initWriter(filePath, printPretty);
     }
 
     /**+
@@ -48,11 +52,21 @@ public class JsonArrayWriter {
      * @param jsonObject : json list of entities
      * @param <T> : Type of the entity
      */
-    public <T> void writeEntity(T jsonObject) throws IOException {
+    @Override
+    public synchronized <T> void writeEntity(T jsonObject) throws IOException {
         if(numberOfEntities!=0 ){
             bufferedWriter.write(",");
         }
-        bufferedWriter.write(gsonHandler.toJson(jsonObject).toString());
+        // serialize straight into the file, instead of building a string of each entity first
+        try {
+            gsonHandler.toJson(jsonObject, jsonObject != null ? jsonObject.getClass() : Object.class, jsonWriter);
+        } catch (JsonIOException e) {
+            // Gson wraps the errors of the file it writes to, which callers need to see as IOExceptions
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
         numberOfEntities++;
     }
 
@@ -61,7 +75,8 @@ public class JsonArrayWriter {
      * @param jsonList : json list of entities
      * @param <T> : Type of the entity
      */
-    public <T> void writeEntities(List<T> jsonList) throws IOException {
+    @Override
+    public synchronized <T> void writeEntities(List<T> jsonList) throws IOException {
         for(T elem : jsonList){
             writeEntity(elem);
         }
@@ -70,7 +85,8 @@ public class JsonArrayWriter {
     /**
      * close : Write last character to the file. Then close all the streams.
      */
-    public void close() throws IOException {
+    @Override
+    public synchronized void close() throws IOException {
         try {
             bufferedWriter.write("]");
             bufferedWriter.flush();
@@ -80,7 +96,8 @@ public class JsonArrayWriter {
         }
     }
 
-    public int getNumberOfEntities(){
+    @Override
+    public synchronized int getNumberOfEntities(){
         return numberOfEntities;
     }
 
@@ -97,9 +114,16 @@ public class JsonArrayWriter {
         return filePath;
     }
 
-    private void initWriter(Path filePath) throws IOException {
+    private void initWriter(Path filePath, boolean printPretty) throws IOException {
         writer = new FileWriter(filePath.toString(), true);
         bufferedWriter = new BufferedWriter(writer);
         bufferedWriter.write("[");
+
+        // The JsonWriter writes each entity as a separate top level value, and the array's brackets and commas
+        // are written around them directly.  It is configured like the JsonWriter Gson.toJson(Object) would use.
+        jsonWriter = new JsonWriter(bufferedWriter);
+        if (printPretty) {
+            jsonWriter.setIndent("  ");
+        }
     }
 }
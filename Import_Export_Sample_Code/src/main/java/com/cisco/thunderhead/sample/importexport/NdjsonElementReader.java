@@ -0,0 +1,84 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the objects of a gzipped newline-delimited JSON segment (as written by NdjsonSegmentWriter) one at a time,
+ * without parsing them.  Offsets are into the uncompressed JSON; since a gzip stream can't be seeked, restarting
+ * from an offset decompresses and skips everything before it.
+ */
+class NdjsonElementReader implements ElementReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ByteArrayOutputStream element = new ByteArrayOutputStream();
+    private long position;
+
+    /**
+     * @param file the segment file
+     * @param startOffset offset in the uncompressed JSON to start reading from: 0 for the start of the file,
+     *                    otherwise an offset previously returned by {@link Element#getStart()} or {@link Element#getEnd()}
+     */
+    NdjsonElementReader(Path file, long startOffset) throws IOException {
+        this.in = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+        try {
+            long remaining = startOffset;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    throw new EOFException("Offset " + startOffset + " is past the end of " + file);
+                }
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        this.position = startOffset;
+    }
+
+    @Override
+    public Element next() throws IOException {
+        while (true) {
+            long start = position;
+            element.reset();
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+                element.write(b);
+            }
+
+            // skip blank lines, and the carriage return of files which have been converted to Windows line endings
+            int length = element.size();
+            byte[] json = element.toByteArray();
+            while (length > 0 && (json[length - 1] == '\r' || json[length - 1] == ' ')) {
+                length--;
+            }
+            if (length > 0) {
+                if (json[0] != '{') {
+                    throw new IOException("Expected a JSON object at offset " + start);
+                }
+                return new Element(start, position, length == json.length ? json : Arrays.copyOf(json, length));
+            }
+            if (b == -1) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,182 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes JSON entities as gzipped newline-delimited JSON, one entity per line, split into segments of
+ * a bounded size (e.g. pod-00001.ndjson.gz, pod-00002.ndjson.gz, ...) which can be imported in parallel.
+ * Once every segment has been written, a manifest listing them is written (e.g. pod.manifest.json).
+ * The writer may be shared between threads.
+ */
+class NdjsonSegmentWriter implements EntityWriter {
+    static final String EXTENSION = ".ndjson.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static Logger LOGGER = LoggerFactory.getLogger(NdjsonSegmentWriter.class);
+
+    // never pretty printed, as each entity has to be on a single line
+    private Gson gsonHandler = CSGsonFactory.getCSJson(false);
+    private final Path outputDir;
+    private final long segmentSize;
+    private final SegmentManifest manifest = new SegmentManifest();
+
+    private CountingOutputStream out;
+    private Writer writer;
+    private JsonWriter jsonWriter;
+    private String segmentFile;
+    private int segmentEntities = 0;
+    private int numberOfEntities = 0;
+    private boolean closed = false;
+
+    /**
+     * Writes JSON entities to segment files
+     * @param name prefix of the files (e.g. name="bob" will output to "bob-00001.ndjson.gz" and "bob.manifest.json")
+     * @param outputDir Output directory to write the files
+     * @param segmentSize a new segment is started once a segment holds this many bytes of uncompressed JSON
+     * @param deleteExisting Whether or to overwrite existing files. If set to false and the files already exist, will throw an exception.
+     */
+    NdjsonSegmentWriter(String name, Path outputDir, long segmentSize, boolean deleteExisting) throws IOException {
+        this.outputDir = outputDir;
+        this.segmentSize = segmentSize;
+        manifest.type = name;
+
+        Path manifestPath = SegmentManifest.path(outputDir, name);
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(outputDir, name + "-*" + EXTENSION)) {
+            for (Path segment : segments) {
+                if (!deleteExisting) {
+                    throw new IOException("File already exists: " + segment.toString());
+                }
+                Files.delete(segment);
+            }
+        }
+        if (deleteExisting) {
+            Files.deleteIfExists(manifestPath);
+        } else if (Files.exists(manifestPath)) {
+            throw new IOException("File already exists: " + manifestPath.toString());
+        }
+    }
+
+    @Override
+    public synchronized <T> void writeEntity(T jsonObject) throws IOException {
+        if (out == null) {
+            startSegment();
+        }
+        // serialize straight into the segment, instead of building a string of each entity first
+        try {
+            gsonHandler.toJson(jsonObject, jsonObject != null ? jsonObject.getClass() : Object.class, jsonWriter);
+        } catch (JsonIOException e) {
+            // Gson wraps the errors of the segment it writes to, which callers need to see as IOExceptions
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        writer.write('\n');
+        // pass the encoded entity on, so that the size of the segment is up to date
+        writer.flush();
+        segmentEntities++;
+        numberOfEntities++;
+        if (out.count >= segmentSize) {
+            finishSegment();
+        }
+    }
+
+    @Override
+    public synchronized <T> void writeEntities(List<T> jsonList) throws IOException {
+        for (T elem : jsonList) {
+            writeEntity(elem);
+        }
+    }
+
+    /**
+     * Finishes the last segment, then writes the manifest.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        finishSegment();
+        manifest.entities = numberOfEntities;
+        manifest.write(outputDir);
+        LOGGER.info("Wrote " + numberOfEntities + " " + manifest.type + " in " + manifest.segments.size() + " segments");
+    }
+
+    @Override
+    public synchronized int getNumberOfEntities() {
+        return numberOfEntities;
+    }
+
+    private void startSegment() throws IOException {
+        segmentFile = String.format("%s-%05d%s", manifest.type, manifest.segments.size() + 1, EXTENSION);
+        OutputStream file = Files.newOutputStream(outputDir.resolve(segmentFile), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        out = new CountingOutputStream(new BufferedOutputStream(new GZIPOutputStream(file, BUFFER_SIZE), BUFFER_SIZE));
+        // the files are written using the platform's default encoding, like JsonArrayWriter
+        writer = new OutputStreamWriter(out, Charset.defaultCharset());
+        jsonWriter = new JsonWriter(writer);
+        segmentEntities = 0;
+    }
+
+    private void finishSegment() throws IOException {
+        if (out == null) {
+            return;
+        }
+        long segmentBytes = out.count;
+        try {
+            writer.close();
+        } finally {
+            out = null;
+            writer = null;
+            jsonWriter = null;
+        }
+        manifest.segments.add(new SegmentManifest.Segment(segmentFile, segmentEntities, segmentBytes));
+    }
+
+    /**
+     * Counts the uncompressed bytes written to a segment.  Flushing only passes the bytes on to the
+     * buffer below it, so that the segment can be flushed after every entity without compressing it piecemeal.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
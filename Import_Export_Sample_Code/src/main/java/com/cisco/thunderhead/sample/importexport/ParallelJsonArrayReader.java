@@ -0,0 +1,351 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the objects of a JSON array file (as written by JsonArrayWriter) with several parser threads.
+ *
+ * The file is memory-mapped and scanned for the boundaries of the top-level objects, keeping track of whether
+ * each byte is within a string or escaped.  Scanning is much cheaper than parsing, so it is done by the calling
+ * thread, which hands consecutive objects to the parser threads in chunks of a few MB.  Each object is decoded
+ * and parsed straight from the mapped file, without being copied into a String first.
+ *
+ * The objects are announced to the caller in file order as they are found, so that the progress through the
+ * file can be journaled, but they are parsed and handed over in whatever order the parser threads get to them.
+ */
+class ParallelJsonArrayReader {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    // how much of the file is mapped at a time
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+    // the number of chunks waiting to be parsed, per parser thread
+    private static final int CHUNKS_PER_PARSER = 2;
+
+    /**
+     * Called on the reading thread for each object, in file order, before the object is parsed.
+     */
+    @FunctionalInterface
+    interface ScanListener {
+        /**
+         * @param start byte offset of the first character of the object
+         * @param end byte offset just past the last character of the object
+         * @return a token which will be passed to {@link ParseListener#parsed} with the object
+         */
+        long scanned(long start, long end);
+    }
+
+    /**
+     * Called on a parser thread for each object, once it has been parsed.
+     */
+    @FunctionalInterface
+    interface ParseListener {
+        void parsed(ContextObject bean, long token) throws Exception;
+    }
+
+    /**
+     * Called on a parser thread for each object which couldn't be parsed.
+     */
+    @FunctionalInterface
+    interface ParseErrorListener {
+        /**
+         * @param start byte offset of the first character of the object
+         * @param e what was wrong with the object
+         * @param token the token returned by {@link ScanListener#scanned} for the object
+         * @throws Exception to stop reading the file
+         */
+        void failed(long start, RuntimeException e, long token) throws Exception;
+    }
+
+    private final Path file;
+    private final long startOffset;
+    private final int parserThreads;
+    // time spent parsing objects, summed over the parser threads
+    private final LongAdder parseNanos = new LongAdder();
+    private final Gson gson;
+    private final int chunkSize;
+    private final long windowSize;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param file the JSON array file
+     * @param startOffset byte offset to start reading from: 0 for the start of the file, otherwise the start or
+     *                    end offset of an object
+     * @param parserThreads the number of threads to parse the objects with
+     * @param gson Gson to parse the objects with
+     */
+    ParallelJsonArrayReader(Path file, long startOffset, int parserThreads, Gson gson) {
+        this(file, startOffset, parserThreads, gson, CHUNK_SIZE, WINDOW_SIZE);
+    }
+
+    ParallelJsonArrayReader(Path file, long startOffset, int parserThreads, Gson gson, int chunkSize, long windowSize) {
+        this.file = file;
+        this.startOffset = startOffset;
+        this.parserThreads = parserThreads;
+        this.gson = gson;
+        this.chunkSize = chunkSize;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * The time spent parsing objects so far, summed over the parser threads.
+     */
+    long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    /**
+     * Reads the whole file, returning once every object has been parsed and handed to the listener.
+     * @throws Exception the file isn't a JSON array, or an object couldn't be parsed, or the listener failed
+     */
+    void read(ScanListener scanListener, ParseListener parseListener) throws Exception {
+        read(scanListener, parseListener, (start, e, token) -> {
+            throw e;
+        });
+    }
+
+    /**
+     * Reads the whole file, handing the objects which can't be parsed to the error listener.
+     * @throws Exception the file isn't a JSON array, or one of the listeners failed
+     */
+    void read(ScanListener scanListener, ParseListener parseListener, ParseErrorListener errorListener) throws Exception {
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, Utils.newThreadFactory("import-parser", false));
+        Semaphore waitingChunks = new Semaphore(parserThreads * CHUNKS_PER_PARSER);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(channel, scanListener, chunk -> {
+                waitingChunks.acquire();
+                if (failure.get() != null) {
+                    waitingChunks.release();
+                    return false;
+                }
+                parsers.execute(() -> {
+                    try {
+                        parse(chunk, parseListener, errorListener);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        waitingChunks.release();
+                    }
+                });
+                return true;
+            });
+            parsers.shutdown();
+            parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof Exception) {
+            throw (Exception) e;
+        } else if (e != null) {
+            throw (Error) e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkConsumer {
+        /**
+         * @return false to stop scanning
+         */
+        boolean accept(Chunk chunk) throws InterruptedException;
+    }
+
+    /**
+     * Finds the objects in the file, and hands them to the consumer in chunks.
+     */
+    private void scan(FileChannel channel, ScanListener scanListener, ChunkConsumer consumer) throws IOException, InterruptedException {
+        long size = channel.size();
+        long position = startOffset;
+        long mappedSize = windowSize;
+        boolean started = startOffset > 0;
+
+        while (position < size) {
+            long windowStart = position;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(mappedSize, size - windowStart));
+            int limit = window.limit();
+            Chunk chunk = new Chunk(window, windowStart);
+
+            // start of the object being scanned within the window, or -1 between objects
+            int objectStart = -1;
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            int i;
+            for (i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (objectStart < 0) {
+                    if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                        continue;
+                    }
+                    if (!started) {
+                        if (b != '[') {
+                            throw new IOException("Expected a JSON array at offset " + (windowStart + i));
+                        }
+                        started = true;
+                    } else if (b == ']') {
+                        break;
+                    } else if (b == '{') {
+                        objectStart = i;
+                        depth = 1;
+                    } else if (b != ',') {
+                        throw new IOException("Expected a JSON object at offset " + (windowStart + i));
+                    }
+                } else if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    long token = scanListener.scanned(windowStart + objectStart, windowStart + i + 1);
+                    chunk.add(objectStart, i + 1, token);
+                    objectStart = -1;
+                    if (chunk.size() >= chunkSize) {
+                        if (!consumer.accept(chunk)) {
+                            return;
+                        }
+                        chunk = new Chunk(window, windowStart);
+                    }
+                }
+            }
+
+            if (!chunk.isEmpty() && !consumer.accept(chunk)) {
+                return;
+            }
+            if (i < limit) {
+                // the end of the array
+                return;
+            }
+            if (objectStart < 0) {
+                position = windowStart + limit;
+            } else if (windowStart + limit >= size) {
+                throw new IOException("Unexpected end of file in object starting at offset " + (windowStart + objectStart));
+            } else {
+                // the object runs past the end of the window, so map the next window from the start of the object
+                if (objectStart == 0) {
+                    mappedSize = Math.min(mappedSize * 2, Integer.MAX_VALUE);
+                }
+                position = windowStart + objectStart;
+            }
+        }
+    }
+
+    private void parse(Chunk chunk, ParseListener parseListener, ParseErrorListener errorListener) throws Exception {
+        ByteBuffer buffer = chunk.window.duplicate();
+        for (int i = 0; i < chunk.count; i++) {
+            buffer.clear();
+            buffer.position(chunk.starts[i]);
+            buffer.limit(chunk.ends[i]);
+            // the files are written and read using the platform's default encoding
+            ContextObject bean;
+            long parseStart = System.nanoTime();
+            try {
+                bean = gson.fromJson(new InputStreamReader(new ByteBufferInputStream(buffer), Charset.defaultCharset()), ContextObject.class);
+            } catch (RuntimeException e) {
+                errorListener.failed(chunk.windowStart + chunk.starts[i], e, chunk.tokens[i]);
+                continue;
+            } finally {
+                parseNanos.add(System.nanoTime() - parseStart);
+            }
+            parseListener.parsed(bean, chunk.tokens[i]);
+        }
+    }
+
+    /**
+     * Reads the bytes between a buffer's position and its limit, so that an object can be decoded as it is parsed
+     * rather than copied out of the mapped file first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Consecutive objects within a mapped window of the file.
+     */
+    private static class Chunk {
+        private final ByteBuffer window;
+        private final long windowStart;
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private long[] tokens = new long[64];
+        private int count = 0;
+
+        Chunk(ByteBuffer window, long windowStart) {
+            this.window = window;
+            this.windowStart = windowStart;
+        }
+
+        void add(int start, int end, long token) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                tokens = Arrays.copyOf(tokens, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            tokens[count] = token;
+            count++;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Number of bytes from the start of the first object to the end of the last.
+         */
+        int size() {
+            return count == 0 ? 0 : ends[count - 1] - starts[0];
+        }
+    }
+}
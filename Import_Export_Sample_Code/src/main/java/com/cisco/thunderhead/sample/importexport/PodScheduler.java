@@ -0,0 +1,193 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Decides when a pod can be imported.
+ * A pod can only be created once the customer and request it refers to have been imported, because the pod
+ * has to be created with their new IDs.  Instead of waiting for every customer and request to be imported,
+ * each pod is held back only until the objects it refers to have been imported (or have failed to import).
+ * Pods without a customer or request go straight through.
+ *
+ * Once all of the customers and requests have been read and imported, any pod that is still waiting refers
+ * to an object which is not part of the export, and is released with its original IDs.
+ */
+class PodScheduler {
+
+    private final CreatePipeline pipeline;
+    private final UUIDMap idMap;
+    private final int maxWaitingPods;
+
+    // Waiting pods, indexed by the original (exported) ID of each object they are waiting for
+    private final Map<UUID, List<WaitingPod>> waitingPods = new HashMap<>();
+    // Customers and requests which failed to import, so pods referring to them need not wait
+    private final Set<UUID> failedParents = new HashSet<>();
+    private int numberOfWaitingPods = 0;
+    private int outstandingParents = 0;
+    private int runningParentReaders;
+    private boolean parentsComplete = false;
+
+    /**
+     * @param pipeline pipeline on which the pods are created
+     * @param idMap mapping between the original and new IDs of the imported customers and requests
+     * @param parentReaders number of threads reading customers and requests
+     * @param maxWaitingPods the pod reader is blocked while this many pods are waiting
+     */
+    PodScheduler(CreatePipeline pipeline, UUIDMap idMap, int parentReaders, int maxWaitingPods) {
+        this.pipeline = pipeline;
+        this.idMap = idMap;
+        this.runningParentReaders = parentReaders;
+        this.maxWaitingPods = maxWaitingPods;
+    }
+
+    /**
+     * Called before any pod is offered when an import is resumed, with the customers and requests which failed to
+     * import before it was interrupted, so that pods referring to them don't wait for them to be read again.
+     * @param oldIds the original (exported) IDs of the objects which failed
+     */
+    synchronized void parentsFailed(Collection<UUID> oldIds) {
+        failedParents.addAll(oldIds);
+    }
+
+    /**
+     * Called by the pod reader for each pod.  The pod is either queued for creation, or held back until the
+     * customer and request it refers to have been imported.
+     * @param pod the pod to import
+     * @param createPod creates the pod, run on a worker thread
+     */
+    void offer(ContextObject pod, Runnable createPod) throws InterruptedException {
+        synchronized (this) {
+            while (!parentsComplete && numberOfWaitingPods >= maxWaitingPods) {
+                wait();
+            }
+
+            if (!parentsComplete) {
+                Set<UUID> missing = new HashSet<>();
+                addIfMissing(missing, pod.getCustomerId());
+                addIfMissing(missing, pod.getParentId());
+                if (!missing.isEmpty()) {
+                    WaitingPod waitingPod = new WaitingPod(createPod, missing.size());
+                    for (UUID id : missing) {
+                        waitingPods.computeIfAbsent(id, key -> new ArrayList<>()).add(waitingPod);
+                    }
+                    numberOfWaitingPods++;
+                    return;
+                }
+            }
+        }
+        pipeline.submit(createPod);
+    }
+
+    /**
+     * Called when a customer or request has been queued for creation.
+     */
+    synchronized void parentQueued() {
+        outstandingParents++;
+    }
+
+    /**
+     * Called by a worker thread once a customer or request has been imported, or has failed to import.
+     * @param oldId the original (exported) ID of the object
+     * @param imported whether the object was imported
+     */
+    void parentResolved(UUID oldId, boolean imported) {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            if (!imported && oldId != null) {
+                failedParents.add(oldId);
+            }
+
+            List<WaitingPod> waiting = oldId != null ? waitingPods.remove(oldId) : null;
+            if (waiting != null) {
+                for (WaitingPod waitingPod : waiting) {
+                    if (--waitingPod.missing == 0) {
+                        ready.add(waitingPod.createPod);
+                    }
+                }
+            }
+
+            outstandingParents--;
+            ready.addAll(completeIfDone());
+            release(ready.size());
+        }
+        ready.forEach(this::createReleased);
+    }
+
+    /**
+     * Called when a thread reading customers or requests has finished, whether or not it succeeded.
+     */
+    void parentReaderFinished() {
+        List<Runnable> ready;
+        synchronized (this) {
+            runningParentReaders--;
+            ready = completeIfDone();
+            release(ready.size());
+        }
+        ready.forEach(this::createReleased);
+    }
+
+    synchronized int getNumberOfWaitingPods() {
+        return numberOfWaitingPods;
+    }
+
+    private void addIfMissing(Set<UUID> missing, UUID id) {
+        if (id != null && !idMap.containsKey(id) && !failedParents.contains(id)) {
+            missing.add(id);
+        }
+    }
+
+    /**
+     * Once every customer and request has been read and resolved, release all of the remaining pods.
+     */
+    private List<Runnable> completeIfDone() {
+        List<Runnable> ready = new ArrayList<>();
+        if (parentsComplete || runningParentReaders > 0 || outstandingParents > 0) {
+            return ready;
+        }
+
+        parentsComplete = true;
+        Set<WaitingPod> remaining = new HashSet<>();
+        for (List<WaitingPod> waiting : waitingPods.values()) {
+            remaining.addAll(waiting);
+        }
+        waitingPods.clear();
+        for (WaitingPod waitingPod : remaining) {
+            ready.add(waitingPod.createPod);
+        }
+        return ready;
+    }
+
+    private void release(int count) {
+        if (count > 0 || parentsComplete) {
+            numberOfWaitingPods -= count;
+            notifyAll();
+        }
+    }
+
+    private void createReleased(Runnable createPod) {
+        // the number of released pods is bounded by maxWaitingPods, so it is safe to queue them without blocking
+        pipeline.submitWithoutBlocking(createPod);
+    }
+
+    /**
+     * The task creating a pod, and the number of objects the pod is still waiting for.
+     */
+    private static class WaitingPod {
+        private final Runnable createPod;
+        private int missing;
+
+        WaitingPod(Runnable createPod, int missing) {
+            this.createPod = createPod;
+            this.missing = missing;
+        }
+    }
+}
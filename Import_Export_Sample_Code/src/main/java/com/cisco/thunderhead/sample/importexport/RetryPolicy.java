@@ -0,0 +1,98 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a failed create should be retried, and how long to wait before retrying it.
+ * Throttling, timeouts and server errors are retried; other failures (such as an invalid object) are not.
+ * The delay doubles after each attempt, up to a maximum, and is jittered so that objects which failed
+ * together aren't all retried at the same moment.
+ *
+ * The number of retries is counted by the status (or exception) which caused them, for the summary.
+ */
+class RetryPolicy {
+    private static final long MAX_DELAY_MILLIS = 30000;
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final Map<String, AtomicInteger> retries = new ConcurrentHashMap<>();
+    private final AtomicInteger exhausted = new AtomicInteger();
+
+    /**
+     * @param maxAttempts the number of times to try to create an object, including the first; 1 disables retries
+     * @param initialDelayMillis the delay before the first retry
+     */
+    RetryPolicy(int maxAttempts, long initialDelayMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Whether a create which returned the given status may succeed if it is retried.
+     */
+    static boolean isRetryable(int status) {
+        return AdaptiveSizer.isThrottled(status) || status == 408 || status == 500 || status == 502;
+    }
+
+    /**
+     * Whether a create which threw the given exception may succeed if it is retried: Context Service timed
+     * out or throttled the request, or the connection failed.
+     */
+    static boolean isRetryable(Throwable e) {
+        if (AdaptiveSizer.isThrottled(e)) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The delay before the given retry: half of the backoff for that attempt plus a random part of the other half.
+     * @param attempt the number of attempts made so far (1 after the first failure)
+     */
+    long delayMillis(int attempt) {
+        long backoff = Math.min(MAX_DELAY_MILLIS, initialDelayMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Records that an object is being retried.
+     * @param reason the status, or name of the exception, that caused the retry
+     */
+    void retrying(String reason) {
+        retries.computeIfAbsent(reason, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Records that an object failed on its last attempt with a failure which would otherwise have been retried.
+     */
+    void exhausted() {
+        exhausted.incrementAndGet();
+    }
+
+    /**
+     * The number of retries, by the status or exception that caused them.
+     */
+    Map<String, Integer> getRetries() {
+        Map<String, Integer> counts = new TreeMap<>();
+        retries.forEach((reason, count) -> counts.put(reason, count.get()));
+        return counts;
+    }
+
+    int getExhausted() {
+        return exhausted.get();
+    }
+}
@@ -0,0 +1,91 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the segment files holding the exported entities of one type, when they are exported as gzipped
+ * newline-delimited JSON (see {@link NdjsonSegmentWriter}).  The manifest is written once every segment is
+ * complete, so an export which was killed part way through has no manifest.
+ *
+ * For example, pod.manifest.json:
+ * {"type":"pod","format":"ndjson.gz","entities":3,"segments":[{"file":"pod-00001.ndjson.gz","entities":3,"bytes":1024}]}
+ */
+class SegmentManifest {
+    static final String EXTENSION = ".manifest.json";
+    static final String FORMAT = "ndjson.gz";
+
+    private static Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    String type;
+    String format = FORMAT;
+    int entities;
+    List<Segment> segments = new ArrayList<>();
+
+    /**
+     * A single segment file.
+     */
+    static class Segment {
+        String file;
+        int entities;
+        // uncompressed size
+        long bytes;
+
+        Segment(String file, int entities, long bytes) {
+            this.file = file;
+            this.entities = entities;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Returns the path of the manifest for the given type.
+     */
+    static Path path(Path dir, String type) {
+        return dir.resolve(type + EXTENSION);
+    }
+
+    /**
+     * Reads the manifest of the given type.
+     * @throws IOException the manifest can't be read, or is not a manifest of segments
+     */
+    static SegmentManifest read(Path dir, String type) throws IOException {
+        Path file = path(dir, type);
+        SegmentManifest manifest;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            manifest = gson.fromJson(reader, SegmentManifest.class);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid manifest: " + file, e);
+        }
+        if (manifest == null || !FORMAT.equals(manifest.format) || manifest.segments == null) {
+            throw new IOException("Invalid manifest: " + file);
+        }
+        return manifest;
+    }
+
+    void write(Path dir) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path(dir, type), StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+    }
+
+    /**
+     * Returns the paths of the segment files, in the order they were written.
+     */
+    List<Path> segmentPaths(Path dir) {
+        List<Path> paths = new ArrayList<>();
+        for (Segment segment : segments) {
+            paths.add(dir.resolve(segment.file));
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,109 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * SnapshotConverter: Converts the files written by the Export sample to binary snapshots, or back to JSON arrays.
+ * No connection to Context Service is needed.
+ *
+ * Program arguments :
+ * -d, --deleteExisting  If set, overwrites existing files in the output directory (disabled by default)
+ * -i, --input           Specify the directory containing the exported data (JSON arrays, snapshots or gzipped segments)
+ * -j, --toJson          If set, writes JSON arrays instead of snapshots (disabled by default)
+ * -o, --output          Specify the output directory
+ * -p, --pretty          With --toJson, pretty prints the output json (disabled by default)
+ *
+ * The output can be imported with the Import sample as usual.
+ */
+public class SnapshotConverter {
+    private static Logger LOGGER = LoggerFactory.getLogger(SnapshotConverter.class);
+
+    private static final String[] TYPES = {"pod", "customer", "request"};
+
+    public static void main(String args[]) throws Exception {
+        Arguments arguments = new Arguments();
+        arguments.parseArguments(args);
+        convert(Paths.get(arguments.inputDir), Paths.get(arguments.outputDir), arguments.toJson, arguments.pretty, arguments.deleteExisting);
+    }
+
+    /**
+     * Converts the pod, customer and request files in the input directory.
+     * @param toJson whether to write JSON arrays, or snapshots
+     * @return the number of entities converted
+     */
+    static int convert(Path inputDir, Path outputDir, boolean toJson, boolean pretty, boolean deleteExisting) throws IOException {
+        int total = 0;
+        for (String type : TYPES) {
+            try (EntityWriter writer = toJson ? new JsonArrayWriter(type, outputDir, pretty, deleteExisting) : new SnapshotWriter(type, outputDir, deleteExisting)) {
+                for (Path file : Import.findInputFiles(inputDir, type)) {
+                    try (ElementReader reader = Import.openReader(file, 0)) {
+                        ElementReader.Element element;
+                        while ((element = reader.next()) != null) {
+                            writer.writeEntity(element.toContextObject(CSGsonFactory.getCSJson()));
+                        }
+                    }
+                }
+                LOGGER.info("Converted " + writer.getNumberOfEntities() + " " + type + " entities");
+                total += writer.getNumberOfEntities();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Command line argument specifications
+     */
+    static class Arguments {
+        @Parameter(names = {"-i", "--input"}, description = "Specify the directory containing the exported data", required = true)
+        String inputDir;
+
+        @Parameter(names = {"-o", "--output"}, description = "Specify the output directory", required = true)
+        String outputDir;
+
+        @Parameter(names = {"-j", "--toJson"}, description = "Write JSON arrays instead of snapshots (Default: false)", required = false)
+        boolean toJson = false;
+
+        @Parameter(names = {"-p", "--pretty"}, description = "With --toJson, specify pretty print output (Default: false)", required = false)
+        boolean pretty = false;
+
+        @Parameter(names = {"-d", "--deleteExisting"}, description = "Overwrite existing files in the output directory (Default: false)", required = false)
+        boolean deleteExisting = false;
+
+        /**+
+         * parseArguments : parse the arguments using JCommander
+         * @param args
+         */
+        void parseArguments(String args[]) {
+            try {
+                new JCommander(this, args);
+
+                if (pretty && !toJson) {
+                    throw new ParameterException("pretty can only be used with toJson");
+                }
+
+                if (!new File(outputDir).isDirectory()) {
+                    throw new ParameterException("Output directory " + outputDir + " does not exist");
+                }
+
+                if (Paths.get(inputDir).toAbsolutePath().normalize().equals(Paths.get(outputDir).toAbsolutePath().normalize())) {
+                    throw new ParameterException("The output directory must not be the input directory");
+                }
+            } catch (ParameterException e) {
+                // Display usage - this will catch the case where no args are specified as well as the case where required args are missing
+                JCommander jCommander = new JCommander(this);
+                jCommander.usage();
+                throw (e);
+            }
+        }
+    }
+}
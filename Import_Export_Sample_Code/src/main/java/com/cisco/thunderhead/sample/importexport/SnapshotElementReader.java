@@ -0,0 +1,624 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static com.cisco.thunderhead.sample.importexport.SnapshotFormat.*;
+
+/**
+ * Reads the entities of a snapshot file (see {@link SnapshotFormat}) one at a time.
+ * The file is memory-mapped, and each entity is decoded straight from the mapped file into a ContextObject,
+ * without being parsed as JSON.  The offsets of the elements are the offsets of their records, so reading
+ * can be restarted from any entity.
+ */
+class SnapshotElementReader implements ElementReader {
+    // how much of the file is mapped at a time
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final Gson gson = SnapshotFormat.gson();
+    private final FileChannel channel;
+    private final long size;
+    private final List<String> dictionary = new ArrayList<>();
+    private final TokenReader tokenReader = new TokenReader(dictionary);
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    /**
+     * @param file the snapshot file
+     * @param startOffset offset of the record to start reading at, or 0 to read the whole file
+     */
+    SnapshotElementReader(Path file, long startOffset) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            byte[] header = new byte[HEADER.length];
+            if (size < HEADER.length) {
+                throw new IOException("Not a snapshot file - " + file.toString());
+            }
+            slice(0, HEADER.length).get(header);
+            if (!Arrays.equals(header, HEADER)) {
+                throw new IOException("Not a snapshot file - " + file.toString());
+            }
+            position = HEADER.length;
+
+            // the dictionary is made up of every dictionary record before the start offset
+            while (position < startOffset) {
+                ByteBuffer recordHeader = slice(position, RECORD_HEADER_SIZE);
+                byte kind = recordHeader.get();
+                int length = recordHeader.getInt();
+                if (kind == DICTIONARY_RECORD) {
+                    readDictionary(slice(position + RECORD_HEADER_SIZE, length));
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+            if (position != Math.max(startOffset, HEADER.length)) {
+                throw new IOException("The start offset " + startOffset + " is not the start of a record in " + file.toString());
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Element next() throws IOException {
+        while (position < size) {
+            long start = position;
+            ByteBuffer recordHeader = slice(start, RECORD_HEADER_SIZE);
+            byte kind = recordHeader.get();
+            int length = recordHeader.getInt();
+            ByteBuffer record = slice(start + RECORD_HEADER_SIZE, length);
+            position = start + RECORD_HEADER_SIZE + length;
+
+            if (kind == DICTIONARY_RECORD) {
+                readDictionary(record);
+            } else if (kind == ENTITY_RECORD) {
+                tokenReader.reset(record);
+                ContextObject bean = gson.fromJson(tokenReader, ContextObject.class);
+                return new SnapshotElement(start, position, bean);
+            } else {
+                throw new IOException("Invalid record at offset " + start);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readDictionary(ByteBuffer record) throws IOException {
+        tokenReader.reset(record);
+        int count = (int) tokenReader.readVarint();
+        for (int i = 0; i < count; i++) {
+            dictionary.add(tokenReader.readString());
+        }
+    }
+
+    /**
+     * Returns the given part of the file, mapping a new window of the file if it isn't in the current one.
+     */
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long mappedLength = Math.min(Math.max(WINDOW_SIZE, length), size - offset);
+            if (mappedLength < length) {
+                throw new EOFException("The snapshot file is truncated");
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mappedLength);
+            windowStart = offset;
+        }
+
+        ByteBuffer slice = window.duplicate();
+        int start = (int) (offset - windowStart);
+        slice.position(start);
+        slice.limit(start + length);
+        return slice.slice();
+    }
+
+    /**
+     * An entity read from a snapshot, which has already been decoded.
+     */
+    private static class SnapshotElement extends Element {
+        private final ContextObject bean;
+
+        SnapshotElement(long start, long end, ContextObject bean) {
+            super(start, end, null);
+            this.bean = bean;
+        }
+
+        @Override
+        String getJson() {
+            return CSGsonFactory.getCSJson().toJson(bean);
+        }
+
+        @Override
+        ContextObject toContextObject(Gson gson) {
+            return bean;
+        }
+    }
+
+    /**
+     * Hands the values of an encoded entity to Gson as tokens, instead of parsing JSON text.
+     */
+    static class TokenReader extends JsonReader {
+        private static final Reader UNUSED = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                throw new UnsupportedOperationException("Snapshots are not read as text");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        // what is expected next in each open object or array
+        private static final int OBJECT_NAME = 1;
+        private static final int OBJECT_VALUE = 2;
+        private static final int ARRAY_VALUE = 3;
+
+        private final List<String> dictionary;
+        private ByteBuffer in;
+        private int[] stack = new int[32];
+        private int depth = 0;
+        private byte[] stringBytes = new byte[256];
+
+        TokenReader(List<String> dictionary) {
+            super(UNUSED);
+            this.dictionary = dictionary;
+        }
+
+        void reset(ByteBuffer record) {
+            in = record;
+            depth = 0;
+        }
+
+        /**
+         * Reads a UUID, RFC3339Date or DataElement written in its binary form.
+         * @return null if the next value isn't in the binary form of the given type, and has to be read as usual
+         */
+        Object readBinary(Class<?> type) throws IOException {
+            byte tag = peekValueTag();
+            if (type == UUID.class && tag == UUID_VALUE) {
+                in.get();
+                UUID uuid = new UUID(in.getLong(), in.getLong());
+                valueRead();
+                return uuid;
+            }
+
+            if (type == RFC3339Date.class && tag == TIMESTAMP) {
+                in.get();
+                RFC3339Date date = new RFC3339Date(in.getLong());
+                valueRead();
+                return date;
+            }
+
+            if (type == DataElement.class && tag == DATA_ELEMENT) {
+                in.get();
+                String key = dictionaryString(readVarint());
+                String dataType = dictionaryString(readVarint());
+                Object value;
+                byte valueTag = in.get();
+                switch (valueTag) {
+                    case NULL:
+                        value = null;
+                        break;
+                    case TRUE:
+                        value = true;
+                        break;
+                    case FALSE:
+                        value = false;
+                        break;
+                    case STRING:
+                        value = readString();
+                        break;
+                    case INT:
+                        value = (int) readZigZag();
+                        break;
+                    case LONG:
+                        value = readZigZag();
+                        break;
+                    case DOUBLE:
+                        value = in.getDouble();
+                        break;
+                    default:
+                        throw new IOException("Invalid data element value tag " + valueTag);
+                }
+                valueRead();
+                return new DataElement(key, value, dataType);
+            }
+            return null;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            if (depth > 0 && stack[depth - 1] == OBJECT_NAME) {
+                return in.get(in.position()) == END ? JsonToken.END_OBJECT : JsonToken.NAME;
+            }
+            if (depth == 0 && !in.hasRemaining()) {
+                return JsonToken.END_DOCUMENT;
+            }
+
+            byte tag = in.get(in.position());
+            switch (tag) {
+                case END:
+                    if (depth > 0 && stack[depth - 1] == ARRAY_VALUE) {
+                        return JsonToken.END_ARRAY;
+                    }
+                    throw new IOException("Unexpected end of object at " + in.position());
+                case NULL:
+                    return JsonToken.NULL;
+                case TRUE:
+                case FALSE:
+                    return JsonToken.BOOLEAN;
+                case STRING:
+                case INTERNED:
+                case UUID_VALUE:
+                case TIMESTAMP:
+                    return JsonToken.STRING;
+                case INT:
+                case LONG:
+                case DOUBLE:
+                case NUMBER:
+                    return JsonToken.NUMBER;
+                case OBJECT:
+                case DATA_ELEMENT:
+                    return JsonToken.BEGIN_OBJECT;
+                case ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                default:
+                    throw new IOException("Invalid snapshot value tag " + tag + " at " + in.position());
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            JsonToken token = peek();
+            return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            expect(ARRAY, JsonToken.BEGIN_ARRAY);
+            push(ARRAY_VALUE);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            if (depth == 0 || stack[depth - 1] != ARRAY_VALUE || in.get(in.position()) != END) {
+                throw new IllegalStateException("Expected END_ARRAY but was " + peek());
+            }
+            in.get();
+            depth--;
+            valueRead();
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            expect(OBJECT, JsonToken.BEGIN_OBJECT);
+            push(OBJECT_NAME);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            if (depth == 0 || stack[depth - 1] != OBJECT_NAME || in.get(in.position()) != END) {
+                throw new IllegalStateException("Expected END_OBJECT but was " + peek());
+            }
+            in.get();
+            depth--;
+            valueRead();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            if (depth == 0 || stack[depth - 1] != OBJECT_NAME || in.get(in.position()) == END) {
+                throw new IllegalStateException("Expected a name but was " + peek());
+            }
+            String name = dictionaryString(readVarint() - 1);
+            stack[depth - 1] = OBJECT_VALUE;
+            return name;
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            String value;
+            switch (peekValueTag()) {
+                case STRING:
+                case NUMBER:
+                    in.get();
+                    value = readString();
+                    break;
+                case INTERNED:
+                    in.get();
+                    value = dictionaryString(readVarint());
+                    break;
+                case INT:
+                case LONG:
+                    in.get();
+                    value = Long.toString(readZigZag());
+                    break;
+                case DOUBLE:
+                    in.get();
+                    value = Double.toString(in.getDouble());
+                    break;
+                case UUID_VALUE:
+                    in.get();
+                    value = new UUID(in.getLong(), in.getLong()).toString();
+                    break;
+                case TIMESTAMP:
+                    in.get();
+                    value = new RFC3339Date(in.getLong()).toString();
+                    break;
+                default:
+                    throw new IllegalStateException("Expected a string but was " + peek());
+            }
+            valueRead();
+            return value;
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            byte tag = peekValueTag();
+            if (tag != TRUE && tag != FALSE) {
+                throw new IllegalStateException("Expected a boolean but was " + peek());
+            }
+            in.get();
+            valueRead();
+            return tag == TRUE;
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            expect(NULL, JsonToken.NULL);
+            valueRead();
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            double value;
+            switch (peekValueTag()) {
+                case DOUBLE:
+                    in.get();
+                    value = in.getDouble();
+                    break;
+                case INT:
+                case LONG:
+                    in.get();
+                    value = readZigZag();
+                    break;
+                case STRING:
+                case NUMBER:
+                    in.get();
+                    value = Double.parseDouble(readString());
+                    break;
+                default:
+                    throw new IllegalStateException("Expected a double but was " + peek());
+            }
+            if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+                throw new NumberFormatException("JSON forbids NaN and infinities: " + value);
+            }
+            valueRead();
+            return value;
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            long value;
+            switch (peekValueTag()) {
+                case INT:
+                case LONG:
+                    in.get();
+                    value = readZigZag();
+                    break;
+                case DOUBLE:
+                    in.get();
+                    value = toLong(in.getDouble());
+                    break;
+                case STRING:
+                case NUMBER:
+                    in.get();
+                    String string = readString();
+                    try {
+                        value = Long.parseLong(string);
+                    } catch (NumberFormatException e) {
+                        value = toLong(Double.parseDouble(string));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Expected a long but was " + peek());
+            }
+            valueRead();
+            return value;
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            int position = in.position();
+            int depthBefore = depth;
+            int stateBefore = depth > 0 ? stack[depth - 1] : 0;
+            long value = nextLong();
+            if ((int) value != value) {
+                // leave the value unread, as JsonReader does
+                in.position(position);
+                if (depthBefore > 0) {
+                    stack[depthBefore - 1] = stateBefore;
+                }
+                throw new NumberFormatException("Expected an int but was " + value);
+            }
+            return (int) value;
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            if (depth > 0 && stack[depth - 1] == OBJECT_NAME) {
+                nextName();
+            }
+            skip(peekValueTag());
+            valueRead();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return "TokenReader at " + (in != null ? in.position() : 0);
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint at " + in.position());
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarint();
+            if (in.hasArray()) {
+                String string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                return string;
+            }
+            if (stringBytes.length < length) {
+                stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+            }
+            in.get(stringBytes, 0, length);
+            return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private long readZigZag() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String dictionaryString(long id) throws IOException {
+            if (id < 0 || id >= dictionary.size()) {
+                throw new IOException("Invalid dictionary ID " + id + " at " + in.position());
+            }
+            return dictionary.get((int) id);
+        }
+
+        private static long toLong(double value) {
+            long result = (long) value;
+            if (result != value) {
+                throw new NumberFormatException("Expected a long but was " + value);
+            }
+            return result;
+        }
+
+        /**
+         * Skips the value with the given tag, including everything nested in it.
+         */
+        private void skip(byte tag) throws IOException {
+            in.get();
+            switch (tag) {
+                case NULL:
+                case TRUE:
+                case FALSE:
+                    break;
+                case STRING:
+                case NUMBER:
+                    int length = (int) readVarint();
+                    in.position(in.position() + length);
+                    break;
+                case INTERNED:
+                case INT:
+                case LONG:
+                    readVarint();
+                    break;
+                case DOUBLE:
+                case TIMESTAMP:
+                    in.position(in.position() + 8);
+                    break;
+                case UUID_VALUE:
+                    in.position(in.position() + 16);
+                    break;
+                case OBJECT:
+                    while (readVarint() != 0) {
+                        skip(in.get(in.position()));
+                    }
+                    break;
+                case ARRAY:
+                    while (in.get(in.position()) != END) {
+                        skip(in.get(in.position()));
+                    }
+                    in.get();
+                    break;
+                case DATA_ELEMENT:
+                    readVarint();
+                    readVarint();
+                    skip(in.get(in.position()));
+                    break;
+                default:
+                    throw new IOException("Invalid snapshot value tag " + tag + " at " + in.position());
+            }
+        }
+
+        /**
+         * Returns the tag of the next value, which must not be a name or the end of an object or array.
+         */
+        private byte peekValueTag() throws IOException {
+            if (depth > 0 && stack[depth - 1] == OBJECT_NAME) {
+                throw new IllegalStateException("Expected a value but was " + peek());
+            }
+            if (!in.hasRemaining()) {
+                throw new EOFException("End of entity at " + in.position());
+            }
+            byte tag = in.get(in.position());
+            if (tag == END) {
+                throw new IllegalStateException("Expected a value but was " + peek());
+            }
+            return tag;
+        }
+
+        private void expect(byte tag, JsonToken token) throws IOException {
+            if (peekValueTag() != tag) {
+                throw new IllegalStateException("Expected " + token + " but was " + peek());
+            }
+            in.get();
+        }
+
+        private void push(int state) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = state;
+        }
+
+        /**
+         * After a value in an object, a name or the end of the object comes next.
+         */
+        private void valueRead() {
+            if (depth > 0 && stack[depth - 1] == OBJECT_VALUE) {
+                stack[depth - 1] = OBJECT_NAME;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Binary snapshot format for exported entities, which is much cheaper to read than JSON.
+ *
+ * A snapshot file starts with an 8 byte header ("CSSNAP" and a 2 byte version), followed by records.
+ * Each record is a kind byte, a 4 byte length and that many bytes:
+ * D  dictionary: a varint count, then that many strings, which are given the next IDs (starting from 0)
+ * E  entity: a single value, normally an object
+ * The dictionary record holding the strings first used by an entity comes just before the entity.
+ *
+ * A value is a tag byte followed by:
+ * NULL, TRUE, FALSE     nothing
+ * STRING, NUMBER        a varint length and that many bytes of UTF-8 (NUMBER is the JSON text of the number)
+ * INTERNED              a varint dictionary ID
+ * INT, LONG             a zigzag varint
+ * DOUBLE                8 bytes
+ * UUID                  two 8 byte longs
+ * TIMESTAMP             epoch milliseconds, 8 bytes
+ * OBJECT                a varint (dictionary ID of a name + 1) followed by a value for each entry, then a 0 varint
+ * ARRAY                 values, then END
+ * DATA_ELEMENT          varint dictionary IDs of the key and the data type, then the value (NULL, TRUE, FALSE,
+ *                       STRING, INT, LONG or DOUBLE)
+ *
+ * Names, data element keys and types, and the values of a few fields which are repeated in most entities
+ * (such as the fieldsets) are held in the dictionary, so that each is stored and decoded only once per file.
+ * Entities are serialized and deserialized by Gson with the same adapters as the JSON files, except that UUIDs,
+ * RFC3339Dates and data elements are written to snapshots in their own binary form.
+ */
+class SnapshotFormat {
+    static final String EXTENSION = ".snapshot";
+    static final byte[] HEADER = {'C', 'S', 'S', 'N', 'A', 'P', 0, 1};
+
+    static final byte DICTIONARY_RECORD = 'D';
+    static final byte ENTITY_RECORD = 'E';
+    // kind and length
+    static final int RECORD_HEADER_SIZE = 5;
+
+    static final byte END = 0;
+    static final byte NULL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte STRING = 4;
+    static final byte INTERNED = 5;
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte DOUBLE = 8;
+    static final byte NUMBER = 9;
+    static final byte OBJECT = 10;
+    static final byte ARRAY = 11;
+    static final byte UUID_VALUE = 12;
+    static final byte TIMESTAMP = 13;
+    static final byte DATA_ELEMENT = 14;
+
+    // String values of these fields (or in arrays held by these fields) are held in the dictionary
+    static final Set<String> INTERNED_FIELDS = new HashSet<>(Arrays.asList("type", "fieldsets", "state", "mediaType", "contextSource"));
+
+    private static final Gson GSON = CSGsonFactory.getCSGsonBuilder(false).registerTypeAdapterFactory(new SnapshotAdapterFactory()).create();
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Gson for reading and writing snapshots, through a {@link SnapshotWriter.TokenWriter} or a {@link SnapshotElementReader.TokenReader}.
+     */
+    static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * Whether the data element can be written in the binary form, or must be written as an object like in JSON.
+     */
+    static boolean isBinaryDataElement(DataElement dataElement) {
+        Object value = dataElement.getDataValue();
+        return dataElement.getDataKey() != null && dataElement.getType() != null
+                && (value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean);
+    }
+
+    /**
+     * Writes UUIDs, RFC3339Dates and data elements in their binary forms when writing a snapshot, and reads them back.
+     * Otherwise (and for values which have no binary form) the usual adapters are used.
+     */
+    private static class SnapshotAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if (rawType != UUID.class && rawType != RFC3339Date.class && rawType != DataElement.class) {
+                return null;
+            }
+
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (value == null || !(out instanceof SnapshotWriter.TokenWriter) || !((SnapshotWriter.TokenWriter) out).writeBinary(value)) {
+                        delegate.write(out, value);
+                    }
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    if (in instanceof SnapshotElementReader.TokenReader) {
+                        Object value = ((SnapshotElementReader.TokenReader) in).readBinary(rawType);
+                        if (value != null) {
+                            return (T) value;
+                        }
+                    }
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+}
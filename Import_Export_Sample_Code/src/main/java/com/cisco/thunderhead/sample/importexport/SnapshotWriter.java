@@ -0,0 +1,461 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.cisco.thunderhead.sample.importexport.SnapshotFormat.*;
+
+/**
+ * Writes entities to a binary snapshot file (see {@link SnapshotFormat}) through a FileChannel.
+ * Allows you to write the snapshot over time, instead of needing to hold every entity in memory.
+ * The writer may be shared between threads.
+ */
+class SnapshotWriter implements EntityWriter {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Gson gson = SnapshotFormat.gson();
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final TokenWriter tokenWriter = new TokenWriter();
+    private int numberOfEntities = 0;
+    private boolean closed = false;
+
+    /**
+     * Writes entities to a snapshot file
+     * @param name name of the file, without the .snapshot extension. (e.g. name="bob" will output to "bob.snapshot")
+     * @param outputDir Output directory to write the file
+     * @param deleteExisting Whether or to overwrite existing file. If set to false and the file already exists, will throw an exception.
+     */
+    SnapshotWriter(String name, Path outputDir, boolean deleteExisting) throws IOException {
+        Path filePath = outputDir.resolve(name + EXTENSION);
+        if (deleteExisting) {
+            Files.deleteIfExists(filePath);
+        } else if (Files.exists(filePath)) {
+            throw new IOException("File already exists: " + filePath.toString());
+        }
+
+        channel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        buffer.put(HEADER);
+    }
+
+    @Override
+    public synchronized <T> void writeEntity(T jsonObject) throws IOException {
+        tokenWriter.reset();
+        try {
+            gson.toJson(jsonObject, jsonObject != null ? jsonObject.getClass() : Object.class, tokenWriter);
+        } catch (RuntimeException e) {
+            // the strings added to the dictionary for this entity won't be written
+            tokenWriter.discardNewStrings();
+            throw e;
+        }
+
+        if (tokenWriter.hasNewStrings()) {
+            writeRecord(DICTIONARY_RECORD, tokenWriter.takeNewStrings());
+        }
+        writeRecord(ENTITY_RECORD, tokenWriter.entity());
+        numberOfEntities++;
+    }
+
+    @Override
+    public synchronized <T> void writeEntities(List<T> jsonList) throws IOException {
+        for (T elem : jsonList) {
+            writeEntity(elem);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public synchronized int getNumberOfEntities() {
+        return numberOfEntities;
+    }
+
+    private void writeRecord(byte kind, ByteBuffer payload) throws IOException {
+        if (buffer.remaining() < RECORD_HEADER_SIZE + payload.remaining()) {
+            flushBuffer();
+        }
+        buffer.put(kind);
+        buffer.putInt(payload.remaining());
+        if (buffer.remaining() >= payload.remaining()) {
+            buffer.put(payload);
+        } else {
+            // larger than the buffer
+            flushBuffer();
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encodes the tokens written by Gson in the snapshot format, instead of as JSON text.
+     */
+    static class TokenWriter extends JsonWriter {
+        private static final Writer UNUSED = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                throw new UnsupportedOperationException("Snapshots are not written as text");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        // IDs of the strings in the dictionary, and the strings added while writing the current entity
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> newStrings = new ArrayList<>();
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+        private ByteBuffer dictionaryOut = ByteBuffer.allocate(1024);
+        private String deferredName;
+        // whether the string values in each open object or array are interned
+        private boolean[] interned = new boolean[32];
+        private int depth = 0;
+
+        TokenWriter() {
+            super(UNUSED);
+        }
+
+        void reset() {
+            out.clear();
+            deferredName = null;
+            depth = 0;
+        }
+
+        /**
+         * Returns the encoded entity.
+         */
+        ByteBuffer entity() {
+            ByteBuffer entity = out.duplicate();
+            entity.flip();
+            return entity;
+        }
+
+        boolean hasNewStrings() {
+            return !newStrings.isEmpty();
+        }
+
+        /**
+         * Returns the encoded strings added to the dictionary by the entity.
+         */
+        ByteBuffer takeNewStrings() {
+            ByteBuffer entityOut = out;
+            out = dictionaryOut;
+            out.clear();
+            putVarint(newStrings.size());
+            for (String string : newStrings) {
+                putString(string);
+            }
+            newStrings.clear();
+            dictionaryOut = out;
+            out = entityOut;
+
+            ByteBuffer strings = dictionaryOut.duplicate();
+            strings.flip();
+            return strings;
+        }
+
+        void discardNewStrings() {
+            for (String string : newStrings) {
+                dictionary.remove(string);
+            }
+            newStrings.clear();
+        }
+
+        /**
+         * Writes a UUID, RFC3339Date or DataElement in its binary form.
+         * @return false if the value has no binary form, and has to be written as usual
+         */
+        boolean writeBinary(Object value) throws IOException {
+            if (value instanceof UUID) {
+                UUID uuid = (UUID) value;
+                writeDeferredName();
+                put(UUID_VALUE);
+                ensureCapacity(16);
+                out.putLong(uuid.getMostSignificantBits());
+                out.putLong(uuid.getLeastSignificantBits());
+                return true;
+            }
+
+            if (value instanceof RFC3339Date) {
+                // only dates which are written to JSON the same way as the time they hold can be stored as the time
+                RFC3339Date date = (RFC3339Date) value;
+                long time = date.getDate().getTime();
+                if (!new RFC3339Date(time).toString().equals(date.toString())) {
+                    return false;
+                }
+                writeDeferredName();
+                put(TIMESTAMP);
+                ensureCapacity(8);
+                out.putLong(time);
+                return true;
+            }
+
+            if (value instanceof DataElement && isBinaryDataElement((DataElement) value)) {
+                DataElement dataElement = (DataElement) value;
+                writeDeferredName();
+                put(DATA_ELEMENT);
+                putVarint(id(dataElement.getDataKey()));
+                putVarint(id(dataElement.getType()));
+                Object dataValue = dataElement.getDataValue();
+                if (dataValue == null) {
+                    put(NULL);
+                } else if (dataValue instanceof String) {
+                    put(STRING);
+                    putString((String) dataValue);
+                } else if (dataValue instanceof Integer) {
+                    put(INT);
+                    putZigZag((Integer) dataValue);
+                } else if (dataValue instanceof Long) {
+                    put(LONG);
+                    putZigZag((Long) dataValue);
+                } else if (dataValue instanceof Double) {
+                    put(DOUBLE);
+                    ensureCapacity(8);
+                    out.putDouble((Double) dataValue);
+                } else {
+                    put((Boolean) dataValue ? TRUE : FALSE);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            boolean internValues = deferredName != null ? INTERNED_FIELDS.contains(deferredName) : depth > 0 && interned[depth - 1];
+            writeDeferredName();
+            put(ARRAY);
+            push(internValues);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            put(END);
+            depth--;
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            writeDeferredName();
+            put(OBJECT);
+            push(false);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            deferredName = null;
+            put(END);
+            depth--;
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            if (name == null) {
+                throw new NullPointerException("name == null");
+            }
+            deferredName = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            boolean intern = deferredName != null ? INTERNED_FIELDS.contains(deferredName) : depth > 0 && interned[depth - 1];
+            writeDeferredName();
+            if (intern) {
+                put(INTERNED);
+                putVarint(id(value));
+            } else {
+                put(STRING);
+                putString(value);
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (deferredName != null && !getSerializeNulls()) {
+                // skip the name and the value, as JsonWriter does
+                deferredName = null;
+                return this;
+            }
+            writeDeferredName();
+            put(NULL);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            writeDeferredName();
+            put(value ? TRUE : FALSE);
+            return this;
+        }
+
+        // used by newer versions of Gson
+        public JsonWriter value(Boolean value) throws IOException {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        // used by newer versions of Gson
+        public JsonWriter value(float value) throws IOException {
+            return value((double) value);
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+                throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+            }
+            writeDeferredName();
+            put(DOUBLE);
+            ensureCapacity(8);
+            out.putDouble(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            writeDeferredName();
+            put(LONG);
+            putZigZag(value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return value(value.longValue());
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return value(value.doubleValue());
+            }
+
+            // e.g. BigDecimal, or a number read from JSON: keep the text of the number
+            String string = value.toString();
+            if (!isLenient() && (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN"))) {
+                throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+            }
+            writeDeferredName();
+            put(NUMBER);
+            putString(string);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void writeDeferredName() {
+            if (deferredName != null) {
+                putVarint(id(deferredName) + 1);
+                deferredName = null;
+            }
+        }
+
+        private void push(boolean internValues) {
+            if (depth == interned.length) {
+                boolean[] newInterned = new boolean[depth * 2];
+                System.arraycopy(interned, 0, newInterned, 0, depth);
+                interned = newInterned;
+            }
+            interned[depth++] = internValues;
+        }
+
+        private int id(String string) {
+            Integer id = dictionary.get(string);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.put(string, id);
+                newStrings.add(string);
+            }
+            return id;
+        }
+
+        private void put(byte b) {
+            ensureCapacity(1);
+            out.put(b);
+        }
+
+        private void putString(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            out.put(bytes);
+        }
+
+        private void putZigZag(long value) {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void putVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        private void ensureCapacity(int length) {
+            if (out.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+    }
+}
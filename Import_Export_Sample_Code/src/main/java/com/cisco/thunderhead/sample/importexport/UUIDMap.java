@@ -0,0 +1,148 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.util.UUID;
+
+/**
+ * Map from UUID to UUID which stores each UUID as two longs instead of as objects.
+ * A HashMap entry costs two UUID objects and a node, about 100 bytes for 32 bytes of data, which adds up to
+ * gigabytes for an import of tens of millions of objects.  This map uses open addressing over long arrays, so
+ * an entry costs 32 bytes per slot, with between 1.33 and 2.67 slots per entry.  The keys are held in a
+ * {@link UUIDTable}, with the values in a parallel array.
+ *
+ * The map is split into independently locked segments so that it can be updated by several threads at once.
+ * Null keys and values are not supported.
+ */
+class UUIDMap {
+    private final Segment[] segments = new Segment[UUIDTable.SEGMENTS];
+
+    UUIDMap() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value.
+     */
+    void put(UUID key, UUID value) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UUIDTable.hash(msb, lsb);
+        segments[UUIDTable.segment(hash)].put(msb, lsb, hash, value.getMostSignificantBits(), value.getLeastSignificantBits());
+    }
+
+    /**
+     * Returns the value associated with the key, or null if there is none.
+     */
+    UUID get(UUID key) {
+        if (key == null) {
+            return null;
+        }
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UUIDTable.hash(msb, lsb);
+        return segments[UUIDTable.segment(hash)].get(msb, lsb, hash);
+    }
+
+    boolean containsKey(UUID key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the size of the arrays holding the entries, in bytes.
+     */
+    long getTableBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getTableBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * The keys of a segment, with the value of the key in slot i in values[2i], values[2i+1].  An entry for the
+     * nil UUID is kept outside of the table.
+     */
+    private static class Segment extends UUIDTable {
+        private long[] values = new long[2 * capacity()];
+        // the values from before the table grew, while it is growing
+        private long[] oldValues;
+        private boolean hasNilKey = false;
+        private long nilKeyValueMsb;
+        private long nilKeyValueLsb;
+
+        synchronized void put(long msb, long lsb, int hash, long valueMsb, long valueLsb) {
+            if (msb == 0 && lsb == 0) {
+                hasNilKey = true;
+                nilKeyValueMsb = valueMsb;
+                nilKeyValueLsb = valueLsb;
+                return;
+            }
+
+            int slot = findSlot(msb, lsb, hash);
+            if (isEmpty(slot)) {
+                slot = add(slot, msb, lsb, hash);
+            }
+            values[2 * slot] = valueMsb;
+            values[2 * slot + 1] = valueLsb;
+        }
+
+        synchronized UUID get(long msb, long lsb, int hash) {
+            if (msb == 0 && lsb == 0) {
+                return hasNilKey ? new UUID(nilKeyValueMsb, nilKeyValueLsb) : null;
+            }
+
+            int slot = findSlot(msb, lsb, hash);
+            if (isEmpty(slot)) {
+                return null;
+            }
+            return new UUID(values[2 * slot], values[2 * slot + 1]);
+        }
+
+        @Override
+        synchronized int size() {
+            return super.size() + (hasNilKey ? 1 : 0);
+        }
+
+        @Override
+        synchronized void clear() {
+            super.clear();
+            values = new long[2 * capacity()];
+            hasNilKey = false;
+        }
+
+        @Override
+        synchronized long getTableBytes() {
+            return super.getTableBytes() + values.length * (long) Long.BYTES;
+        }
+
+        @Override
+        void grow() {
+            oldValues = values;
+            // two longs for each slot of the table, which is doubling
+            values = new long[4 * capacity()];
+            super.grow();
+            oldValues = null;
+        }
+
+        @Override
+        void moved(int oldSlot, int slot) {
+            values[2 * slot] = oldValues[2 * oldSlot];
+            values[2 * slot + 1] = oldValues[2 * oldSlot + 1];
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import java.util.UUID;
+
+/**
+ * Set of UUIDs which stores each UUID as two longs instead of as an object (or a String).
+ * Uses the same layout as {@link UUIDMap}: {@link UUIDTable}s of longs, split into independently locked segments
+ * so that the set can be updated by several threads at once, at 16 bytes per slot.
+ * Null is not supported.
+ */
+class UUIDSet {
+    private final Segment[] segments = new Segment[UUIDTable.SEGMENTS];
+
+    UUIDSet() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds the UUID to the set.
+     * @return true if the UUID was not already in the set
+     */
+    boolean add(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int hash = UUIDTable.hash(msb, lsb);
+        return segments[UUIDTable.segment(hash)].add(msb, lsb, hash);
+    }
+
+    boolean contains(UUID id) {
+        if (id == null) {
+            return false;
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int hash = UUIDTable.hash(msb, lsb);
+        return segments[UUIDTable.segment(hash)].contains(msb, lsb, hash);
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * The UUIDs of a segment.  The nil UUID is kept outside of the table.
+     */
+    private static class Segment extends UUIDTable {
+        private boolean hasNil = false;
+
+        synchronized boolean add(long msb, long lsb, int hash) {
+            if (msb == 0 && lsb == 0) {
+                boolean added = !hasNil;
+                hasNil = true;
+                return added;
+            }
+
+            int slot = findSlot(msb, lsb, hash);
+            if (!isEmpty(slot)) {
+                return false;
+            }
+            add(slot, msb, lsb, hash);
+            return true;
+        }
+
+        synchronized boolean contains(long msb, long lsb, int hash) {
+            if (msb == 0 && lsb == 0) {
+                return hasNil;
+            }
+            return !isEmpty(findSlot(msb, lsb, hash));
+        }
+
+        @Override
+        synchronized int size() {
+            return super.size() + (hasNil ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.cisco.thunderhead.sample.importexport;
+
+/**
+ * Open addressing hash table of UUIDs with linear probing, stored as longs: slot i holds its UUID in keys[2i],
+ * keys[2i+1].  A slot is empty when it holds the nil UUID (all zeros), so the nil UUID can't be stored, and
+ * users of the table keep it outside.
+ *
+ * This is the part shared by {@link UUIDSet} and {@link UUIDMap}, which split their UUIDs between several tables
+ * (by {@link #segment(int)}) and lock each one.  The table itself is not thread-safe.  UUIDMap keeps a value for
+ * each slot alongside, by overriding {@link #grow()} and {@link #moved(int, int)}.
+ */
+class UUIDTable {
+    static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private int size = 0;
+
+    UUIDTable() {
+        keys = new long[2 * INITIAL_CAPACITY];
+    }
+
+    static int hash(long msb, long lsb) {
+        // random (version 4) UUIDs are already well distributed, but time-based ones are not
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns which of the SEGMENTS tables a UUID belongs in.
+     */
+    static int segment(int hash) {
+        // the low bits pick the slot within the table, so use the high bits to pick the table
+        return hash >>> 28;
+    }
+
+    /**
+     * Returns the slot holding the UUID, or the empty slot where it would be added.
+     */
+    int findSlot(long msb, long lsb, int hash) {
+        int mask = capacity() - 1;
+        int slot = hash & mask;
+        while (true) {
+            long slotMsb = keys[2 * slot];
+            long slotLsb = keys[2 * slot + 1];
+            if ((slotMsb == msb && slotLsb == lsb) || (slotMsb == 0 && slotLsb == 0)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    boolean isEmpty(int slot) {
+        return keys[2 * slot] == 0 && keys[2 * slot + 1] == 0;
+    }
+
+    /**
+     * Adds a UUID at the empty slot returned by {@link #findSlot}, growing the table first if it is full.
+     * @return the slot the UUID was added at
+     */
+    int add(int slot, long msb, long lsb, int hash) {
+        if (size + 1 > capacity() * LOAD_FACTOR) {
+            grow();
+            slot = findSlot(msb, lsb, hash);
+        }
+        keys[2 * slot] = msb;
+        keys[2 * slot + 1] = lsb;
+        size++;
+        return slot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length / 2;
+    }
+
+    void clear() {
+        keys = new long[2 * INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    long getTableBytes() {
+        return keys.length * (long) Long.BYTES;
+    }
+
+    /**
+     * Doubles the capacity, moving every UUID to its slot in the larger table.
+     */
+    void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        for (int oldSlot = 0; oldSlot < oldKeys.length / 2; oldSlot++) {
+            long msb = oldKeys[2 * oldSlot];
+            long lsb = oldKeys[2 * oldSlot + 1];
+            if (msb != 0 || lsb != 0) {
+                int slot = findSlot(msb, lsb, hash(msb, lsb));
+                keys[2 * slot] = msb;
+                keys[2 * slot + 1] = lsb;
+                moved(oldSlot, slot);
+            }
+        }
+    }
+
+    /**
+     * Called by {@link #grow()} for each UUID moved from a slot of the old table to a slot of the new one.
+     */
+    void moved(int oldSlot, int slot) {
+    }
+}
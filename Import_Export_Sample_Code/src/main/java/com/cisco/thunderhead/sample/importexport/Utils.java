@@ -15,12 +15,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
  * Shared utilities
  */
 public class Utils {
+    private static Logger LOGGER = Logger.getLogger("importexport");
     public static final String connectionDataFileName = "connectiondata.txt";
     private static String connectionData = "";
 
@@ -106,4 +111,32 @@ public class Utils {
         }
         return beans;
     }
+
+    /**
+     * Creates a thread factory for worker threads.
+     * Virtual threads are only available on Java 21 and later, and this sample is compiled for Java 8,
+     * so they are looked up reflectively.  Platform threads are used if they are not available.
+     * @param prefix name prefix for the created threads
+     * @param virtual whether to use virtual threads when the JVM supports them
+     */
+    static ThreadFactory newThreadFactory(String prefix, boolean virtual) {
+        if (virtual) {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Method name = builderClass.getMethod("name", String.class, long.class);
+                Method factory = builderClass.getMethod("factory");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (ThreadFactory) factory.invoke(name.invoke(builder, prefix + "-", 1L));
+            } catch (ReflectiveOperationException e) {
+                LOGGER.info("Virtual threads are not supported by this JVM, using platform threads");
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
@@ -1,6 +1,5 @@
 package com.cisco.thunderhead.sample.importexport.gsonutils;
 
-import com.cisco.thunderhead.DataElement;
 import com.cisco.thunderhead.tag.Tag;
 import com.cisco.thunderhead.util.RFC3339Date;
 import com.google.gson.Gson;
@@ -13,9 +12,13 @@ import java.util.UUID;
  * Factory that can be used to obtain GSON object with Context Service custom marshallers
  * to convert CS Java Objects into their JSON representation.
  * It can also be used to convert a JSON string to an equivalent Java object.
+ * Gson objects are thread-safe, and the adapters hold no state, so the same two instances are always returned.
  */
 public class CSGsonFactory {
 
+    private static final Gson CS_JSON = createCSJson(false);
+    private static final Gson CS_JSON_PRETTY = createCSJson(true);
+
     private CSGsonFactory(){}
 
     /**
@@ -32,16 +35,29 @@ public class CSGsonFactory {
      * @return
      */
     public static Gson getCSJson(boolean printPretty){
+        return printPretty ? CS_JSON_PRETTY : CS_JSON;
+    }
+
+    /**
+     * Obtain a GsonBuilder with the Context Service custom marshallers registered, to which further adapters can be added.
+     * Adapters registered later take precedence over the ones registered here.
+     * @param printPretty can be set False or True
+     * @return
+     */
+    public static GsonBuilder getCSGsonBuilder(boolean printPretty){
 
         GsonBuilder gsonBuilder = new GsonBuilder();
         if (printPretty) gsonBuilder.setPrettyPrinting();
 
         return gsonBuilder
                 .registerTypeAdapter(Date.class, new DateAdapter())
-                .registerTypeAdapter(RFC3339Date.class, new RFC3339DateAdapter())
+                .registerTypeAdapter(RFC3339Date.class, new RFC3339DateTypeAdapter())
                 .registerTypeAdapter(Tag.class, new TagAdapter())
-                .registerTypeAdapter(DataElement.class, new DataElementAdapter())
-                .registerTypeAdapter(UUID.class, new UUIDAdapter())
-                .create();
+                .registerTypeAdapterFactory(DataElementTypeAdapter.FACTORY)
+                .registerTypeAdapter(UUID.class, new UUIDTypeAdapter());
+    }
+
+    private static Gson createCSJson(boolean printPretty){
+        return getCSGsonBuilder(printPretty).create();
     }
 }
@@ -13,6 +13,7 @@ import java.util.Map;
 
 /**
  * Make sure the data types are serialized and deserialized correctly.
+ * CSGsonFactory uses the streaming {@link DataElementTypeAdapter} instead, which produces the same JSON.
  */
 @SuppressWarnings("squid:S1161") // Can't @Override interface in Java 1.6
 public class DataElementAdapter implements JsonDeserializer<DataElement>, JsonSerializer<DataElement> {
@@ -22,10 +23,13 @@ public class DataElementAdapter implements JsonDeserializer<DataElement>, JsonSe
 
 
     private String deserializeElementDataType(JsonObject jobject) throws ApiException {
+        return deserializeElementDataType(jobject.get(TYPE));
+    }
+
+    static String deserializeElementDataType(JsonElement typeElement) throws ApiException {
 
         //Deserialize ElementDataType
         String elementDataType = null;
-        JsonElement typeElement = jobject.get(TYPE);
         if (typeElement != null) {
             try {
                 elementDataType = typeElement.getAsString();
@@ -100,17 +104,21 @@ public class DataElementAdapter implements JsonDeserializer<DataElement>, JsonSe
     }
 
     private Object getValueAsType(final String dataType, Map.Entry<String, JsonElement> entry) {
+        return getValueAsType(dataType, entry.getValue());
+    }
+
+    static Object getValueAsType(final String dataType, JsonElement element) {
         Object value = null;
         if (ElementDataType.STRING.equals(dataType)) {
-            value = entry.getValue().getAsString();
+            value = element.getAsString();
         } else if (ElementDataType.INTEGER.equals(dataType)) {
-            value = Integer.valueOf(entry.getValue().getAsInt());
+            value = Integer.valueOf(element.getAsInt());
         } else if (ElementDataType.LONG.equals(dataType)) {
-            value = Long.valueOf(entry.getValue().getAsLong());
+            value = Long.valueOf(element.getAsLong());
         } else if (ElementDataType.DOUBLE.equals(dataType)) {
-            value = Double.valueOf(entry.getValue().getAsDouble());
+            value = Double.valueOf(element.getAsDouble());
         } else if (ElementDataType.BOOLEAN.equals(dataType)) {
-            value = Boolean.valueOf(entry.getValue().getAsBoolean());
+            value = Boolean.valueOf(element.getAsBoolean());
         }
         return value;
     }
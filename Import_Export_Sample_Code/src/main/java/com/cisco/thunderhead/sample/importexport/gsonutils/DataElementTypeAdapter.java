@@ -0,0 +1,147 @@
+package com.cisco.thunderhead.sample.importexport.gsonutils;
+
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.errors.ApiError;
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cisco.thunderhead.sample.importexport.gsonutils.DataElementAdapter.CLASSIFICATION;
+import static com.cisco.thunderhead.sample.importexport.gsonutils.DataElementAdapter.TYPE;
+
+/**
+ * Reads and writes data elements token by token, producing the same JSON as {@link DataElementAdapter}
+ * without building a map or a JSON tree for each data element.
+ */
+public class DataElementTypeAdapter extends TypeAdapter<DataElement> {
+
+    /**
+     * Creates the adapter for DataElement, which needs the Gson it belongs to in order to write the values.
+     */
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return type.getRawType() == DataElement.class ? (TypeAdapter<T>) new DataElementTypeAdapter(gson) : null;
+        }
+    };
+
+    // DataElementAdapter writes the values as Objects, so they are written by whichever adapter suits their class
+    private final TypeAdapter<Object> valueAdapter;
+
+    private DataElementTypeAdapter(Gson gson) {
+        this.valueAdapter = gson.getAdapter(Object.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, DataElement dataElement) throws IOException {
+        if (dataElement == null) {
+            out.nullValue();
+            return;
+        }
+
+        String key = dataElement.getDataKey();
+        out.beginObject();
+        if (TYPE.equals(key)) {
+            writeEntry(out, TYPE, dataElement.getType());
+        } else if (hashMapBucket(key) <= hashMapBucket(TYPE)) {
+            writeEntry(out, key, dataElement.getDataValue());
+            writeEntry(out, TYPE, dataElement.getType());
+        } else {
+            writeEntry(out, TYPE, dataElement.getType());
+            writeEntry(out, key, dataElement.getDataValue());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public DataElement read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        // The type may come after the value, so the values are kept until the whole object has been read.
+        // String values are kept as they are; anything else is kept as a JsonElement.
+        JsonElement typeElement = null;
+        List<String> keys = new ArrayList<>(1);
+        List<Object> values = new ArrayList<>(1);
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals(TYPE)) {
+                typeElement = TypeAdapters.JSON_ELEMENT.read(in);
+            } else if (name.equals(CLASSIFICATION)) {
+                in.skipValue();
+            } else {
+                Object value = in.peek() == JsonToken.STRING ? in.nextString() : TypeAdapters.JSON_ELEMENT.read(in);
+                // a repeated name replaces the earlier value but keeps its position, as in a JsonObject
+                int index = keys.indexOf(name);
+                if (index >= 0) {
+                    values.set(index, value);
+                } else {
+                    keys.add(name);
+                    values.add(value);
+                }
+            }
+        }
+        in.endObject();
+
+        String elementDataType = null;
+        String key = null;
+        Object value = null;
+        try {
+            elementDataType = DataElementAdapter.deserializeElementDataType(typeElement);
+
+            for (int i = 0; i < keys.size(); i++) {
+                key = keys.get(i);
+                value = getValueAsType(elementDataType, values.get(i));
+            }
+        } catch (ApiException e) {
+            throw e;
+        } catch (Exception exc) {
+            throw new ApiException(new ApiError(ApiErrorType.ELEMENT_DATA_TYPE_ERROR, "DataElements type missmatch",
+                    String.format("Unable to get the %s value of %s.", elementDataType, key)), exc);
+        }
+        return new DataElement(key, value, elementDataType);
+    }
+
+    private void writeEntry(JsonWriter out, String name, Object value) throws IOException {
+        out.name(String.valueOf(name));
+        valueAdapter.write(out, value);
+    }
+
+    private static Object getValueAsType(String dataType, Object value) {
+        if (value instanceof String) {
+            if (ElementDataType.STRING.equals(dataType)) {
+                return value;
+            }
+            value = new JsonPrimitive((String) value);
+        }
+        return DataElementAdapter.getValueAsType(dataType, (JsonElement) value);
+    }
+
+    /**
+     * DataElementAdapter writes each data element as a HashMap of its key and its type, so the two are written
+     * in the order of their buckets in a HashMap of the default capacity, or in the order they were added
+     * (key first) when they share a bucket.
+     */
+    private static int hashMapBucket(String key) {
+        int h = key != null ? key.hashCode() : 0;
+        return (h ^ (h >>> 16)) & 15;
+    }
+}
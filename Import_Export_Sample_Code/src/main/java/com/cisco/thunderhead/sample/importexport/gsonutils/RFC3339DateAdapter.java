@@ -8,6 +8,7 @@ import java.text.ParseException;
 
 /**
  * Adapter to convert between a RFC3339Date object and a String.
+ * CSGsonFactory uses the streaming {@link RFC3339DateTypeAdapter} instead, which produces the same JSON.
  */
 public class RFC3339DateAdapter implements JsonSerializer<RFC3339Date>, JsonDeserializer<RFC3339Date> {
 
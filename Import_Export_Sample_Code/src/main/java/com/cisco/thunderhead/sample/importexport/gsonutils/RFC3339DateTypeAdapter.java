@@ -0,0 +1,40 @@
+package com.cisco.thunderhead.sample.importexport.gsonutils;
+
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Reads and writes RFC3339Date objects as strings token by token, producing the same JSON as {@link RFC3339DateAdapter}.
+ */
+public class RFC3339DateTypeAdapter extends TypeAdapter<RFC3339Date> {
+
+    @Override
+    public void write(JsonWriter out, RFC3339Date date) throws IOException {
+        if (date == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(date.toString());
+    }
+
+    @Override
+    public RFC3339Date read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return new RFC3339Date(token == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString());
+        } catch (ParseException e) {
+            throw new JsonParseException(e);
+        }
+    }
+}
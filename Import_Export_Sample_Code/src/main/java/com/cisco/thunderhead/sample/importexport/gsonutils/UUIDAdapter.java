@@ -7,6 +7,7 @@ import java.util.UUID;
 
 /**
  * Class to serialize/deserialize the UUID.
+ * CSGsonFactory uses the streaming {@link UUIDTypeAdapter} instead, which produces the same JSON.
  */
 public class UUIDAdapter implements JsonSerializer<UUID>, JsonDeserializer<UUID>
 {
@@ -0,0 +1,34 @@
+package com.cisco.thunderhead.sample.importexport.gsonutils;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Reads and writes UUIDs as strings token by token, producing the same JSON as {@link UUIDAdapter}.
+ */
+public class UUIDTypeAdapter extends TypeAdapter<UUID> {
+
+    @Override
+    public void write(JsonWriter out, UUID uuid) throws IOException {
+        if (uuid == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(uuid.toString());
+    }
+
+    @Override
+    public UUID read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return UUID.fromString(token == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString());
+    }
+}
@@ -0,0 +1,119 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.errors.ApiError;
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests how the number of entities asked for per request follows the latency and throttling of the requests
+ */
+public class AdaptiveSizerTest {
+
+    @Test
+    public void testGrowsWithinTarget() {
+        AdaptiveSizer sizer = new AdaptiveSizer("test", true, 100, 10, 150, 10000);
+        sizer.request(100, () -> null);
+        assertEquals(125, sizer.size());
+        // a smaller request says nothing about the current size
+        sizer.request(50, () -> null);
+        assertEquals(125, sizer.size());
+        // grown no further than the largest size
+        sizer.request(125, () -> null);
+        assertEquals(150, sizer.size());
+        sizer.request(150, () -> null);
+        assertEquals(150, sizer.size());
+    }
+
+    @Test
+    public void testShrinksOverTarget() {
+        AdaptiveSizer sizer = new AdaptiveSizer("test", true, 100, 70, 1000, 10);
+        sizer.request(100, this::slowly);
+        assertEquals(75, sizer.size());
+        // a larger request says nothing about the current size
+        sizer.request(200, this::slowly);
+        assertEquals(75, sizer.size());
+        // shrunk no further than the smallest size
+        sizer.request(75, this::slowly);
+        assertEquals(70, sizer.size());
+    }
+
+    @Test
+    public void testHalvedWhenThrottled() {
+        AdaptiveSizer sizer = new AdaptiveSizer("test", true, 100, 10, 1000, 10000);
+        RuntimeException timeout = new RuntimeException(new SocketTimeoutException("Read timed out"));
+        requestFailing(sizer, 100, timeout);
+        assertEquals(50, sizer.size());
+        // a request made before the size was halved doesn't halve it again
+        requestFailing(sizer, 100, timeout);
+        assertEquals(50, sizer.size());
+        requestFailing(sizer, 50, timeout);
+        requestFailing(sizer, 25, timeout);
+        requestFailing(sizer, 12, timeout);
+        assertEquals(10, sizer.size());
+
+        // other errors leave the size alone
+        sizer = new AdaptiveSizer("test", true, 100, 10, 1000, 10000);
+        requestFailing(sizer, 100, new IllegalArgumentException("Invalid data element"));
+        assertEquals(100, sizer.size());
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        AdaptiveSizer sizer = new AdaptiveSizer("test", false, 100, 10, 1000, 10);
+        sizer.request(100, () -> null);
+        sizer.request(100, this::slowly);
+        requestFailing(sizer, 100, new RuntimeException(new SocketTimeoutException("Read timed out")));
+        assertEquals(100, sizer.size());
+        assertFalse(sizer.isAdaptive());
+    }
+
+    @Test
+    public void testThrottled() {
+        assertTrue(AdaptiveSizer.isThrottled(new SocketTimeoutException("Read timed out")));
+        assertTrue(AdaptiveSizer.isThrottled(new RuntimeException(new TimeoutException())));
+        assertTrue(AdaptiveSizer.isThrottled(new ApiException(new ApiError(ApiErrorType.TIMEOUT_REQUEST, "timeout", null))));
+        assertFalse(AdaptiveSizer.isThrottled(new ApiException(new ApiError(ApiErrorType.NOT_FOUND, "not found", null))));
+        assertFalse(AdaptiveSizer.isThrottled(new ApiException((ApiError) null)));
+        assertFalse(AdaptiveSizer.isThrottled(new RuntimeException(new ConnectException("Connection refused"))));
+        // only the type is looked at, not a message which happens to mention a timeout
+        assertFalse(AdaptiveSizer.isThrottled(new IllegalStateException("timeout_429 is not a valid field")));
+
+        assertTrue(AdaptiveSizer.isThrottled(429));
+        assertTrue(AdaptiveSizer.isThrottled(503));
+        assertTrue(AdaptiveSizer.isThrottled(504));
+        assertFalse(AdaptiveSizer.isThrottled(200));
+        assertFalse(AdaptiveSizer.isThrottled(400));
+        assertFalse(AdaptiveSizer.isThrottled(500));
+    }
+
+    private Object slowly() {
+        try {
+            Thread.sleep(30);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void requestFailing(AdaptiveSizer sizer, int requestedSize, RuntimeException failure) {
+        try {
+            sizer.request(requestedSize, () -> {
+                throw failure;
+            });
+            fail("the failure should have been thrown");
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests writing chunks of entities on a background thread, the bound on the chunks waiting to be written,
+ * and how errors writing them reach the fetching threads
+ */
+public class BackgroundWriterTest {
+    private Path dir;
+    private ExecutorService fetcher = Executors.newSingleThreadExecutor(Utils.newThreadFactory("test-fetcher", false));
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("background");
+    }
+
+    @After
+    public void after() throws IOException {
+        fetcher.shutdownNow();
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * An error writing to the file is thrown as the IOException, rather than wrapped in an unchecked exception.
+     */
+    @Test
+    public void testWriteErrorIsAnIOException() throws IOException {
+        try (EntityWriter writer = new JsonArrayWriter("pod", dir, false, true)) {
+            writer.writeEntity(new Unwritable());
+            fail("the error should have been thrown");
+        } catch (IOException e) {
+            assertEquals("No space left on device", e.getMessage());
+        }
+
+        try (EntityWriter writer = new NdjsonSegmentWriter("pod", dir, 1024, true)) {
+            writer.writeEntity(new Unwritable());
+            fail("the error should have been thrown");
+        } catch (IOException e) {
+            assertEquals("No space left on device", e.getMessage());
+        }
+    }
+
+    /**
+     * Once a chunk can't be written, the next write, and finishing, throw the error.
+     */
+    @Test
+    public void testWriteErrorReachesWriteAndFinish() throws Exception {
+        try (EntityWriter writer = new JsonArrayWriter("pod", dir, false, true)) {
+            BackgroundWriter background = new BackgroundWriter(writer, "test-writer", 1);
+            background.write(Collections.singletonList(new Unwritable()));
+
+            IOException thrown = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (thrown == null && System.currentTimeMillis() < deadline) {
+                try {
+                    background.write(Collections.singletonList("entity"));
+                    Thread.sleep(10);
+                } catch (IOException e) {
+                    thrown = e;
+                }
+            }
+            assertTrue("write should have thrown the error", thrown != null);
+            assertEquals("No space left on device", thrown.getCause().getMessage());
+
+            try {
+                background.finish();
+                fail("finish should have thrown the error");
+            } catch (IOException e) {
+                assertEquals("No space left on device", e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * A writer that throws an unchecked exception doesn't stop the queue from being drained, so the fetching
+     * threads aren't left blocked, and the exception is thrown when finishing.
+     */
+    @Test
+    public void testUncheckedErrorKeepsDraining() throws Exception {
+        FailingWriter writer = new FailingWriter();
+        BackgroundWriter background = new BackgroundWriter(writer, "test-writer", 1);
+
+        // many more chunks than the queue holds, which would block forever if nothing took them
+        Future<?> fetched = fetcher.submit(() -> {
+            for (int i = 0; i < 100; i++) {
+                try {
+                    background.write(Collections.singletonList("entity"));
+                } catch (IOException e) {
+                    // expected once the failure has been seen, keep writing to fill the queue
+                }
+            }
+            return null;
+        });
+        fetched.get(5, TimeUnit.SECONDS);
+
+        try {
+            background.finish();
+            fail("finish should have thrown the error");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("only the first chunk should have been written", 1, writer.calls);
+    }
+
+    /**
+     * Once the queue is full, writing waits for the writer to catch up, and finishing waits for every chunk.
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        BlockingWriter writer = new BlockingWriter();
+        BackgroundWriter background = new BackgroundWriter(writer, "test-writer", 2);
+
+        // the first chunk is taken by the writer, which waits, and the next two fill the queue
+        for (int i = 0; i < 3; i++) {
+            background.write(Collections.singletonList(i));
+        }
+        writer.started.await(5, TimeUnit.SECONDS);
+        Future<?> fourth = fetcher.submit(() -> {
+            background.write(Collections.singletonList(3));
+            return null;
+        });
+        Thread.sleep(200);
+        assertFalse("writing should wait while the queue is full", fourth.isDone());
+
+        writer.release.countDown();
+        fourth.get(5, TimeUnit.SECONDS);
+        background.finish();
+        assertEquals(Arrays.asList(0, 1, 2, 3), writer.written);
+    }
+
+    /**
+     * Stopping doesn't wait for the queued chunks to be written.
+     */
+    @Test
+    public void testStop() throws Exception {
+        BlockingWriter writer = new BlockingWriter();
+        BackgroundWriter background = new BackgroundWriter(writer, "test-writer", 2);
+        for (int i = 0; i < 3; i++) {
+            background.write(Collections.singletonList(i));
+        }
+        writer.started.await(5, TimeUnit.SECONDS);
+
+        background.stop();
+        assertTrue("the writer should have been interrupted", writer.interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.emptyList(), writer.written);
+    }
+
+    /**
+     * An entity which fails to serialize with the error a full disk gives.
+     */
+    @JsonAdapter(UnwritableAdapter.class)
+    static class Unwritable {
+    }
+
+    static class UnwritableAdapter extends TypeAdapter<Unwritable> {
+        @Override
+        public void write(JsonWriter out, Unwritable value) throws IOException {
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public Unwritable read(JsonReader in) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Waits until released before writing each chunk, and keeps the entities written.
+     */
+    static class BlockingWriter implements EntityWriter {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final List<Object> written = new CopyOnWriteArrayList<>();
+
+        @Override
+        public <T> void writeEntity(T jsonObject) {
+            written.add(jsonObject);
+        }
+
+        @Override
+        public <T> void writeEntities(List<T> jsonList) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException();
+            }
+            for (T elem : jsonList) {
+                writeEntity(elem);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int getNumberOfEntities() {
+            return written.size();
+        }
+    }
+
+    /**
+     * Fails every write with an unchecked exception, counting the writes.
+     */
+    static class FailingWriter implements EntityWriter {
+        volatile int calls = 0;
+
+        @Override
+        public <T> void writeEntity(T jsonObject) {
+            calls++;
+            throw new IllegalStateException("Can't serialize " + jsonObject);
+        }
+
+        @Override
+        public <T> void writeEntities(List<T> jsonList) {
+            writeEntity(jsonList);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int getNumberOfEntities() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the accounting of the create pipeline: what counts as in flight, and that the queue's room is always given
+ * back however a task ends.
+ */
+public class CreatePipelineTest {
+    private static final int CAPACITY = 4;
+
+    /**
+     * awaitCompletion() doesn't return while a task is waiting to be retried, or is running again.
+     */
+    @Test
+    public void testAwaitCompletionWaitsForRetries() throws InterruptedException {
+        CreatePipeline pipeline = new CreatePipeline(2, CAPACITY, false);
+        AtomicInteger finished = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(new Runnable() {
+                private int attempts = 0;
+
+                @Override
+                public void run() {
+                    if (++attempts < 3) {
+                        pipeline.retryLater(this, 50);
+                        return;
+                    }
+                    sleep(10);
+                    finished.incrementAndGet();
+                }
+            });
+        }
+        pipeline.awaitCompletion();
+        assertEquals(20, finished.get());
+        assertEquals(0, pipeline.getInFlight());
+        assertEquals(0, pipeline.getWaitingRetries());
+        assertEquals(CAPACITY, pipeline.getAvailablePermits());
+
+        // the pipeline can still be used, and waits again
+        pipeline.submit(new Runnable() {
+            private boolean retried = false;
+
+            @Override
+            public void run() {
+                if (!retried) {
+                    retried = true;
+                    pipeline.retryLater(this, 200);
+                    return;
+                }
+                finished.incrementAndGet();
+            }
+        });
+        pipeline.awaitCompletion();
+        assertEquals(21, finished.get());
+        pipeline.shutdown();
+    }
+
+    /**
+     * Tasks which succeed, throw, are retried, or queue more tasks themselves all give back the room they took.
+     */
+    @Test
+    public void testPermitsNotLeaked() throws InterruptedException {
+        CreatePipeline pipeline = new CreatePipeline(3, CAPACITY, false);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            switch (i % 4) {
+                case 0:
+                    pipeline.submit(ran::incrementAndGet);
+                    break;
+                case 1:
+                    pipeline.submit(() -> {
+                        ran.incrementAndGet();
+                        throw new IllegalStateException("worker failure");
+                    });
+                    break;
+                case 2:
+                    pipeline.submit(new Runnable() {
+                        private boolean retried = false;
+
+                        @Override
+                        public void run() {
+                            if (!retried) {
+                                retried = true;
+                                pipeline.retryLater(this, 5);
+                                return;
+                            }
+                            ran.incrementAndGet();
+                        }
+                    });
+                    break;
+                default:
+                    // as the pod scheduler does when a parent has been imported
+                    pipeline.submit(() -> pipeline.submitWithoutBlocking(ran::incrementAndGet));
+                    break;
+            }
+        }
+        pipeline.awaitCompletion();
+        assertEquals(200, ran.get());
+        assertEquals(CAPACITY, pipeline.getAvailablePermits());
+
+        // all of the room is there to be used: CAPACITY tasks can be queued, and the one after that has to wait
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < CAPACITY; i++) {
+            pipeline.submit(() -> await(release));
+        }
+        assertEquals(0, pipeline.getAvailablePermits());
+        Thread reader = new Thread(() -> {
+            try {
+                pipeline.submit(ran::incrementAndGet);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        reader.join(200);
+        assertTrue("the reader should be waiting for room", reader.isAlive());
+        release.countDown();
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        pipeline.awaitCompletion();
+        assertEquals(201, ran.get());
+        assertEquals(CAPACITY, pipeline.getAvailablePermits());
+        pipeline.shutdown();
+    }
+
+    /**
+     * A task waiting to be retried gives its room back, but the reader is still held up while as many tasks as the
+     * queue holds are waiting.
+     */
+    @Test
+    public void testReaderWaitsForRetries() throws InterruptedException {
+        CreatePipeline pipeline = new CreatePipeline(1, CAPACITY, false);
+        CountDownLatch retry = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < CAPACITY; i++) {
+            pipeline.submit(new Runnable() {
+                private boolean retried = false;
+
+                @Override
+                public void run() {
+                    if (!retried) {
+                        retried = true;
+                        pipeline.retryLater(this, 300);
+                        return;
+                    }
+                    ran.incrementAndGet();
+                }
+            });
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.getWaitingRetries() < CAPACITY && System.currentTimeMillis() < deadline) {
+            sleep(5);
+        }
+        assertEquals(CAPACITY, pipeline.getWaitingRetries());
+        assertEquals(CAPACITY, pipeline.getAvailablePermits());
+
+        Thread reader = new Thread(() -> {
+            try {
+                pipeline.submit(retry::countDown);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        assertFalse("submitted while the retries were waiting", retry.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(retry.await(10, TimeUnit.SECONDS));
+        reader.join(10000);
+        pipeline.awaitCompletion();
+        assertEquals(CAPACITY, ran.get());
+        assertEquals(CAPACITY, pipeline.getAvailablePermits());
+        pipeline.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
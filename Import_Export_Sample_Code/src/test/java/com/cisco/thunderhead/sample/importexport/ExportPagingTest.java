@@ -0,0 +1,158 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests how Export pages through the summary search results, using a stand-in for Context Service
+ */
+public class ExportPagingTest {
+    private static final int PODS = 1000;
+    private static final int MAX_SUMMARY_IDS = 100;
+    private static final int WINDOW_SIZE = 50;
+    private static final long START_TIME = 1500000000000L;
+
+    private StandInContextServiceClient standIn;
+    private Set<String> podIds;
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        addPods(new StandInContextServiceClient());
+        dir = Files.createTempDirectory("export");
+    }
+
+    /**
+     * Adds one pod every 10 milliseconds, so that every page of IDs ends at a different time.
+     */
+    private void addPods(StandInContextServiceClient standIn) {
+        this.standIn = standIn;
+        podIds = new HashSet<>();
+        for (int i = 0; i < PODS; i++) {
+            UUID id = UUID.randomUUID();
+            standIn.add(ContextObject.Types.POD, id, START_TIME + 1000 + i * 10, null, null);
+            podIds.add(id.toString());
+        }
+    }
+
+    @After
+    public void after() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Each page of IDs should cost one summary search plus the searches for the entities themselves, without
+     * an extra call to find out where the next page ends.
+     */
+    @Test
+    public void testNoExtraCallsPerPage() throws Exception {
+        export(1);
+
+        assertEquals("no entities should be looked up individually", 0, standIn.getContextObjectCalls.get());
+
+        // each page after the first overlaps the previous one by the pod on the boundary,
+        // so 100 + 99 * 9 pods are found in 10 full pages, and the last 9 in one more page
+        int podPages = 11;
+        assertEquals("wrong number of summary searches", podPages + 2, standIn.summarySearches.get());
+        int chunksPerPage = (MAX_SUMMARY_IDS + WINDOW_SIZE - 1) / WINDOW_SIZE;
+        for (AtomicInteger idSearches : standIn.idSearchesPerPage.values()) {
+            assertTrue("too many searches for one page of IDs", idSearches.get() <= chunksPerPage);
+        }
+        assertEquals("wrong number of searches by ID", 21, standIn.idSearches.get());
+
+        assertEquals(podIds, exportedIds("pod.json"));
+    }
+
+    /**
+     * When the dense parts of the range are split and searched in parallel, every pod should still be
+     * exported exactly once.
+     */
+    @Test
+    public void testParallelPaging() throws Exception {
+        export(4);
+
+        assertEquals("no entities should be looked up individually", 0, standIn.getContextObjectCalls.get());
+        assertEquals(podIds, exportedIds("pod.json"));
+    }
+
+    /**
+     * However the pool handles the workers waiting for the chunks they forked, no more than the given number of
+     * calls are made to Context Service at once.
+     */
+    @Test
+    public void testConcurrencyBound() throws Exception {
+        // each call takes a while, and the pods are fetched in small chunks, so that many are forked and waited for
+        addPods(new StandInContextServiceClient(null, 2000, 0));
+        export(3, false, 5);
+
+        assertTrue("too many calls at once: " + standIn.mostConcurrentReads.get(), standIn.mostConcurrentReads.get() <= 3);
+        assertEquals(podIds, exportedIds("pod.json"));
+    }
+
+    /**
+     * When the chunk holding the oldest IDs of a page times out and is fetched again in smaller chunks, the next
+     * page still ends at the oldest of them, without looking it up.
+     */
+    @Test
+    public void testThrottledOldestChunk() throws Exception {
+        // the first page is fetched in two chunks, the second of which holds the oldest IDs
+        standIn.timeOutIdSearch(2);
+        export(1, true, WINDOW_SIZE);
+
+        assertEquals("no entities should be looked up individually", 0, standIn.getContextObjectCalls.get());
+        assertEquals(podIds, exportedIds("pod.json"));
+    }
+
+    private void export(int concurrency) throws Exception {
+        export(concurrency, false, WINDOW_SIZE);
+    }
+
+    private void export(int concurrency, boolean adaptive, int windowSize) throws Exception {
+        Export.Arguments arguments = new Export.Arguments();
+        arguments.adaptive = adaptive;
+        arguments.outputDir = dir.toString();
+        arguments.deleteExistingExports = true;
+        arguments.startDate = new RFC3339Date(START_TIME);
+        arguments.endDate = new RFC3339Date(START_TIME + 1000 + PODS * 10 + 1000);
+        arguments.maxSummaryIds = MAX_SUMMARY_IDS;
+        arguments.windowSize = windowSize;
+        arguments.concurrency = concurrency;
+        Export.doExport(standIn.client(), arguments);
+    }
+
+    /**
+     * Returns the IDs in an exported file, checking that none of them were exported twice.
+     */
+    private Set<String> exportedIds(String fileName) throws IOException {
+        Set<String> ids = new HashSet<>();
+        try (FileReader reader = new FileReader(new File(dir.toFile(), fileName))) {
+            JsonArray entities = new Gson().fromJson(reader, JsonArray.class);
+            for (JsonElement entity : entities) {
+                assertTrue("exported twice", ids.add(entity.getAsJsonObject().get("id").getAsString()));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.rest.FlushStatusBean;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests waiting for several flushes at once, using a stand-in for Context Service
+ */
+public class FlushMonitorTest {
+    private static final List<String> TYPES = Arrays.asList(ContextObject.Types.POD, ContextObject.Types.REQUEST, ContextObject.Types.CUSTOMER);
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * The flushes are polled at the same time, with the interval growing while they are still going.
+     */
+    @Test
+    public void testAwaitAll() throws Exception {
+        // each type completes after this many polls, and flushes 10 objects per poll
+        Map<String, Integer> pollsToComplete = new HashMap<>();
+        pollsToComplete.put(ContextObject.Types.POD, 7);
+        pollsToComplete.put(ContextObject.Types.REQUEST, 3);
+        pollsToComplete.put(ContextObject.Types.CUSTOMER, 4);
+        StandInContextServiceClient standIn = standIn(pollsToComplete);
+
+        long start = System.currentTimeMillis();
+        Map<String, FlushStatusBean> statuses = new FlushMonitor(standIn.client(), 60000).awaitAll(TYPES);
+        long elapsed = System.currentTimeMillis() - start;
+
+        for (String type : TYPES) {
+            assertTrue(statuses.get(type).isCompleted());
+            assertEquals(pollsToComplete.get(type) * 10, statuses.get(type).getNumberFlushed());
+            assertEquals((int) pollsToComplete.get(type), standIn.flushPolls.get(type).get());
+        }
+        assertEquals(3, standIn.mostConcurrentFlushPolls.get());
+        // waited for together, rather than one after another
+        assertTrue("took " + elapsed + " ms", elapsed < 12 * POLL_MILLIS);
+        // 1, 2, 4, 8, 16, 16, 16 seconds
+        assertEquals(16, standIn.longestFlushWait.get());
+    }
+
+    /**
+     * The deadline is shared by all of the flushes.
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        Map<String, Integer> pollsToComplete = new HashMap<>();
+        pollsToComplete.put(ContextObject.Types.POD, 3);
+        pollsToComplete.put(ContextObject.Types.REQUEST, Integer.MAX_VALUE);
+        pollsToComplete.put(ContextObject.Types.CUSTOMER, 3);
+        StandInContextServiceClient standIn = standIn(pollsToComplete);
+
+        long start = System.currentTimeMillis();
+        try {
+            new FlushMonitor(standIn.client(), 5 * POLL_MILLIS).awaitAll(TYPES);
+            fail("expected a TimeoutException");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Flush of requests not complete."));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed + " ms", elapsed < 10 * POLL_MILLIS);
+        // a wait never goes past the deadline
+        assertEquals(1, standIn.longestFlushWait.get());
+    }
+
+    /**
+     * Returns a stand-in whose flushes complete after the given number of polls.  Each poll takes POLL_MILLIS,
+     * rather than the number of seconds asked for, to keep the test short.
+     */
+    private static StandInContextServiceClient standIn(Map<String, Integer> pollsToComplete) {
+        StandInContextServiceClient standIn = new StandInContextServiceClient();
+        standIn.setFlushPollMillis(POLL_MILLIS);
+        pollsToComplete.forEach(standIn::flushCompletesAfter);
+        return standIn;
+    }
+}
@@ -0,0 +1,183 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.cisco.thunderhead.util.RFC3339Date;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures Import and Export against StandInContextServiceClient, so that their performance can be compared between
+ * versions without a live Context Service.  For each size, a SyntheticDataset is written to files, imported, and
+ * exported again, and the objects per second and peak heap usage of each step are reported.
+ *
+ * Run the main method with the test classpath, and a heap large enough for the largest size (e.g. -Xmx4g):
+ * -s, --sizes        The numbers of objects to run with, separated by commas (Default: 10000,1000000,10000000)
+ * -n, --concurrency  The number of calls to the stand-in to make in parallel (Default: 16)
+ * -p, --parsers      The number of threads Import parses each JSON array file with (Default: 1)
+ * -l, --latency      The average time each call to the stand-in takes, in microseconds (Default: 0)
+ * -e, --errorRate    The share of creates which fail and are retried, between 0 and 1 (Default: 0)
+ * -d, --dir          The directory to write the files to, which needs room for about 500 bytes per object (Default: a temporary directory)
+ */
+public class ImportExportBenchmark {
+    private static final long HEAP_SAMPLE_MILLIS = 50;
+
+    @Parameter(names = {"-s", "--sizes"}, description = "The numbers of objects to run with, separated by commas")
+    private String sizes = "10000,1000000,10000000";
+
+    @Parameter(names = {"-n", "--concurrency"}, arity = 1, description = "The number of calls to the stand-in to make in parallel")
+    private int concurrency = 16;
+
+    @Parameter(names = {"-p", "--parsers"}, arity = 1, description = "The number of threads Import parses each JSON array file with")
+    private int parsers = 1;
+
+    @Parameter(names = {"-l", "--latency"}, arity = 1, description = "The average time each call to the stand-in takes, in microseconds")
+    private long latencyMicros = 0;
+
+    @Parameter(names = {"-e", "--errorRate"}, arity = 1, description = "The share of creates which fail and are retried")
+    private double errorRate = 0;
+
+    @Parameter(names = {"-d", "--dir"}, description = "The directory to write the files to")
+    private String dir;
+
+    public static void main(String[] args) throws Exception {
+        ImportExportBenchmark benchmark = new ImportExportBenchmark();
+        new JCommander(benchmark, args);
+        List<String> results = new ArrayList<>();
+        for (String size : benchmark.sizes.split(",")) {
+            results.addAll(benchmark.run(Integer.parseInt(size.trim())));
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-10s %10s %12s %14s %14s", "step", "objects", "millis", "objects/sec", "peak heap MB"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Generates, imports and exports the given number of objects.
+     * @return a line of the results table for each step
+     */
+    List<String> run(int objects) throws Exception {
+        Path root = dir != null ? Files.createTempDirectory(Paths.get(dir), "benchmark") : Files.createTempDirectory("benchmark");
+        Path dataDir = Files.createDirectory(root.resolve("data"));
+        Path importDir = Files.createDirectory(root.resolve("import"));
+        Path exportDir = Files.createDirectory(root.resolve("export"));
+        List<String> results = new ArrayList<>();
+        try {
+            SyntheticDataset dataset = new SyntheticDataset(objects, 1);
+
+            HeapSampler heap = new HeapSampler();
+            long start = System.currentTimeMillis();
+            int written = dataset.writeFiles(dataDir);
+            results.add(result("generate", written, System.currentTimeMillis() - start, heap.stop()));
+
+            StandInContextServiceClient standIn = new StandInContextServiceClient(dataset, latencyMicros, errorRate);
+            Import.Arguments importArguments = new Import.Arguments();
+            importArguments.inputDirectory = dataDir.toString();
+            importArguments.outputDirectory = importDir.toString();
+            importArguments.concurrency = concurrency;
+            importArguments.parsers = parsers;
+            // the stand-in's errors don't clear up with time, so there is no point waiting long before retrying
+            importArguments.retryDelay = 10;
+            heap = new HeapSampler();
+            start = System.currentTimeMillis();
+            try {
+                Import.doImport(standIn.client(), importArguments);
+            } finally {
+                Import.cleanup();
+            }
+            results.add(result("import", Import.getNumberOfImportedEntities(), System.currentTimeMillis() - start, heap.stop()));
+
+            Export.Arguments exportArguments = new Export.Arguments();
+            exportArguments.outputDir = exportDir.toString();
+            exportArguments.deleteExistingExports = true;
+            exportArguments.startDate = new RFC3339Date(SyntheticDataset.START_TIME);
+            exportArguments.endDate = new RFC3339Date(SyntheticDataset.START_TIME + 366L * 24 * 60 * 60 * 1000);
+            exportArguments.maxSummaryIds = 100000;
+            exportArguments.windowSize = 200;
+            exportArguments.concurrency = concurrency;
+            standIn = new StandInContextServiceClient(dataset, latencyMicros, 0);
+            heap = new HeapSampler();
+            start = System.currentTimeMillis();
+            Export.doExport(standIn.client(), exportArguments);
+            long elapsed = System.currentTimeMillis() - start;
+            int exported = 0;
+            for (String type : new String[]{"customer", "request", "pod"}) {
+                try (ElementReader reader = Import.openReader(exportDir.resolve(type + ".json"), 0)) {
+                    while (reader.next() != null) {
+                        exported++;
+                    }
+                }
+            }
+            results.add(result("export", exported, elapsed, heap.stop()));
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        return results;
+    }
+
+    private static String result(String step, int objects, long millis, long peakHeapBytes) {
+        String result = String.format(Locale.ROOT, "%-10s %10d %12d %14.0f %14.1f", step, objects, millis,
+                objects * 1000.0 / Math.max(1, millis), peakHeapBytes / (1024.0 * 1024.0));
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Samples the heap in use on a background thread, to find the most used during a step.
+     */
+    private static class HeapSampler {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        HeapSampler() {
+            // start each step from what is actually live
+            System.gc();
+            sample();
+            thread = new Thread(() -> {
+                while (running) {
+                    sample();
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        /**
+         * @return the most heap used since the sampler started, in bytes
+         */
+        long stop() throws InterruptedException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+            sample();
+            return peak.get();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests writing the import journal, reloading it, and resuming reading a file from the offset it records
+ */
+public class ImportJournalTest {
+    private static final String NOTES = "Context_Notes_Special";
+    // strings which would confuse a scanner that didn't track strings and escapes
+    private static final String SPECIAL = "} { \" \\\" [ ] \\";
+
+    private Gson gson = CSGsonFactory.getCSJson();
+    private Path dir;
+    private Path journalFile;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("journal");
+        journalFile = dir.resolve(ImportJournal.FILE_NAME);
+    }
+
+    @After
+    public void after() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * The IDs and offsets written are the ones loaded.  The offset is the start of the earliest object which hasn't
+     * finished, since objects finish in any order.
+     */
+    @Test
+    public void testReload() throws IOException {
+        UUID created = UUID.randomUUID();
+        UUID createdAs = UUID.randomUUID();
+        UUID failed = UUID.randomUUID();
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            ImportJournal.FileProgress pods = journal.progress(ContextObject.Types.POD);
+            ImportJournal.FileProgress segment = journal.progress("customer-00001.ndjson.gz");
+            long first = pods.read(1, 100);
+            // still being imported
+            pods.read(101, 200);
+            long third = pods.read(201, 300);
+            pods.committed(first);
+            pods.committed(third);
+            segment.committed(segment.read(0, 50));
+
+            journal.created(ContextObject.Types.CUSTOMER, created, createdAs);
+            journal.failed(ContextObject.Types.POD, failed);
+        }
+
+        UUIDMap idMap = new UUIDMap();
+        Set<UUID> failedIds = new HashSet<>();
+        Map<String, Long> offsets = ImportJournal.load(journalFile, idMap, failedIds);
+        assertEquals(1, idMap.size());
+        assertEquals(createdAs, idMap.get(created));
+        assertEquals(1, failedIds.size());
+        assertTrue(failedIds.contains(failed));
+        assertEquals(101L, (long) offsets.get(ContextObject.Types.POD));
+        assertEquals(50L, (long) offsets.get("customer-00001.ndjson.gz"));
+
+        // a resumed import appends to the same journal, and its offsets replace the earlier ones
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            ImportJournal.FileProgress pods = journal.progress(ContextObject.Types.POD);
+            pods.committed(pods.read(101, 200));
+        }
+        offsets = ImportJournal.load(journalFile, new UUIDMap(), new HashSet<>());
+        assertEquals(200L, (long) offsets.get(ContextObject.Types.POD));
+    }
+
+    /**
+     * Records are forced to disk in batches, and an offset is only written again once it has changed.
+     */
+    @Test
+    public void testSyncBatching() throws IOException {
+        long start = System.currentTimeMillis();
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            ImportJournal.FileProgress pods = journal.progress(ContextObject.Types.POD);
+            pods.committed(pods.read(0, 10));
+            for (int i = 0; i < 10; i++) {
+                journal.created(ContextObject.Types.POD, UUID.randomUUID(), UUID.randomUUID());
+            }
+            if (System.currentTimeMillis() - start < 500) {
+                // well within the sync interval, so still buffered
+                assertEquals(0, load().size());
+            }
+
+            for (int i = 10; i < ImportJournal.SYNC_BATCH_SIZE; i++) {
+                journal.created(ContextObject.Types.POD, UUID.randomUUID(), UUID.randomUUID());
+            }
+            // a full batch is on disk without closing the journal, with the offset reached so far
+            UUIDMap idMap = new UUIDMap();
+            Map<String, Long> offsets = ImportJournal.load(journalFile, idMap, new HashSet<>());
+            assertTrue(idMap.size() >= ImportJournal.SYNC_BATCH_SIZE);
+            assertEquals(10L, (long) offsets.get(ContextObject.Types.POD));
+
+            journal.sync();
+            journal.sync();
+            pods.committed(pods.read(10, 20));
+            journal.sync();
+        }
+        List<String> offsetRecords = new ArrayList<>();
+        for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+            if (line.startsWith("O ")) {
+                offsetRecords.add(line);
+            }
+        }
+        assertEquals(2, offsetRecords.size());
+        assertEquals("O pod 20", offsetRecords.get(1));
+    }
+
+    /**
+     * A record which was cut short when the import was killed is ignored, even where what was written would parse,
+     * and is dropped when the import is resumed, rather than having the resumed import's records appended to it.
+     */
+    @Test
+    public void testTruncatedLastRecord() throws IOException {
+        UUID created = UUID.randomUUID();
+        UUID createdAs = UUID.randomUUID();
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            journal.created(ContextObject.Types.CUSTOMER, created, createdAs);
+            ImportJournal.FileProgress pods = journal.progress(ContextObject.Types.POD);
+            pods.committed(pods.read(0, 1234));
+        }
+
+        // an offset record cut short, which would resume in the middle of an object
+        append("O pod 12");
+        UUIDMap idMap = new UUIDMap();
+        Map<String, Long> offsets = ImportJournal.load(journalFile, idMap, new HashSet<>());
+        assertEquals(1234L, (long) offsets.get(ContextObject.Types.POD));
+        assertEquals(createdAs, idMap.get(created));
+
+        // an ID record cut short, whose last UUID still parses
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            journal.failed(ContextObject.Types.POD, UUID.randomUUID());
+        }
+        UUID cut = UUID.randomUUID();
+        String cutNewId = UUID.randomUUID().toString().substring(0, 28);
+        // UUID.fromString() accepts it, as a different UUID
+        UUID.fromString(cutNewId);
+        append("M " + ContextObject.Types.CUSTOMER + " " + cut + " " + cutNewId);
+        idMap = new UUIDMap();
+        Set<UUID> failedIds = new HashSet<>();
+        ImportJournal.load(journalFile, idMap, failedIds);
+        assertFalse(idMap.containsKey(cut));
+        assertEquals(1, idMap.size());
+        assertEquals(1, failedIds.size());
+
+        // resuming after the cut record
+        UUID resumed = UUID.randomUUID();
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            journal.created(ContextObject.Types.CUSTOMER, resumed, UUID.randomUUID());
+        }
+        idMap = new UUIDMap();
+        ImportJournal.load(journalFile, idMap, new HashSet<>());
+        assertTrue(idMap.containsKey(resumed));
+        assertFalse(idMap.containsKey(cut));
+        assertEquals(2, idMap.size());
+    }
+
+    /**
+     * An import which stops part way through a file resumes from the first object that hadn't finished, with the
+     * objects that did finish after it skipped, also when objects contain braces and quotes in their strings.
+     */
+    @Test
+    public void testResumeFromRecordedOffset() throws Exception {
+        Path file = writePods(100);
+        List<ElementReader.Element> elements = new ArrayList<>();
+        try (ElementReader reader = new JsonArrayElementReader(file, 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                elements.add(element);
+            }
+        }
+        assertEquals(100, elements.size());
+
+        // objects 0 to 59 have been read; all of them but 40 finished before the import was killed
+        try (ImportJournal journal = new ImportJournal(journalFile)) {
+            ImportJournal.FileProgress progress = journal.progress(ContextObject.Types.POD);
+            long[] sequences = new long[60];
+            for (int i = 0; i < 60; i++) {
+                sequences[i] = progress.read(elements.get(i).getStart(), elements.get(i).getEnd());
+            }
+            for (int i = 59; i >= 0; i--) {
+                if (i != 40) {
+                    journal.created(ContextObject.Types.POD, elements.get(i).toContextObject(gson).getId(), UUID.randomUUID());
+                    progress.committed(sequences[i]);
+                }
+            }
+            journal.sync();
+        }
+
+        UUIDMap idMap = new UUIDMap();
+        Map<String, Long> offsets = ImportJournal.load(journalFile, idMap, new HashSet<>());
+        long offset = offsets.get(ContextObject.Types.POD);
+        assertEquals(elements.get(40).getStart(), offset);
+
+        // reading restarts at object 40, and of what follows only the objects which hadn't finished are imported
+        List<String> resumed = new ArrayList<>();
+        try (ElementReader reader = new JsonArrayElementReader(file, offset)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                ContextObject pod = element.toContextObject(gson);
+                if (!idMap.containsKey(pod.getId())) {
+                    resumed.add(element.getJson());
+                    assertEquals(SPECIAL, notes(pod));
+                }
+            }
+        }
+        assertEquals(41, resumed.size());
+        assertEquals(elements.get(40).getJson(), resumed.get(0));
+        assertEquals(elements.get(60).getJson(), resumed.get(1));
+
+        // the parallel reader restarts at the same object
+        Set<Long> starts = ConcurrentHashMap.newKeySet();
+        new ParallelJsonArrayReader(file, offset, 3, gson).read((start, end) -> start, (pod, start) -> {
+            assertEquals(SPECIAL, notes(pod));
+            starts.add(start);
+        });
+        assertEquals(60, starts.size());
+        assertTrue(starts.contains(elements.get(40).getStart()));
+        assertFalse(starts.contains(elements.get(39).getStart()));
+    }
+
+    private UUIDMap load() throws IOException {
+        UUIDMap idMap = new UUIDMap();
+        ImportJournal.load(journalFile, idMap, new HashSet<>());
+        return idMap;
+    }
+
+    private void append(String partialRecord) throws IOException {
+        Files.write(journalFile, partialRecord.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private Path writePods(int count) throws IOException {
+        List<ContextObject> pods = JsonArrayWriterBenchmark.createEntities(count);
+        for (ContextObject pod : pods) {
+            Set<DataElement> dataElements = new HashSet<>(pod.getDataElements());
+            dataElements.add(new DataElement(NOTES, SPECIAL, ElementDataType.STRING));
+            pod.setDataElements(dataElements);
+        }
+        try (JsonArrayWriter writer = new JsonArrayWriter("pod", dir, false, true)) {
+            writer.writeEntities(pods);
+        }
+        return dir.resolve("pod.json");
+    }
+
+    private static String notes(ContextObject pod) {
+        for (DataElement dataElement : pod.getDataElements()) {
+            if (dataElement.getDataKey().equals(NOTES)) {
+                return (String) dataElement.getDataValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the metrics report written at the end of an import
+ */
+public class ImportMetricsTest {
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("metrics");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(dir.resolve("metrics.json"));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        ImportMetrics metrics = new ImportMetrics(20);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger(7);
+        ImportMetrics.Gauges gauges = new ImportMetrics.Gauges();
+        gauges.created = created::get;
+        gauges.inFlight = inFlight::get;
+        metrics.start(gauges);
+
+        // 1 to 1000 ms
+        for (int i = 1; i <= 1000; i++) {
+            metrics.recordCreate(ContextObject.Types.POD, TimeUnit.MILLISECONDS.toNanos(i));
+            created.incrementAndGet();
+        }
+        metrics.recordCreate(ContextObject.Types.CUSTOMER, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordParse(TimeUnit.MILLISECONDS.toNanos(250));
+        Thread.sleep(100);
+        inFlight.set(0);
+        metrics.stop();
+        // stopping again does nothing
+        metrics.stop();
+
+        Map<String, Integer> createdByType = new HashMap<>();
+        createdByType.put(ContextObject.Types.POD, 1000);
+        Map<String, Integer> retries = new HashMap<>();
+        retries.put("503", 3);
+        metrics.report(createdByType, 1, retries, 0, dir.resolve("metrics.json"));
+
+        JsonObject report;
+        try (Reader reader = Files.newBufferedReader(dir.resolve("metrics.json"), StandardCharsets.UTF_8)) {
+            report = new Gson().fromJson(reader, JsonObject.class);
+        }
+        assertEquals(1000, report.getAsJsonObject("created").get("pod").getAsInt());
+        assertEquals(1, report.get("failed").getAsInt());
+        assertEquals(3, report.getAsJsonObject("retries").get("503").getAsInt());
+        assertEquals(250, report.get("parseMillis").getAsLong());
+        assertEquals(500500 + 5, report.get("createMillis").getAsLong());
+
+        JsonObject pods = report.getAsJsonObject("createLatencyMillis").getAsJsonObject("pod");
+        assertEquals(1000, pods.get("count").getAsLong());
+        assertEquals(500, pods.get("p50").getAsDouble(), 1.0);
+        assertEquals(990, pods.get("p99").getAsDouble(), 1.0);
+        assertEquals(999, pods.get("p99_9").getAsDouble(), 1.0);
+        assertEquals(1000, pods.get("max").getAsDouble(), 1.0);
+        assertEquals(1, report.getAsJsonObject("createLatencyMillis").getAsJsonObject("customer").get("count").getAsLong());
+
+        // sampled at least once while running, and once when stopped
+        assertTrue(report.getAsJsonArray("timeline").size() >= 2);
+        assertEquals(7, report.get("maxInFlight").getAsInt());
+        JsonObject last = report.getAsJsonArray("timeline").get(report.getAsJsonArray("timeline").size() - 1).getAsJsonObject();
+        assertEquals(1000, last.get("created").getAsInt());
+        assertEquals(0, last.get("inFlight").getAsInt());
+    }
+}
@@ -0,0 +1,115 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the checks made by Import --dry-run
+ */
+public class ImportValidatorTest {
+    private static final int OBJECTS = 200;
+
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("dryrun");
+    }
+
+    @After
+    public void after() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testValidate() throws Exception {
+        List<UUID> customerIds = new ArrayList<>();
+        List<UUID> requestIds = new ArrayList<>();
+        List<String> customers = new ArrayList<>();
+        List<String> requests = new ArrayList<>();
+        List<String> pods = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            customerIds.add(UUID.randomUUID());
+            requestIds.add(UUID.randomUUID());
+            customers.add(object("customer", customerIds.get(i), null, null, null,
+                    "{\"Context_First_Name\":\"John\",\"type\":\"string\"}"));
+            requests.add(object("request", requestIds.get(i), customerIds.get(i), null, null,
+                    "{\"Context_Title\":\"Request " + i + "\",\"type\":\"string\"}"));
+            pods.add(object("pod", UUID.randomUUID(), customerIds.get(i), requestIds.get(i), "chat",
+                    "{\"Context_Notes\":\"Notes " + i + "\",\"type\":\"string\"}"));
+        }
+
+        // pods referring to objects which aren't in the export
+        pods.add(object("pod", UUID.randomUUID(), UUID.randomUUID(), requestIds.get(0), "voice", null));
+        pods.add(object("pod", UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, null));
+        // invalid objects
+        pods.add(object("pod", UUID.randomUUID(), null, null, "carrier pigeon", null));
+        pods.add(object("customer", UUID.randomUUID(), null, null, null, null));
+        pods.add(object("pod", UUID.randomUUID(), null, null, null, "{\"Context_Count\":3,\"type\":\"fraction\"}"));
+        pods.add(object("pod", UUID.randomUUID(), null, null, null, "{\"Context_Count\":\"many\",\"type\":\"integer\"}"));
+        requests.add(object("request", null, null, null, null, null));
+
+        write("customer", customers);
+        write("request", requests);
+        write("pod", pods);
+        Map<String, List<Path>> inputFiles = new HashMap<>();
+        for (String type : new String[]{"pod", "customer", "request"}) {
+            inputFiles.put(type, Collections.singletonList(dir.resolve(type + ".json")));
+        }
+
+        for (int parserThreads : new int[]{1, 3}) {
+            ImportValidator validator = new ImportValidator(inputFiles, parserThreads);
+            assertEquals(5, validator.validate());
+            assertEquals(OBJECTS, validator.getNumberRead(ContextObject.Types.CUSTOMER));
+            assertEquals(OBJECTS + 1, validator.getNumberRead(ContextObject.Types.REQUEST));
+            // the pod which couldn't be parsed isn't counted as read
+            assertEquals(OBJECTS + 5, validator.getNumberRead(ContextObject.Types.POD));
+            assertEquals(2, validator.getOrphanPods());
+        }
+    }
+
+    private static String object(String type, UUID id, UUID customerId, UUID parentId, String mediaType, String dataElement) {
+        StringBuilder json = new StringBuilder("{\"type\":\"" + type + "\"");
+        if (id != null) {
+            json.append(",\"id\":\"").append(id).append('"');
+        }
+        if (customerId != null) {
+            json.append(",\"customerId\":\"").append(customerId).append('"');
+        }
+        if (parentId != null) {
+            json.append(",\"parentId\":\"").append(parentId).append('"');
+        }
+        if (mediaType != null) {
+            json.append(",\"mediaType\":\"").append(mediaType).append('"');
+        }
+        json.append(",\"dataElements\":[");
+        if (dataElement != null) {
+            json.append(dataElement);
+        }
+        return json.append("]}").toString();
+    }
+
+    private void write(String type, List<String> objects) throws IOException {
+        String json = "[" + String.join(",\n", objects) + "]";
+        Files.write(dir.resolve(type + ".json"), json.getBytes(Charset.defaultCharset()));
+    }
+}
@@ -0,0 +1,135 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests exporting incrementally into delta sets, and compacting them, using a stand-in for Context Service
+ */
+public class IncrementalExportTest {
+    private static final int PODS = 300;
+    private static final long START_TIME = 1500000000000L;
+
+    private StandInContextServiceClient standIn;
+    private UUID[] podIds = new UUID[PODS];
+    private UUID customerId = UUID.randomUUID();
+    private Path dir;
+    private Path compacted;
+
+    @Before
+    public void before() throws IOException {
+        standIn = new StandInContextServiceClient();
+        standIn.add(ContextObject.Types.CUSTOMER, customerId, START_TIME + 500, null, null);
+        for (int i = 0; i < PODS; i++) {
+            podIds[i] = UUID.randomUUID();
+            standIn.add(ContextObject.Types.POD, podIds[i], START_TIME + 1000 + i * 10, customerId, null);
+        }
+        dir = Files.createTempDirectory("incremental");
+        compacted = Files.createTempDirectory("compacted");
+    }
+
+    @After
+    public void after() throws IOException {
+        for (Path path : new Path[]{dir, compacted}) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+        long firstEnd = START_TIME + 1000 + PODS * 10;
+        export(new RFC3339Date(START_TIME), firstEnd);
+        assertEquals(1, ExportState.load(dir).getLastDelta());
+        assertEquals(firstEnd - 10, ExportState.load(dir).getHighWaterMark(ContextObject.Types.POD).getDate().getTime());
+        assertEquals(PODS, lastUpdatedById(ExportState.deltaDir(dir, 1), "pod.json").size());
+
+        // update a few pods and add one more; the start date is no longer needed
+        standIn.add(ContextObject.Types.POD, podIds[0], firstEnd + 100, customerId, null);
+        standIn.add(ContextObject.Types.POD, podIds[1], firstEnd + 200, customerId, null);
+        UUID added = UUID.randomUUID();
+        standIn.add(ContextObject.Types.POD, added, firstEnd + 300, customerId, null);
+        // updated after the end of the range, so left for the next delta set
+        UUID late = UUID.randomUUID();
+        standIn.add(ContextObject.Types.POD, late, firstEnd + 2000, customerId, null);
+        export(null, firstEnd + 1000);
+
+        assertEquals(2, ExportState.load(dir).getLastDelta());
+        Map<String, Long> delta = lastUpdatedById(ExportState.deltaDir(dir, 2), "pod.json");
+        // the pod updated at the previous high-water mark is exported again
+        Set<String> expected = new HashSet<>();
+        expected.add(podIds[0].toString());
+        expected.add(podIds[1].toString());
+        expected.add(added.toString());
+        expected.add(podIds[PODS - 1].toString());
+        assertEquals(expected, delta.keySet());
+        // the customer of the pods comes along, so that the delta set can be imported on its own
+        assertEquals(1, lastUpdatedById(ExportState.deltaDir(dir, 2), "customer.json").size());
+        assertEquals(firstEnd + 300, ExportState.load(dir).getHighWaterMark(ContextObject.Types.POD).getDate().getTime());
+
+        // a delta set left behind by a failed export is ignored
+        Files.createDirectories(ExportState.deltaDir(dir, 3));
+
+        assertEquals(PODS + 1 + 1, DeltaCompactor.compact(dir, compacted, false, false, false));
+        Map<String, Long> pods = lastUpdatedById(compacted, "pod.json");
+        assertEquals(PODS + 1, pods.size());
+        assertEquals(firstEnd + 100, (long) pods.get(podIds[0].toString()));
+        assertEquals(firstEnd + 200, (long) pods.get(podIds[1].toString()));
+        assertEquals(START_TIME + 1000 + 20, (long) pods.get(podIds[2].toString()));
+        assertFalse(pods.containsKey(late.toString()));
+    }
+
+    private void export(RFC3339Date startDate, long endTime) throws Exception {
+        Export.Arguments arguments = new Export.Arguments();
+        arguments.outputDir = dir.toString();
+        arguments.incremental = true;
+        arguments.startDate = startDate;
+        arguments.endDate = new RFC3339Date(endTime);
+        arguments.maxSummaryIds = 100;
+        arguments.windowSize = 50;
+        arguments.concurrency = 2;
+        Export.doExport(standIn.client(), arguments);
+    }
+
+    /**
+     * Returns the last updated date of each entity in an exported file, checking that none of them were exported twice.
+     */
+    private static Map<String, Long> lastUpdatedById(Path dir, String fileName) throws Exception {
+        Map<String, Long> lastUpdated = new HashMap<>();
+        try (FileReader reader = new FileReader(dir.resolve(fileName).toFile())) {
+            JsonArray entities = new Gson().fromJson(reader, JsonArray.class);
+            for (JsonElement entity : entities) {
+                JsonObject object = entity.getAsJsonObject();
+                Long previous = lastUpdated.put(object.get("id").getAsString(),
+                        new RFC3339Date(object.get("lastUpdated").getAsString()).getDate().getTime());
+                assertTrue("exported twice", previous == null);
+            }
+        }
+        return lastUpdated;
+    }
+}
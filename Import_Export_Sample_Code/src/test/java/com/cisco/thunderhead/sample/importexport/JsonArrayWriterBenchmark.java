@@ -0,0 +1,138 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly JsonArrayWriter writes chunks of 10000 entities, compared with serializing each entity
+ * to a String first, as JsonArrayWriter used to.
+ *
+ * Run the main method with the test classpath.  The GC profiler reports the allocation rate, and
+ * gc.alloc.rate.norm is the number of bytes allocated per chunk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonArrayWriterBenchmark {
+    private static final int CHUNK_SIZE = 10000;
+
+    @Param({"false", "true"})
+    boolean pretty;
+
+    private List<ContextObject> chunk;
+    private Path dir;
+    private JsonArrayWriter writer;
+    private BufferedWriter stringWriter;
+    private int stringEntities;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonArrayWriterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void createChunk() throws IOException {
+        chunk = createEntities(CHUNK_SIZE);
+        dir = Files.createTempDirectory("benchmark");
+    }
+
+    @Setup(Level.Iteration)
+    public void openFiles() throws IOException {
+        writer = new JsonArrayWriter("streaming", dir, pretty, true);
+        File stringFile = dir.resolve("strings.json").toFile();
+        stringWriter = new BufferedWriter(new FileWriter(stringFile, false));
+        stringWriter.write("[");
+        stringEntities = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeFiles() throws IOException {
+        writer.close();
+        stringWriter.write("]");
+        stringWriter.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Serializes each entity straight into the file.
+     */
+    @Benchmark
+    public void streaming() throws IOException {
+        writer.writeEntities(chunk);
+    }
+
+    /**
+     * Serializes each entity to a String, then writes the String to the file.
+     */
+    @Benchmark
+    public void strings() throws IOException {
+        Gson gson = CSGsonFactory.getCSJson(pretty);
+        for (ContextObject entity : chunk) {
+            if (stringEntities++ != 0) {
+                stringWriter.write(",");
+            }
+            stringWriter.write(gson.toJson(entity));
+        }
+    }
+
+    /**
+     * Creates pods shaped like the ones Context Service returns, with a few data elements each.
+     */
+    static List<ContextObject> createEntities(int count) {
+        Gson gson = CSGsonFactory.getCSJson();
+        List<ContextObject> entities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String json = "{\"type\":\"pod\",\"id\":\"" + UUID.randomUUID() + "\","
+                    + "\"customerId\":\"" + UUID.randomUUID() + "\",\"parentId\":\"" + UUID.randomUUID() + "\","
+                    + "\"lastUpdated\":\"2017-06-01T12:00:00.000Z\",\"created\":\"2017-06-01T11:59:00.000Z\","
+                    + "\"state\":\"active\",\"mediaType\":\"voice\",\"fieldsets\":[\"cisco.base.pod\"],"
+                    + "\"dataElements\":["
+                    + "{\"Context_Notes\":\"Notes about pod " + i + ", with \\\"quotes\\\" and <markup>\",\"type\":\"string\"},"
+                    + "{\"Context_POD_Activity_Link\":\"http://example.com/activity/" + i + "\",\"type\":\"string\"},"
+                    + "{\"Context_POD_Source_Phone\":\"+1 555 0100\",\"type\":\"string\"}]}";
+            entities.add(gson.fromJson(json, ContextObject.class));
+        }
+        return entities;
+    }
+}
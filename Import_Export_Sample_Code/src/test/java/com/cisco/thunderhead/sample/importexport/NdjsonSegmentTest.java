@@ -0,0 +1,145 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests writing entities as gzipped newline-delimited JSON segments, and reading them back
+ */
+public class NdjsonSegmentTest {
+    private static final int ENTITIES = 1000;
+    private static final long SEGMENT_SIZE = 8 * 1024;
+
+    private Gson gson = new Gson();
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("segments");
+    }
+
+    @After
+    public void after() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        List<String> ids = write();
+
+        SegmentManifest manifest = SegmentManifest.read(dir, "pod");
+        assertEquals(ENTITIES, manifest.entities);
+        assertTrue("expected several segments", manifest.segments.size() > 1);
+        assertEquals("pod-00001.ndjson.gz", manifest.segments.get(0).file);
+
+        // the segments hold every entity, in the order they were written
+        List<String> read = new ArrayList<>();
+        int total = 0;
+        for (SegmentManifest.Segment segment : manifest.segments) {
+            assertTrue("segment is too large", segment.bytes < SEGMENT_SIZE + 1024);
+            List<String> segmentIds = readIds(dir.resolve(segment.file), 0);
+            assertEquals(segment.entities, segmentIds.size());
+            read.addAll(segmentIds);
+            total += segment.entities;
+        }
+        assertEquals(ENTITIES, total);
+        assertEquals(ids, read);
+    }
+
+    /**
+     * Reading can be restarted from the offset of any entity.
+     */
+    @Test
+    public void testReadFromOffset() throws IOException {
+        write();
+        Path segment = SegmentManifest.read(dir, "pod").segmentPaths(dir).get(0);
+
+        Map<Long, String> idsByOffset = new LinkedHashMap<>();
+        try (ElementReader reader = new NdjsonElementReader(segment, 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                idsByOffset.put(element.getStart(), id(element));
+            }
+        }
+
+        for (Map.Entry<Long, String> entry : idsByOffset.entrySet()) {
+            try (ElementReader reader = new NdjsonElementReader(segment, entry.getKey())) {
+                assertEquals(entry.getValue(), id(reader.next()));
+            }
+        }
+    }
+
+    @Test
+    public void testExistingFiles() throws IOException {
+        write();
+        try {
+            new NdjsonSegmentWriter("pod", dir, SEGMENT_SIZE, false);
+            fail("existing segments should not be overwritten");
+        } catch (IOException e) {
+            // expected
+        }
+
+        EntityWriter writer = new NdjsonSegmentWriter("pod", dir, SEGMENT_SIZE, true);
+        writer.close();
+        assertEquals(0, SegmentManifest.read(dir, "pod").segments.size());
+        assertEquals("only the manifest should be left", 1, dir.toFile().listFiles().length);
+    }
+
+    private List<String> write() throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (EntityWriter writer = new NdjsonSegmentWriter("pod", dir, SEGMENT_SIZE, false)) {
+            List<JsonObject> chunk = new ArrayList<>();
+            for (int i = 0; i < ENTITIES; i++) {
+                JsonObject entity = new JsonObject();
+                entity.addProperty("id", UUID.randomUUID().toString());
+                entity.addProperty("type", "pod");
+                entity.addProperty("description", "line one\nline two {with braces}");
+                ids.add(entity.get("id").getAsString());
+                chunk.add(entity);
+                if (chunk.size() == 10) {
+                    writer.writeEntities(chunk);
+                    chunk.clear();
+                }
+            }
+            assertEquals(ENTITIES, writer.getNumberOfEntities());
+        }
+        return ids;
+    }
+
+    private List<String> readIds(Path segment, long startOffset) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (ElementReader reader = new NdjsonElementReader(segment, startOffset)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                ids.add(id(element));
+            }
+            assertNull(reader.next());
+        }
+        return ids;
+    }
+
+    private String id(ElementReader.Element element) {
+        return gson.fromJson(element.getJson(), JsonObject.class).get("id").getAsString();
+    }
+}
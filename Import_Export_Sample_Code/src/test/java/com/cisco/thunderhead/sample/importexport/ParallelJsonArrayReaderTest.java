@@ -0,0 +1,142 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests reading a JSON array file with several parser threads
+ */
+public class ParallelJsonArrayReaderTest {
+    private static final int ENTITIES = 1000;
+    // small chunks and windows, so that objects are split across both
+    private static final int CHUNK_SIZE = 4 * 1024;
+    private static final long WINDOW_SIZE = 16 * 1024;
+
+    private Gson gson = CSGsonFactory.getCSJson();
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("parallel");
+    }
+
+    @After
+    public void after() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Every object is read, with the same offsets as the sequential reader, and announced in file order.
+     */
+    @Test
+    public void testSameAsSequentialReader() throws Exception {
+        for (boolean pretty : new boolean[]{false, true}) {
+            Path file = write(pretty);
+            List<long[]> expectedOffsets = new ArrayList<>();
+            Map<Long, String> expectedJson = new ConcurrentHashMap<>();
+            try (ElementReader reader = new JsonArrayElementReader(file, 0)) {
+                ElementReader.Element element;
+                while ((element = reader.next()) != null) {
+                    expectedOffsets.add(new long[]{element.getStart(), element.getEnd()});
+                    expectedJson.put(element.getStart(), gson.toJson(element.toContextObject(gson)));
+                }
+            }
+            assertEquals(ENTITIES, expectedOffsets.size());
+
+            List<long[]> offsets = Collections.synchronizedList(new ArrayList<>());
+            Map<Long, String> json = new ConcurrentHashMap<>();
+            new ParallelJsonArrayReader(file, 0, 4, gson, CHUNK_SIZE, WINDOW_SIZE).read(
+                    (start, end) -> {
+                        offsets.add(new long[]{start, end});
+                        return start;
+                    },
+                    (bean, start) -> json.put(start, gson.toJson(bean)));
+
+            assertEquals(expectedOffsets.size(), offsets.size());
+            for (int i = 0; i < offsets.size(); i++) {
+                assertEquals(expectedOffsets.get(i)[0], offsets.get(i)[0]);
+                assertEquals(expectedOffsets.get(i)[1], offsets.get(i)[1]);
+            }
+            assertEquals(expectedJson, json);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Reading can be restarted from the offset of any object.
+     */
+    @Test
+    public void testReadFromOffset() throws Exception {
+        Path file = write(false);
+        List<Long> starts = new ArrayList<>();
+        try (ElementReader reader = new JsonArrayElementReader(file, 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                starts.add(element.getStart());
+            }
+        }
+
+        int middle = starts.size() / 2;
+        Set<Long> read = ConcurrentHashMap.newKeySet();
+        new ParallelJsonArrayReader(file, starts.get(middle), 3, gson, CHUNK_SIZE, WINDOW_SIZE).read(
+                (start, end) -> start, (bean, start) -> read.add(start));
+        assertEquals(new HashSet<>(starts.subList(middle, starts.size())), read);
+    }
+
+    /**
+     * A failure to parse or handle an object is thrown once the parser threads have stopped.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        Path file = write(false);
+        try {
+            new ParallelJsonArrayReader(file, 0, 4, gson, CHUNK_SIZE, WINDOW_SIZE).read(
+                    (start, end) -> start,
+                    (bean, start) -> {
+                        throw new IOException("failed at " + start);
+                    });
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("failed at "));
+        }
+    }
+
+    private Path write(boolean pretty) throws IOException {
+        List<ContextObject> entities = JsonArrayWriterBenchmark.createEntities(ENTITIES);
+        for (int i = 0; i < entities.size(); i += 3) {
+            // strings which would confuse a scanner that didn't track strings and escapes
+            Set<DataElement> dataElements = new HashSet<>(entities.get(i).getDataElements());
+            dataElements.add(new DataElement("Context_Notes_" + i, "} ] { [ \\\" \\\\ \\", ElementDataType.STRING));
+            entities.get(i).setDataElements(dataElements);
+        }
+        try (JsonArrayWriter writer = new JsonArrayWriter("pod", dir, pretty, true)) {
+            writer.writeEntities(entities);
+        }
+        return dir.resolve("pod.json");
+    }
+}
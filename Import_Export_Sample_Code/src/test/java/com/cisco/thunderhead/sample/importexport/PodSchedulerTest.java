@@ -0,0 +1,230 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests when the pod scheduler lets pods through, using a pipeline which records the tasks instead of running them
+ */
+public class PodSchedulerTest {
+    private final UUIDMap idMap = new UUIDMap();
+    private final FakePipeline pipeline = new FakePipeline();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown();
+    }
+
+    /**
+     * A pod read before the customer and request it refers to waits for both of them, and pods whose parents have
+     * already been imported go straight through.
+     */
+    @Test
+    public void testPodReadBeforeParent() throws InterruptedException {
+        PodScheduler scheduler = new PodScheduler(pipeline, idMap, 1, 10);
+        UUID customerId = UUID.randomUUID();
+        UUID requestId = UUID.randomUUID();
+        scheduler.parentQueued();
+        scheduler.parentQueued();
+
+        Runnable createPod = task();
+        scheduler.offer(pod(customerId, requestId), createPod);
+        assertTrue(pipeline.tasks.isEmpty());
+        assertEquals(1, scheduler.getNumberOfWaitingPods());
+
+        importParent(scheduler, customerId);
+        assertTrue("still waiting for the request", pipeline.tasks.isEmpty());
+
+        importParent(scheduler, requestId);
+        assertEquals(1, pipeline.tasks.size());
+        assertTrue(pipeline.tasks.contains(createPod));
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+
+        // both have been imported now
+        Runnable nextPod = task();
+        scheduler.offer(pod(customerId, requestId), nextPod);
+        assertTrue(pipeline.tasks.contains(nextPod));
+
+        // and pods which refer to nothing never wait
+        Runnable loosePod = task();
+        scheduler.offer(pod(null, null), loosePod);
+        assertTrue(pipeline.tasks.contains(loosePod));
+        assertEquals(3, pipeline.tasks.size());
+    }
+
+    /**
+     * A pod waiting for a request which then fails to import is released, and later pods referring to it don't wait.
+     */
+    @Test
+    public void testParentFails() throws InterruptedException {
+        PodScheduler scheduler = new PodScheduler(pipeline, idMap, 1, 10);
+        UUID requestId = UUID.randomUUID();
+        scheduler.parentQueued();
+
+        Runnable createPod = task();
+        scheduler.offer(pod(null, requestId), createPod);
+        assertTrue(pipeline.tasks.isEmpty());
+
+        scheduler.parentResolved(requestId, false);
+        assertEquals(1, pipeline.tasks.size());
+        assertTrue(pipeline.tasks.contains(createPod));
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+
+        Runnable nextPod = task();
+        scheduler.offer(pod(null, requestId), nextPod);
+        assertTrue(pipeline.tasks.contains(nextPod));
+    }
+
+    /**
+     * When an import is resumed, a pod referring to a request which failed before it was interrupted doesn't wait for
+     * it, as the request is skipped rather than imported again.
+     */
+    @Test
+    public void testParentFailedBeforeResume() throws InterruptedException {
+        PodScheduler scheduler = new PodScheduler(pipeline, idMap, 1, 10);
+        UUID failedRequestId = UUID.randomUUID();
+        UUID customerId = UUID.randomUUID();
+        scheduler.parentsFailed(Collections.singleton(failedRequestId));
+
+        Runnable createPod = task();
+        scheduler.offer(pod(null, failedRequestId), createPod);
+        assertTrue(pipeline.tasks.contains(createPod));
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+
+        // a pod also referring to a customer still to be imported waits only for the customer
+        scheduler.parentQueued();
+        Runnable nextPod = task();
+        scheduler.offer(pod(customerId, failedRequestId), nextPod);
+        assertEquals(1, scheduler.getNumberOfWaitingPods());
+        importParent(scheduler, customerId);
+        assertTrue(pipeline.tasks.contains(nextPod));
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+    }
+
+    /**
+     * A pod referring to an object which is not part of the export waits until every customer and request has been
+     * read and resolved, then goes through with its original IDs.
+     */
+    @Test
+    public void testOrphanReleasedAtEndOfInput() throws InterruptedException {
+        PodScheduler scheduler = new PodScheduler(pipeline, idMap, 2, 10);
+        UUID missingId = UUID.randomUUID();
+        UUID customerId = UUID.randomUUID();
+
+        Runnable orphan = task();
+        scheduler.offer(pod(missingId, null), orphan);
+        scheduler.parentQueued();
+
+        // one reader finishes, but the other is still reading, and a customer is still being imported
+        scheduler.parentReaderFinished();
+        assertTrue(pipeline.tasks.isEmpty());
+        scheduler.parentReaderFinished();
+        assertTrue(pipeline.tasks.isEmpty());
+
+        importParent(scheduler, customerId);
+        assertEquals(1, pipeline.tasks.size());
+        assertTrue(pipeline.tasks.contains(orphan));
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+
+        // from now on nothing waits
+        Runnable lateOrphan = task();
+        scheduler.offer(pod(UUID.randomUUID(), null), lateOrphan);
+        assertTrue(pipeline.tasks.contains(lateOrphan));
+    }
+
+    /**
+     * The pod reader is blocked while the most pods allowed are waiting, until one of them is released.
+     */
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        PodScheduler scheduler = new PodScheduler(pipeline, idMap, 1, 2);
+        UUID firstParent = UUID.randomUUID();
+        UUID secondParent = UUID.randomUUID();
+        UUID thirdParent = UUID.randomUUID();
+        scheduler.parentQueued();
+        scheduler.parentQueued();
+        scheduler.parentQueued();
+        scheduler.offer(pod(firstParent, null), task());
+        scheduler.offer(pod(secondParent, null), task());
+        assertEquals(2, scheduler.getNumberOfWaitingPods());
+
+        Thread reader = new Thread(() -> {
+            try {
+                scheduler.offer(pod(thirdParent, null), task());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        reader.join(200);
+        assertTrue("the reader should be blocked", reader.isAlive());
+        assertEquals(2, scheduler.getNumberOfWaitingPods());
+
+        importParent(scheduler, firstParent);
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertEquals(1, pipeline.tasks.size());
+        // the third pod took the place of the first
+        assertEquals(2, scheduler.getNumberOfWaitingPods());
+
+        // the end of input releases the rest, and lets the reader through however many pods it offers
+        importParent(scheduler, secondParent);
+        importParent(scheduler, thirdParent);
+        scheduler.parentReaderFinished();
+        assertEquals(3, pipeline.tasks.size());
+        assertEquals(0, scheduler.getNumberOfWaitingPods());
+        for (int i = 0; i < 5; i++) {
+            scheduler.offer(pod(UUID.randomUUID(), null), task());
+        }
+        assertEquals(8, pipeline.tasks.size());
+    }
+
+    private void importParent(PodScheduler scheduler, UUID oldId) {
+        idMap.put(oldId, UUID.randomUUID());
+        scheduler.parentResolved(oldId, true);
+    }
+
+    private static ContextObject pod(UUID customerId, UUID requestId) {
+        ContextObject pod = new ContextObject(ContextObject.Types.POD);
+        pod.setId(UUID.randomUUID());
+        pod.setCustomerId(customerId);
+        pod.setParentId(requestId);
+        return pod;
+    }
+
+    private static Runnable task() {
+        return () -> {
+        };
+    }
+
+    /**
+     * Records the tasks queued, rather than running them.
+     */
+    private static class FakePipeline extends CreatePipeline {
+        final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+
+        FakePipeline() {
+            super(1, 1, false);
+        }
+
+        @Override
+        void submit(Runnable task) {
+            tasks.add(task);
+        }
+
+        @Override
+        void submitWithoutBlocking(Runnable task) {
+            tasks.add(task);
+        }
+    }
+}
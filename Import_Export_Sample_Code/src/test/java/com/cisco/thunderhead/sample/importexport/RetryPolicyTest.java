@@ -0,0 +1,87 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.errors.ApiError;
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the retry policy, and retrying tasks on the create pipeline
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testRetryable() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertTrue(RetryPolicy.isRetryable(504));
+        assertFalse(RetryPolicy.isRetryable(400));
+        assertFalse(RetryPolicy.isRetryable(409));
+
+        assertTrue(RetryPolicy.isRetryable(new RuntimeException(new SocketTimeoutException("Read timed out"))));
+        assertTrue(RetryPolicy.isRetryable(new RuntimeException(new ConnectException("Connection refused"))));
+        assertTrue(RetryPolicy.isRetryable(new ApiException(new ApiError(ApiErrorType.TIMEOUT_REQUEST, "timeout", null))));
+        assertFalse(RetryPolicy.isRetryable(new ApiException(new ApiError(ApiErrorType.NOT_FOUND, "not found", null))));
+        // only the type is looked at, not a message which happens to contain a status or "timeout"
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException("Invalid value 503 for field timeout_429")));
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException("Invalid data element")));
+    }
+
+    @Test
+    public void testDelay() {
+        RetryPolicy policy = new RetryPolicy(5, 1000);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.delayMillis(1);
+            assertTrue(first >= 500 && first <= 1000);
+            long third = policy.delayMillis(3);
+            assertTrue(third >= 2000 && third <= 4000);
+            long capped = policy.delayMillis(40);
+            assertTrue(capped >= 15000 && capped <= 30000);
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        RetryPolicy policy = new RetryPolicy(3, 10);
+        policy.retrying("503");
+        policy.retrying("429");
+        policy.retrying("503");
+        policy.exhausted();
+        assertEquals(2, (int) policy.getRetries().get("503"));
+        assertEquals(1, (int) policy.getRetries().get("429"));
+        assertEquals(1, policy.getExhausted());
+    }
+
+    /**
+     * A task which is retried counts as in flight until it has been run again, without holding up a worker.
+     */
+    @Test
+    public void testPipelineRetry() throws InterruptedException {
+        CreatePipeline pipeline = new CreatePipeline(1, 4, false);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger others = new AtomicInteger();
+        pipeline.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (attempts.incrementAndGet() < 3) {
+                    pipeline.retryLater(this, 50);
+                }
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(others::incrementAndGet);
+        }
+        pipeline.awaitCompletion();
+        assertEquals(3, attempts.get());
+        assertEquals(10, others.get());
+        pipeline.shutdown();
+    }
+}
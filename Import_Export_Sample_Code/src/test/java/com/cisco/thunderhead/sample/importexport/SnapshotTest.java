@@ -0,0 +1,184 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests writing entities to a binary snapshot, reading them back, and converting snapshots to and from JSON
+ */
+public class SnapshotTest {
+    private static final int ENTITIES = 500;
+
+    private Gson gson = CSGsonFactory.getCSJson();
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("snapshot");
+    }
+
+    @After
+    public void after() throws IOException {
+        delete(dir.toFile());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        List<ContextObject> entities = createEntities();
+        write(dir, entities);
+
+        List<String> read = new ArrayList<>();
+        try (ElementReader reader = new SnapshotElementReader(dir.resolve("pod.snapshot"), 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                read.add(gson.toJson(element.toContextObject(gson)));
+            }
+        }
+
+        assertEquals(entities.size(), read.size());
+        for (int i = 0; i < entities.size(); i++) {
+            assertEquals(normalize(gson.toJson(entities.get(i))), normalize(read.get(i)));
+        }
+    }
+
+    /**
+     * Reading can be restarted from the offset of any entity, even though the dictionary was built up by the
+     * records before it.
+     */
+    @Test
+    public void testReadFromOffset() throws IOException {
+        write(dir, createEntities());
+
+        List<Long> offsets = new ArrayList<>();
+        List<String> json = new ArrayList<>();
+        try (ElementReader reader = new SnapshotElementReader(dir.resolve("pod.snapshot"), 0)) {
+            ElementReader.Element element;
+            while ((element = reader.next()) != null) {
+                offsets.add(element.getStart());
+                json.add(element.getJson());
+            }
+        }
+
+        int middle = offsets.size() / 2;
+        try (ElementReader reader = new SnapshotElementReader(dir.resolve("pod.snapshot"), offsets.get(middle))) {
+            for (int i = middle; i < offsets.size(); i++) {
+                ElementReader.Element element = reader.next();
+                assertEquals((long) offsets.get(i), element.getStart());
+                assertEquals(json.get(i), element.getJson());
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    /**
+     * Converting JSON to a snapshot and back gives the same entities.
+     */
+    @Test
+    public void testConvert() throws IOException {
+        Path json = Files.createDirectory(dir.resolve("json"));
+        Path snapshot = Files.createDirectory(dir.resolve("snapshot"));
+        Path back = Files.createDirectory(dir.resolve("back"));
+        List<ContextObject> entities = createEntities();
+        for (String type : new String[]{"pod", "customer", "request"}) {
+            try (EntityWriter writer = new JsonArrayWriter(type, json, false, false)) {
+                writer.writeEntities(entities);
+            }
+        }
+
+        assertEquals(3 * entities.size(), SnapshotConverter.convert(json, snapshot, false, false, false));
+        assertTrue(snapshot.resolve("customer.snapshot").toFile().isFile());
+        assertEquals(3 * entities.size(), SnapshotConverter.convert(snapshot, back, true, false, false));
+
+        for (String type : new String[]{"pod", "customer", "request"}) {
+            JsonArray expected = new JsonParser().parse(new String(Files.readAllBytes(json.resolve(type + ".json")))).getAsJsonArray();
+            JsonArray actual = new JsonParser().parse(new String(Files.readAllBytes(back.resolve(type + ".json")))).getAsJsonArray();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(normalize(expected.get(i).toString()), normalize(actual.get(i).toString()));
+            }
+        }
+    }
+
+    /**
+     * Entities with data elements of every type, including some which have to be written as objects.
+     */
+    private static List<ContextObject> createEntities() {
+        List<ContextObject> entities = JsonArrayWriterBenchmark.createEntities(ENTITIES);
+        for (int i = 0; i < entities.size(); i += 7) {
+            Set<DataElement> dataElements = new HashSet<>(entities.get(i).getDataElements());
+            dataElements.add(new DataElement("Context_Count", i, ElementDataType.INTEGER));
+            dataElements.add(new DataElement("Context_Total", 9000000000L + i, ElementDataType.LONG));
+            dataElements.add(new DataElement("Context_Ratio", i / 3.0, ElementDataType.DOUBLE));
+            dataElements.add(new DataElement("Context_Flag", i % 2 == 0, ElementDataType.BOOLEAN));
+            dataElements.add(new DataElement("Context_Empty", null, ElementDataType.STRING));
+            dataElements.add(new DataElement("Context_Unicode", "\u00e9\u4e2d " + i, ElementDataType.STRING));
+            // not one of the types with a binary form
+            dataElements.add(new DataElement("Context_Float", 1.5f, ElementDataType.DOUBLE));
+            entities.get(i).setDataElements(dataElements);
+            entities.get(i).setFieldsets(i % 2 == 0 ? Collections.singletonList("cisco.base.pod") : new ArrayList<>());
+        }
+        return entities;
+    }
+
+    private static void write(Path dir, List<ContextObject> entities) throws IOException {
+        try (EntityWriter writer = new SnapshotWriter("pod", dir, false)) {
+            writer.writeEntities(entities);
+            assertEquals(entities.size(), writer.getNumberOfEntities());
+        }
+    }
+
+    /**
+     * The data elements are held in a set, so their order isn't significant.
+     */
+    private static JsonObject normalize(String json) {
+        JsonObject object = new JsonParser().parse(json).getAsJsonObject();
+        JsonElement dataElements = object.remove("dataElements");
+        if (dataElements != null) {
+            List<String> sorted = new ArrayList<>();
+            for (JsonElement dataElement : dataElements.getAsJsonArray()) {
+                sorted.add(dataElement.toString());
+            }
+            Collections.sort(sorted);
+            JsonArray array = new JsonArray();
+            for (String dataElement : sorted) {
+                array.add(new JsonParser().parse(dataElement));
+            }
+            object.add("dataElements", array);
+        }
+        return object;
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        Files.delete(file.toPath());
+    }
+}
@@ -0,0 +1,324 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.client.ClientResponse;
+import com.cisco.thunderhead.client.ContextServiceClient;
+import com.cisco.thunderhead.client.SearchParameters;
+import com.cisco.thunderhead.rest.FlushStatusBean;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory stand-in for Context Service, which answers the searches, lookups, creates and flushes made by Import
+ * and Export and counts them.  Summary searches return only the IDs of the entities, like Context Service does.
+ *
+ * The entities are either added one by one, or come from a SyntheticDataset, which generates each one when it is
+ * asked for, so that millions of them can be exported.  Objects created by Import are counted but not kept.
+ *
+ * Each call can be made to take a given latency, plus or minus up to half of it, and a given share of the creates
+ * to fail: half of those with a status which is retried (429 or 503) and the other half by timing out.
+ */
+class StandInContextServiceClient implements InvocationHandler {
+    private static Gson gson = CSGsonFactory.getCSJson();
+
+    private final SyntheticDataset dataset;
+    private final long latencyMicros;
+    private final double errorRate;
+
+    // entities by type, newest first, when not answering from a dataset
+    private final Map<String, List<ContextObject>> entities = new HashMap<>();
+    private final Map<UUID, ContextObject> entitiesById = new HashMap<>();
+    // each type's flush completes after this many polls, and flushes 10 objects per poll
+    private final Map<String, Integer> pollsToCompleteFlush = new ConcurrentHashMap<>();
+    private long flushPollMillis = 0;
+    // the numbers of the searches by ID, counting from 1, which time out
+    private final Set<Integer> timedOutIdSearches = ConcurrentHashMap.newKeySet();
+
+    final AtomicInteger summarySearches = new AtomicInteger();
+    final AtomicInteger idSearches = new AtomicInteger();
+    final AtomicInteger getContextObjectCalls = new AtomicInteger();
+    // number of searches by ID made after each summary search, by the number of the summary search
+    final Map<Integer, AtomicInteger> idSearchesPerPage = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+    final AtomicInteger createCalls = new AtomicInteger();
+    final AtomicInteger injectedErrors = new AtomicInteger();
+    // number of flush polls made of each type
+    final Map<String, AtomicInteger> flushPolls = new ConcurrentHashMap<>();
+    // the longest wait a flush poll asked for
+    final AtomicInteger longestFlushWait = new AtomicInteger();
+    final AtomicInteger mostConcurrentFlushPolls = new AtomicInteger();
+    private final AtomicInteger concurrentFlushPolls = new AtomicInteger();
+    // the most searches and lookups made at once
+    final AtomicInteger mostConcurrentReads = new AtomicInteger();
+    private final AtomicInteger concurrentReads = new AtomicInteger();
+
+    /**
+     * A stand-in which answers from the entities added to it, straight away.
+     */
+    StandInContextServiceClient() {
+        this(null, 0, 0);
+    }
+
+    /**
+     * @param dataset objects to answer Export's searches with, may be null to answer from the entities added
+     * @param latencyMicros average time each call takes
+     * @param errorRate share of the creates which fail, between 0 and 1
+     */
+    StandInContextServiceClient(SyntheticDataset dataset, long latencyMicros, double errorRate) {
+        this.dataset = dataset;
+        this.latencyMicros = latencyMicros;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Adds an entity, which was last updated at the given time, replacing any entity with the same ID.
+     */
+    synchronized ContextObject add(String type, UUID id, long lastUpdated, UUID customerId, UUID parentId) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", type);
+        json.addProperty("id", id.toString());
+        json.addProperty("lastUpdated", new RFC3339Date(lastUpdated).toString());
+        if (customerId != null) {
+            json.addProperty("customerId", customerId.toString());
+        }
+        if (parentId != null) {
+            json.addProperty("parentId", parentId.toString());
+        }
+        ContextObject entity = gson.fromJson(json, ContextObject.class);
+
+        List<ContextObject> ofType = entities.computeIfAbsent(type, key -> new ArrayList<>());
+        ofType.removeIf(existing -> existing.getId().equals(id));
+        ofType.add(entity);
+        ofType.sort(Comparator.comparing((ContextObject bean) -> time(bean.getLastUpdated())).reversed());
+        entitiesById.put(id, entity);
+        return entity;
+    }
+
+    /**
+     * Makes the flush of the given type complete after a number of polls, rather than on the first one.
+     */
+    void flushCompletesAfter(String type, int polls) {
+        pollsToCompleteFlush.put(type, polls);
+    }
+
+    /**
+     * Makes each flush poll take the given time, rather than the number of seconds asked for.
+     */
+    void setFlushPollMillis(long flushPollMillis) {
+        this.flushPollMillis = flushPollMillis;
+    }
+
+    /**
+     * Makes the given search by ID, counting from 1, time out.
+     */
+    void timeOutIdSearch(int number) {
+        timedOutIdSearches.add(number);
+    }
+
+    int getCreated(String type) {
+        AtomicInteger count = created.get(type);
+        return count != null ? count.get() : 0;
+    }
+
+    ContextServiceClient client() {
+        return (ContextServiceClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ContextServiceClient.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "create":
+                return create((ContextObject) args[0]);
+            case "search":
+            case "getContextObject":
+                mostConcurrentReads.accumulateAndGet(concurrentReads.incrementAndGet(), Math::max);
+                try {
+                    simulateLatency();
+                    if (method.getName().equals("search")) {
+                        return search((SearchParameters) args[1]);
+                    }
+                    getContextObjectCalls.incrementAndGet();
+                    String url = (String) args[1];
+                    return get(UUID.fromString(url.substring(url.lastIndexOf('/') + 1)));
+                } finally {
+                    concurrentReads.decrementAndGet();
+                }
+            case "waitForFlushComplete":
+                return pollFlush((String) args[0], (Integer) args[1]);
+            case "flush":
+            case "destroy":
+                return null;
+            case "toString":
+                return "StandInContextServiceClient";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private ClientResponse create(ContextObject bean) {
+        createCalls.incrementAndGet();
+        simulateLatency();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            if (ThreadLocalRandom.current().nextBoolean()) {
+                throw new RuntimeException(new SocketTimeoutException("Read timed out (injected)"));
+            }
+            return response(ThreadLocalRandom.current().nextBoolean() ? 429 : 503);
+        }
+        // the object keeps its ID; a new one would make no difference to the import
+        created.computeIfAbsent(bean.getType(), key -> new AtomicInteger()).incrementAndGet();
+        return response(201);
+    }
+
+    private ContextObject get(UUID id) {
+        if (dataset != null) {
+            String type = dataset.type(id);
+            return type != null && dataset.index(id) < dataset.count(type) ? dataset.entity(type, dataset.index(id)) : null;
+        }
+        synchronized (this) {
+            return entitiesById.get(id);
+        }
+    }
+
+    private List<ContextObject> search(SearchParameters searchParameters) throws ParseException {
+        String type = searchParameters.get("type").get(0);
+        List<ContextObject> results = new ArrayList<>();
+        int number = countSearch(searchParameters.containsKey("summary"));
+
+        if (searchParameters.containsKey("summary")) {
+            long startTime = time(new RFC3339Date(searchParameters.get("startDate").get(0)));
+            long endTime = time(new RFC3339Date(searchParameters.get("endDate").get(0)));
+            int maxEntries = Integer.parseInt(searchParameters.get("maxEntries").get(0));
+            for (UUID id : updatedWithin(type, startTime, endTime, maxEntries)) {
+                JsonObject summary = new JsonObject();
+                summary.addProperty("type", type);
+                summary.addProperty("id", id.toString());
+                results.add(gson.fromJson(summary, ContextObject.class));
+            }
+            return results;
+        }
+
+        if (timedOutIdSearches.contains(number)) {
+            throw new RuntimeException(new SocketTimeoutException("Read timed out (injected)"));
+        }
+        for (String id : searchParameters.get("id")) {
+            ContextObject entity = get(UUID.fromString(id));
+            if (entity != null && entity.getType().equals(type)) {
+                results.add(entity);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Counts a search, and the searches by ID made after each summary search.
+     * @return the number of the search, among the summary searches or the searches by ID
+     */
+    private synchronized int countSearch(boolean summary) {
+        if (summary) {
+            int number = summarySearches.incrementAndGet();
+            idSearchesPerPage.put(number, new AtomicInteger());
+            return number;
+        }
+        idSearchesPerPage.computeIfAbsent(summarySearches.get(), key -> new AtomicInteger()).incrementAndGet();
+        return idSearches.incrementAndGet();
+    }
+
+    /**
+     * The IDs of the entities of a type last updated within the range, newest first.
+     */
+    private List<UUID> updatedWithin(String type, long startTime, long endTime, int maxEntries) {
+        List<UUID> ids = new ArrayList<>();
+        if (dataset != null) {
+            int first = dataset.firstUpdatedAtOrAfter(type, startTime);
+            int last = dataset.firstUpdatedAtOrAfter(type, endTime + 1) - 1;
+            for (int i = last; i >= first && ids.size() < maxEntries; i--) {
+                ids.add(dataset.id(type, i));
+            }
+            return ids;
+        }
+        synchronized (this) {
+            for (ContextObject entity : entities.getOrDefault(type, new ArrayList<>())) {
+                long lastUpdated = time(entity.getLastUpdated());
+                if (lastUpdated >= startTime && lastUpdated <= endTime && ids.size() < maxEntries) {
+                    ids.add(entity.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    private FlushStatusBean pollFlush(String type, int waitSeconds) throws InterruptedException {
+        longestFlushWait.accumulateAndGet(waitSeconds, Math::max);
+        mostConcurrentFlushPolls.accumulateAndGet(concurrentFlushPolls.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(flushPollMillis);
+        } finally {
+            concurrentFlushPolls.decrementAndGet();
+        }
+        int poll = flushPolls.computeIfAbsent(type, key -> new AtomicInteger()).incrementAndGet();
+        return flushStatus(poll >= pollsToCompleteFlush.getOrDefault(type, 1), poll * 10);
+    }
+
+    /**
+     * Takes the latency, plus or minus up to half of it.
+     */
+    private void simulateLatency() {
+        if (latencyMicros > 0) {
+            long micros = latencyMicros / 2 + ThreadLocalRandom.current().nextLong(latencyMicros + 1);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    private static long time(RFC3339Date date) {
+        return date.getDate().getTime();
+    }
+
+    private static ClientResponse response(int status) {
+        return new ClientResponse() {
+            @Override
+            public int getStatus() {
+                return status;
+            }
+        };
+    }
+
+    private static FlushStatusBean flushStatus(boolean completed, int numberFlushed) {
+        return new FlushStatusBean() {
+            @Override
+            public boolean isCompleted() {
+                return completed;
+            }
+
+            @Override
+            public int getNumberFlushed() {
+                return numberFlushed;
+            }
+
+            @Override
+            public String getMessage() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,279 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.datatypes.PodMediaType;
+import com.cisco.thunderhead.sample.importexport.gsonutils.CSGsonFactory;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A synthetic organization's data, shaped like a real export: customers, requests which belong to the customers,
+ * and pods which refer to a customer and a request, with a mix of data elements of different types and sizes.
+ * A few pods have no request, or no customer, as in real data.
+ *
+ * Each object is generated from its index, so any object can be generated on its own, in any order, and the same
+ * dataset is generated every time.  The IDs encode the type and index, and the objects of each type were last
+ * updated in index order, so the stand-in for Context Service can answer searches without holding the objects.
+ *
+ * Run the main method with the test classpath to write the customer.json, request.json and pod.json files:
+ * SyntheticDataset &lt;output directory&gt; &lt;number of objects&gt;
+ */
+class SyntheticDataset {
+    // a tenth of the objects are customers, a fifth requests and the rest pods
+    private static final double CUSTOMER_SHARE = 0.1;
+    private static final double REQUEST_SHARE = 0.2;
+    // the objects were last updated over a year, a few milliseconds apart
+    static final long START_TIME = 1483228800000L; // 2017-01-01
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+    private static final int WRITE_CHUNK = 10000;
+
+    private static final String[] FIRST_NAMES = {"John", "Jane", "Ana", "Bj\u00f6rn", "Chen", "Fatima", "Jos\u00e9", "Mei", "Olu", "Priya"};
+    private static final String[] LAST_NAMES = {"Doe", "Smith", "Garc\u00eda", "M\u00fcller", "Wang", "Khan", "Silva", "Tanaka", "Okafor", "Patel"};
+    private static final String[] CITIES = {"San Jose", "London", "S\u00e3o Paulo", "M\u00fcnchen", "Shanghai", "Karachi", "Lisbon", "Tokyo", "Lagos", "Bangalore"};
+    private static final String[] MEDIA_TYPES = {PodMediaType.VOICE, PodMediaType.CHAT, PodMediaType.EMAIL, PodMediaType.SOCIAL,
+            PodMediaType.VIDEO, PodMediaType.MOBILE, PodMediaType.EVENT};
+    private static final String[] WORDS = {"customer", "called", "about", "the", "order", "refund", "delivery", "was", "late",
+            "agent", "escalated", "issue", "resolved", "\"urgent\"", "follow-up", "<b>note</b>", "caf\u00e9", "\u00fcber", "\u2013", "account"};
+
+    private final Gson gson = CSGsonFactory.getCSJson();
+    private final long seed;
+    private final int customers;
+    private final int requests;
+    private final int pods;
+    // the most significant bits of the IDs of each type; the least significant bits hold the index
+    private final long customerIdBits;
+    private final long requestIdBits;
+    private final long podIdBits;
+
+    /**
+     * @param objects total number of objects
+     * @param seed the same seed always gives the same dataset
+     */
+    SyntheticDataset(int objects, long seed) {
+        this.seed = seed;
+        this.customers = Math.max(1, (int) (objects * CUSTOMER_SHARE));
+        this.requests = Math.max(1, (int) (objects * REQUEST_SHARE));
+        this.pods = Math.max(0, objects - customers - requests);
+        Random random = new Random(seed);
+        this.customerIdBits = versionFour(random.nextLong());
+        this.requestIdBits = versionFour(random.nextLong());
+        this.podIdBits = versionFour(random.nextLong());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SyntheticDataset <output directory> <number of objects>");
+            return;
+        }
+        SyntheticDataset dataset = new SyntheticDataset(Integer.parseInt(args[1]), 1);
+        long start = System.currentTimeMillis();
+        int written = dataset.writeFiles(Paths.get(args[0]));
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println("Wrote " + written + " objects in " + elapsed + " ms (" + written * 1000L / elapsed + " objects/sec)");
+    }
+
+    /**
+     * Writes the objects to customer.json, request.json and pod.json, as Export does.
+     * @return the number of objects written
+     */
+    int writeFiles(Path dir) throws IOException {
+        int written = 0;
+        for (String type : new String[]{ContextObject.Types.CUSTOMER, ContextObject.Types.REQUEST, ContextObject.Types.POD}) {
+            try (JsonArrayWriter writer = new JsonArrayWriter(type, dir, false, true)) {
+                List<ContextObject> chunk = new ArrayList<>(WRITE_CHUNK);
+                for (int i = 0; i < count(type); i++) {
+                    chunk.add(entity(type, i));
+                    if (chunk.size() == WRITE_CHUNK) {
+                        writer.writeEntities(chunk);
+                        chunk.clear();
+                    }
+                }
+                writer.writeEntities(chunk);
+                written += writer.getNumberOfEntities();
+            }
+        }
+        return written;
+    }
+
+    int count(String type) {
+        switch (type) {
+            case ContextObject.Types.CUSTOMER:
+                return customers;
+            case ContextObject.Types.REQUEST:
+                return requests;
+            case ContextObject.Types.POD:
+                return pods;
+            default:
+                return 0;
+        }
+    }
+
+    UUID id(String type, int index) {
+        return new UUID(idBits(type), 0x8000000000000000L | index);
+    }
+
+    /**
+     * The type of the object with the given ID, or null if it isn't part of the dataset.
+     */
+    String type(UUID id) {
+        long bits = id.getMostSignificantBits();
+        if (bits == customerIdBits) {
+            return ContextObject.Types.CUSTOMER;
+        }
+        if (bits == requestIdBits) {
+            return ContextObject.Types.REQUEST;
+        }
+        return bits == podIdBits ? ContextObject.Types.POD : null;
+    }
+
+    int index(UUID id) {
+        return (int) (id.getLeastSignificantBits() & Integer.MAX_VALUE);
+    }
+
+    /**
+     * When the object was last updated; later indexes were updated later.
+     */
+    long lastUpdated(String type, int index) {
+        return START_TIME + step(type) * index;
+    }
+
+    /**
+     * The index of the first object of the type updated at or after the given time.
+     */
+    int firstUpdatedAtOrAfter(String type, long time) {
+        long step = step(type);
+        long index = time <= START_TIME ? 0 : (time - START_TIME + step - 1) / step;
+        return (int) Math.min(index, count(type));
+    }
+
+    /**
+     * The time between the updates of consecutive objects of the type.
+     */
+    private long step(String type) {
+        return Math.max(1, YEAR_MILLIS / Math.max(1, count(type)));
+    }
+
+    /**
+     * Generates the object of the given type and index.
+     */
+    ContextObject entity(String type, int index) {
+        Random random = new Random(seed * 31 + idBits(type) + index);
+        try {
+            StringWriter json = new StringWriter();
+            JsonWriter writer = new JsonWriter(json);
+            writer.beginObject();
+            writer.name("type").value(type);
+            writer.name("id").value(id(type, index).toString());
+            writer.name("lastUpdated").value(new RFC3339Date(lastUpdated(type, index)).toString());
+            writer.name("created").value(new RFC3339Date(lastUpdated(type, index) - random.nextInt(86400000)).toString());
+            writer.name("state").value("active");
+            switch (type) {
+                case ContextObject.Types.CUSTOMER:
+                    writer.name("fieldsets").beginArray().value("cisco.base.customer").endArray();
+                    writer.name("dataElements").beginArray();
+                    String firstName = pick(random, FIRST_NAMES);
+                    String lastName = pick(random, LAST_NAMES);
+                    dataElement(writer, "Context_First_Name", firstName);
+                    dataElement(writer, "Context_Last_Name", lastName);
+                    dataElement(writer, "Context_Work_Email", firstName.toLowerCase() + "." + lastName.toLowerCase() + index + "@example.com");
+                    dataElement(writer, "Context_Mobile_Phone", "+1 555 " + (1000000 + random.nextInt(9000000)));
+                    dataElement(writer, "Context_City", pick(random, CITIES));
+                    if (random.nextInt(4) == 0) {
+                        dataElement(writer, "Context_Street_Address_1", (1 + random.nextInt(9999)) + " " + pick(random, LAST_NAMES) + " Street");
+                    }
+                    if (random.nextInt(3) == 0) {
+                        writer.beginObject().name("Custom_Loyalty_Points").value(random.nextInt(100000)).name("type").value("integer").endObject();
+                        writer.beginObject().name("Custom_Lifetime_Value").value(random.nextInt(1000000) / 100.0).name("type").value("double").endObject();
+                        writer.beginObject().name("Custom_VIP").value(random.nextInt(10) == 0).name("type").value("boolean").endObject();
+                    }
+                    writer.endArray();
+                    break;
+                case ContextObject.Types.REQUEST:
+                    writer.name("customerId").value(id(ContextObject.Types.CUSTOMER, random.nextInt(customers)).toString());
+                    writer.name("fieldsets").beginArray().value("cisco.base.request").endArray();
+                    writer.name("dataElements").beginArray();
+                    dataElement(writer, "Context_Title", "Request " + index + ": " + words(random, 3 + random.nextInt(5)));
+                    dataElement(writer, "Context_Description", words(random, 10 + random.nextInt(60)));
+                    writer.endArray();
+                    break;
+                default:
+                    int request = random.nextInt(requests);
+                    // 5% of the pods have no request, and 2% no customer
+                    if (random.nextInt(100) >= 2) {
+                        writer.name("customerId").value(id(ContextObject.Types.CUSTOMER, random.nextInt(customers)).toString());
+                    }
+                    if (random.nextInt(100) >= 5) {
+                        writer.name("parentId").value(id(ContextObject.Types.REQUEST, request).toString());
+                    }
+                    writer.name("mediaType").value(pick(random, MEDIA_TYPES));
+                    writer.name("fieldsets").beginArray().value("cisco.base.pod").endArray();
+                    writer.name("dataElements").beginArray();
+                    // mostly short notes, a few long ones
+                    dataElement(writer, "Context_Notes", words(random, random.nextInt(10) == 0 ? 200 + random.nextInt(800) : 5 + random.nextInt(40)));
+                    dataElement(writer, "Context_POD_Activity_Link", "https://example.com/activity/" + index);
+                    if (random.nextBoolean()) {
+                        dataElement(writer, "Context_POD_Source_Phone", "+1 555 " + (1000000 + random.nextInt(9000000)));
+                    } else {
+                        dataElement(writer, "Context_POD_Source_Email", "visitor" + random.nextInt(1000000) + "@example.com");
+                    }
+                    if (random.nextInt(4) == 0) {
+                        writer.beginObject().name("Custom_Duration_Seconds").value(random.nextInt(7200)).name("type").value("integer").endObject();
+                    }
+                    writer.endArray();
+                    break;
+            }
+            writer.endObject();
+            writer.close();
+            return gson.fromJson(json.toString(), ContextObject.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a StringWriter doesn't throw
+        }
+    }
+
+    private long idBits(String type) {
+        switch (type) {
+            case ContextObject.Types.CUSTOMER:
+                return customerIdBits;
+            case ContextObject.Types.REQUEST:
+                return requestIdBits;
+            default:
+                return podIdBits;
+        }
+    }
+
+    private static void dataElement(JsonWriter writer, String key, String value) throws IOException {
+        writer.beginObject().name(key).value(value).name("type").value("string").endObject();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(pick(random, WORDS));
+        }
+        return words.toString();
+    }
+
+    /**
+     * Sets the version of a random UUID's most significant bits to 4.
+     */
+    private static long versionFour(long bits) {
+        return (bits & ~0xF000L) | 0x4000L;
+    }
+}
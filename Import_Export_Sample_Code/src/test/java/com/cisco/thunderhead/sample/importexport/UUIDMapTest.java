@@ -0,0 +1,104 @@
+package com.cisco.thunderhead.sample.importexport;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the UUID to UUID map used to hold the ID mapping during import, and the UUID set which shares its table
+ */
+public class UUIDMapTest {
+    private static final int ENTRIES = 700000;
+
+    @Test
+    public void testPutAndGet() {
+        UUIDMap map = new UUIDMap();
+        Map<UUID, UUID> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            UUID key = new UUID(random.nextLong(), random.nextLong());
+            UUID value = UUID.randomUUID();
+            map.put(key, value);
+            expected.put(key, value);
+        }
+
+        // replacing a value doesn't add an entry
+        UUID key = expected.keySet().iterator().next();
+        UUID value = UUID.randomUUID();
+        map.put(key, value);
+        expected.put(key, value);
+
+        // the nil UUID marks an empty slot, so make sure it can still be used as a key
+        UUID nil = new UUID(0, 0);
+        assertFalse(map.containsKey(nil));
+        map.put(nil, value);
+        expected.put(nil, value);
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<UUID, UUID> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertNull(map.get(UUID.randomUUID()));
+        assertNull(map.get(null));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(key));
+        assertFalse(map.containsKey(nil));
+    }
+
+    @Test
+    public void testSet() {
+        UUIDSet set = new UUIDSet();
+        Set<UUID> expected = new HashSet<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            UUID id = new UUID(random.nextLong(), random.nextLong());
+            assertTrue(set.add(id));
+            expected.add(id);
+        }
+        for (UUID id : expected) {
+            assertFalse("already added", set.add(id));
+            assertTrue(set.contains(id));
+        }
+
+        UUID nil = new UUID(0, 0);
+        assertFalse(set.contains(nil));
+        assertTrue(set.add(nil));
+        assertFalse(set.add(nil));
+        assertTrue(set.contains(nil));
+
+        assertEquals(expected.size() + 1, set.size());
+        assertFalse(set.contains(UUID.randomUUID()));
+        assertFalse(set.contains(null));
+    }
+
+    /**
+     * The arrays holding the entries take 32 bytes a slot, at between 1.33 and 2.67 slots per entry.  A HashMap
+     * entry takes at least 96 bytes, for two UUID objects and a node, even with compressed pointers.
+     */
+    @Test
+    public void testMemoryFootprint() {
+        UUIDMap uuidMap = new UUIDMap();
+        Random random = new Random(1);
+        for (int i = 0; i < ENTRIES; i++) {
+            uuidMap.put(new UUID(random.nextLong(), random.nextLong()), new UUID(random.nextLong(), random.nextLong()));
+        }
+        assertEquals(ENTRIES, uuidMap.size());
+
+        double bytesPerEntry = (double) uuidMap.getTableBytes() / ENTRIES;
+        assertTrue(bytesPerEntry + " bytes per entry", bytesPerEntry >= 32 / 0.75);
+        assertTrue(bytesPerEntry + " bytes per entry", bytesPerEntry <= 2 * 32 / 0.75);
+        assertTrue(bytesPerEntry + " bytes per entry", bytesPerEntry < 96);
+    }
+}
@@ -0,0 +1,102 @@
+package com.cisco.thunderhead.sample.importexport.gsonutils;
+
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.tag.Tag;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original tree based adapters with the streaming adapters used by CSGsonFactory, writing and
+ * reading the data elements of a pod.
+ *
+ * Run the main method with the test classpath.  The GC profiler reports the allocation rate, and
+ * gc.alloc.rate.norm is the number of bytes allocated per pod.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamingAdaptersBenchmark {
+    private static final Type DATA_ELEMENTS = new TypeToken<List<DataElement>>(){}.getType();
+
+    @Param({"10", "50"})
+    int dataElementsPerPod;
+
+    @Param({"original", "streaming"})
+    String adapters;
+
+    private Gson gson;
+    private List<DataElement> dataElements;
+    private String json;
+    private UUID id = UUID.randomUUID();
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StreamingAdaptersBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void createDataElements() {
+        gson = adapters.equals("original") ? new GsonBuilder()
+                .registerTypeAdapter(Date.class, new DateAdapter())
+                .registerTypeAdapter(RFC3339Date.class, new RFC3339DateAdapter())
+                .registerTypeAdapter(Tag.class, new TagAdapter())
+                .registerTypeAdapter(DataElement.class, new DataElementAdapter())
+                .registerTypeAdapter(UUID.class, new UUIDAdapter())
+                .create() : CSGsonFactory.getCSJson();
+
+        dataElements = new ArrayList<>();
+        for (int i = 0; i < dataElementsPerPod; i++) {
+            if (i % 5 == 4) {
+                dataElements.add(new DataElement("Context_Count_" + i, i * 1000, ElementDataType.INTEGER));
+            } else {
+                dataElements.add(new DataElement("Context_Field_" + i, "Value of field " + i + " for this pod", ElementDataType.STRING));
+            }
+        }
+        json = gson.toJson(dataElements, DATA_ELEMENTS);
+    }
+
+    @Benchmark
+    public String writeDataElements() {
+        return gson.toJson(dataElements, DATA_ELEMENTS);
+    }
+
+    @Benchmark
+    public List<DataElement> readDataElements() {
+        return gson.fromJson(json, DATA_ELEMENTS);
+    }
+
+    @Benchmark
+    public UUID roundTripUUID() {
+        return gson.fromJson(gson.toJson(id), UUID.class);
+    }
+}
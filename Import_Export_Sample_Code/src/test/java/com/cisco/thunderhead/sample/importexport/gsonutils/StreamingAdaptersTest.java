@@ -0,0 +1,162 @@
+package com.cisco.thunderhead.sample.importexport.gsonutils;
+
+import com.cisco.thunderhead.DataElement;
+import com.cisco.thunderhead.datatypes.ElementDataType;
+import com.cisco.thunderhead.errors.ApiException;
+import com.cisco.thunderhead.tag.Tag;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the streaming adapters used by CSGsonFactory read and write the same JSON as the original adapters
+ */
+public class StreamingAdaptersTest {
+    private static final Type DATA_ELEMENTS = new TypeToken<List<DataElement>>(){}.getType();
+    private static final Type UUIDS = new TypeToken<List<UUID>>(){}.getType();
+    private static final Type DATES = new TypeToken<List<RFC3339Date>>(){}.getType();
+
+    /**
+     * Gson configured the way CSGsonFactory was before the streaming adapters.
+     */
+    private static Gson originalGson(boolean printPretty) {
+        GsonBuilder gsonBuilder = new GsonBuilder();
+        if (printPretty) gsonBuilder.setPrettyPrinting();
+        return gsonBuilder
+                .registerTypeAdapter(Date.class, new DateAdapter())
+                .registerTypeAdapter(RFC3339Date.class, new RFC3339DateAdapter())
+                .registerTypeAdapter(Tag.class, new TagAdapter())
+                .registerTypeAdapter(DataElement.class, new DataElementAdapter())
+                .registerTypeAdapter(UUID.class, new UUIDAdapter())
+                .create();
+    }
+
+    @Test
+    public void testSameOutput() {
+        List<DataElement> dataElements = createDataElements();
+        List<UUID> uuids = Arrays.asList(UUID.randomUUID(), null, new UUID(0, 0));
+        List<RFC3339Date> dates = Arrays.asList(new RFC3339Date(1500000000123L), null);
+
+        for (boolean printPretty : new boolean[]{false, true}) {
+            Gson original = originalGson(printPretty);
+            Gson streaming = CSGsonFactory.getCSJson(printPretty);
+            assertEquals(original.toJson(dataElements, DATA_ELEMENTS), streaming.toJson(dataElements, DATA_ELEMENTS));
+            assertEquals(original.toJson(uuids, UUIDS), streaming.toJson(uuids, UUIDS));
+            assertEquals(original.toJson(dates, DATES), streaming.toJson(dates, DATES));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Gson original = originalGson(false);
+        Gson streaming = CSGsonFactory.getCSJson();
+
+        // a data element without a type can be written but not read
+        List<DataElement> dataElements = createDataElements();
+        dataElements.removeIf(dataElement -> dataElement != null && dataElement.getType() == null);
+        String json = original.toJson(dataElements, DATA_ELEMENTS);
+        List<DataElement> expected = original.fromJson(json, DATA_ELEMENTS);
+        List<DataElement> actual = streaming.fromJson(json, DATA_ELEMENTS);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameDataElement(expected.get(i), actual.get(i));
+        }
+        assertEquals(json, streaming.toJson(actual, DATA_ELEMENTS));
+
+        UUID uuid = UUID.randomUUID();
+        assertEquals(uuid, streaming.fromJson(streaming.toJson(uuid), UUID.class));
+        RFC3339Date date = new RFC3339Date(1500000000123L);
+        assertEquals(date.toString(), streaming.fromJson(streaming.toJson(date), RFC3339Date.class).toString());
+        assertNull(streaming.fromJson("null", UUID.class));
+    }
+
+    /**
+     * JSON which wasn't written by the adapters: the type after the value, numbers given as strings and vice versa,
+     * classifications, and repeated names.
+     */
+    @Test
+    public void testReadVariations() {
+        String[] inputs = {
+                "{\"Context_Notes\":\"notes\",\"type\":\"string\"}",
+                "{\"type\":\"string\",\"Context_Notes\":123.50}",
+                "{\"count\":\"42\",\"type\":\"integer\"}",
+                "{\"type\":\"long\",\"count\":9000000000}",
+                "{\"type\":\"double\",\"ratio\":\"1.5\",\"classification\":{\"level\":1}}",
+                "{\"flag\":true,\"type\":\"boolean\",\"classification\":\"PII\"}",
+                "{\"a\":\"first\",\"b\":\"second\",\"a\":\"third\",\"type\":\"string\"}",
+                "{\"type\":\"unknown\",\"other\":[1,2]}",
+                "null"
+        };
+        Gson original = originalGson(false);
+        Gson streaming = CSGsonFactory.getCSJson();
+        for (String input : inputs) {
+            assertSameDataElement(original.fromJson(input, DataElement.class), streaming.fromJson(input, DataElement.class));
+        }
+    }
+
+    @Test
+    public void testInvalidDataElements() {
+        String[] inputs = {
+                "{\"Context_Notes\":\"notes\"}",
+                "{\"count\":\"many\",\"type\":\"integer\"}",
+                "{\"type\":{\"name\":\"string\"},\"Context_Notes\":\"notes\"}",
+                "{\"type\":\"string\",\"Context_Notes\":{\"nested\":true}}"
+        };
+        for (String input : inputs) {
+            for (Gson gson : new Gson[]{originalGson(false), CSGsonFactory.getCSJson()}) {
+                try {
+                    gson.fromJson(input, DataElement.class);
+                    fail("expected an ApiException for " + input);
+                } catch (ApiException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    /**
+     * Data elements with all of the value types, and enough different keys that some come before the type in a
+     * HashMap and some after it.
+     */
+    private static List<DataElement> createDataElements() {
+        List<DataElement> dataElements = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String key = "Context_Field_" + Integer.toString(random.nextInt(100000), 36);
+            dataElements.add(new DataElement(key, "value " + i + " with \"quotes\", <markup> & unicode \u00e9\u4e2d", ElementDataType.STRING));
+            dataElements.add(new DataElement(key, random.nextInt(), ElementDataType.INTEGER));
+            dataElements.add(new DataElement(key, random.nextLong(), ElementDataType.LONG));
+            dataElements.add(new DataElement(key, random.nextDouble() * 1e6, ElementDataType.DOUBLE));
+            dataElements.add(new DataElement(key, random.nextBoolean(), ElementDataType.BOOLEAN));
+        }
+        dataElements.add(new DataElement("Context_Notes", null, ElementDataType.STRING));
+        dataElements.add(new DataElement("Context_Notes", "no type", null));
+        dataElements.add(new DataElement("type", "the key is type", ElementDataType.STRING));
+        dataElements.add(null);
+        return dataElements;
+    }
+
+    private static void assertSameDataElement(DataElement expected, DataElement actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getDataKey(), actual.getDataKey());
+        assertEquals(expected.getDataValue(), actual.getDataValue());
+        assertEquals(expected.getType(), actual.getType());
+    }
+}
@@ -0,0 +1,161 @@
+package com.cisco.thunderhead.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the Context Service calls of suspended requests, so that Tomcat's threads are not held while waiting for
+ * Context Service.
+ *
+ * At most a fixed number of calls run at once, and a fixed number more wait their turn; once that many are waiting,
+ * further requests are turned away straight away with 503 (Service Unavailable) rather than piling up.  A request
+ * that hasn't completed within the timeout gets 503 too, and if it is still waiting its call is never made.
+ *
+ * Where the JVM has virtual threads (Java 21 and later), each call runs on its own virtual thread; otherwise on a
+ * fixed pool of threads.
+ *
+ * The limits can be set with the rest.concurrency, rest.queue.size and rest.timeout.seconds system properties.
+ */
+public class AsyncExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncExecutor.class);
+    private static final String CONCURRENCY_PROP = "rest.concurrency";
+    private static final String QUEUE_SIZE_PROP = "rest.queue.size";
+    private static final String TIMEOUT_PROP = "rest.timeout.seconds";
+    private static final int DEFAULT_CONCURRENCY = 64;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 30;
+    // seconds a client that was turned away should wait before trying again
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final ExecutorService executor;
+    private final long timeoutSeconds;
+    // with virtual threads, limits the calls waiting or running, and the calls running
+    private final Semaphore admitted;
+    private final Semaphore running;
+
+    /**
+     * @param concurrency most calls to run at once
+     * @param queueSize most calls to wait to run
+     * @param timeoutSeconds how long a request can take, including waiting to run
+     * @param virtualThreads whether to run each call on a virtual thread, if the JVM has them
+     */
+    AsyncExecutor(int concurrency, int queueSize, long timeoutSeconds, boolean virtualThreads) {
+        this.timeoutSeconds = timeoutSeconds;
+        ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            executor = virtualThreadExecutor;
+            admitted = new Semaphore(concurrency + queueSize);
+            running = new Semaphore(concurrency);
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "rest-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            admitted = null;
+            running = null;
+        }
+        LOGGER.info("Running Context Service calls on " + (admitted != null ? "virtual threads" : concurrency + " threads")
+                + ", at most " + concurrency + " at once and " + queueSize + " waiting, with a timeout of " + timeoutSeconds + " seconds");
+    }
+
+    /**
+     * Creates the executor with the limits from the system properties, or the defaults.
+     */
+    public static AsyncExecutor fromSystemProperties() {
+        return new AsyncExecutor(Integer.getInteger(CONCURRENCY_PROP, DEFAULT_CONCURRENCY), Integer.getInteger(QUEUE_SIZE_PROP, DEFAULT_QUEUE_SIZE),
+                Long.getLong(TIMEOUT_PROP, DEFAULT_TIMEOUT_SECONDS), true);
+    }
+
+    /**
+     * Runs the call, and resumes the request with the response it returns, or the exception it throws (which goes
+     * to ContextExceptionMapper).
+     */
+    public void submit(AsyncResponse asyncResponse, Callable<Response> call) {
+        asyncResponse.setTimeoutHandler(timedOut -> timedOut.resume(error(
+                "no response from Context Service within " + timeoutSeconds + " seconds")));
+        asyncResponse.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+
+        if (admitted != null && !admitted.tryAcquire()) {
+            asyncResponse.resume(error("too many requests waiting, try again later"));
+            return;
+        }
+        try {
+            executor.execute(() -> run(asyncResponse, call));
+        } catch (RejectedExecutionException e) {
+            if (admitted != null) {
+                admitted.release();
+            }
+            asyncResponse.resume(error("too many requests waiting, try again later"));
+        }
+    }
+
+    private void run(AsyncResponse asyncResponse, Callable<Response> call) {
+        Object result = null;
+        try {
+            if (running != null) {
+                running.acquire();
+            }
+            try {
+                // don't make the call if the request timed out, or the client went away, while waiting
+                if (!asyncResponse.isDone()) {
+                    result = call.call();
+                }
+            } finally {
+                if (running != null) {
+                    running.release();
+                }
+            }
+        } catch (Throwable e) {
+            result = e;
+        } finally {
+            if (admitted != null) {
+                admitted.release();
+            }
+        }
+        // resumed once the place is given up, so that the client's next request finds room
+        if (result instanceof Throwable) {
+            asyncResponse.resume((Throwable) result);
+        } else if (result != null) {
+            asyncResponse.resume(result);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Response error(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .type(MediaType.APPLICATION_JSON)
+                .entity(Utils.getError(message))
+                .build();
+    }
+
+    /**
+     * Returns a virtual thread per task executor, or null if the JVM doesn't have virtual threads.  Found by
+     * reflection, since this is built for Java 8.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ExposeMember;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One create, update or delete in a bulk request.
+ */
+public class BulkOperation {
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    @ExposeMember private String op;
+    @ExposeMember private String type;
+    @ExposeMember private String id;
+    @ExposeMember private RESTContextObject object;
+
+    public BulkOperation() {
+    }
+
+    public BulkOperation(String op, String type, String id, RESTContextObject object) {
+        this.op = op;
+        this.type = type;
+        this.id = id;
+        this.object = object;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public RESTContextObject getObject() {
+        return object;
+    }
+
+    /**
+     * Reads the operations of a bulk request, either a JSON array or one JSON object per line (NDJSON).
+     * @param maxOperations most operations allowed in one request
+     */
+    public static List<BulkOperation> readAll(InputStream inputStream, Gson gson, int maxOperations) throws ContextException {
+        List<BulkOperation> operations = new ArrayList<>();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            // lenient, so that NDJSON can be read as a series of top level objects
+            reader.setLenient(true);
+            boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+            if (array) {
+                reader.beginArray();
+            }
+            while (array ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+                if (operations.size() == maxOperations) {
+                    throw new ContextException("too many operations, at most " + maxOperations + " are allowed in one request");
+                }
+                operations.add(gson.<BulkOperation>fromJson(reader, BulkOperation.class));
+            }
+            if (array) {
+                reader.endArray();
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new ContextException("invalid bulk request, operation " + operations.size() + " could not be read", e);
+        }
+        return operations;
+    }
+}
@@ -5,7 +5,13 @@ import com.cisco.thunderhead.ContextObject;
 import com.cisco.thunderhead.client.ClientResponse;
 import com.cisco.thunderhead.client.ContextServiceClient;
 import com.cisco.thunderhead.client.SearchParameters;
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -15,19 +21,62 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Simple REST interface for Context Service.
+ *
+ * Requests that call Context Service are suspended, and the calls are made by AsyncExecutor, so that Tomcat's threads
+ * are free for other requests in the meantime.
  */
 @Path("/")
 public class ContextService {
-    private ContextServiceClient contextServiceClient = RestApiContextListener.getContextServiceClient();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContextService.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String BULK_MAX_OPERATIONS_PROP = "bulk.max.operations";
+    private static final int DEFAULT_BULK_MAX_OPERATIONS = 10000;
+
+    private final ContextServiceClient contextServiceClient;
+    // searches, and reads before a change, shared by concurrent identical requests
+    private final SingleFlightClient singleFlightClient;
+    // shared by every request, since Jersey creates a ContextService for each request
+    private final EntityCache entityCache;
+    private final AsyncExecutor asyncExecutor;
+
+    public ContextService() {
+        this(RestApiContextListener.getContextServiceClient(), RestApiContextListener.getSingleFlightClient(),
+                RestApiContextListener.getEntityCache(), RestApiContextListener.getAsyncExecutor());
+    }
+
+    ContextService(ContextServiceClient contextServiceClient, SingleFlightClient singleFlightClient, EntityCache entityCache,
+                   AsyncExecutor asyncExecutor) {
+        this.contextServiceClient = contextServiceClient;
+        this.singleFlightClient = singleFlightClient;
+        this.entityCache = entityCache;
+        this.asyncExecutor = asyncExecutor;
+    }
 
     /**
      * Creates a new object in Context Service.
@@ -35,13 +84,21 @@ public class ContextService {
     @POST
     @Path("/")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response create(RESTContextObject restContextObject) throws ContextException {
+    public void create(RESTContextObject restContextObject, @Suspended AsyncResponse asyncResponse) {
+        asyncExecutor.submit(asyncResponse, () -> createObject(restContextObject));
+    }
+
+    private Response createObject(RESTContextObject restContextObject) throws ContextException {
         final String type = restContextObject.getType();
 
         try {
             ContextObject contextBean = new ContextObject(restContextObject.getType());
             RESTContextObject.copyToContextBean(contextBean, restContextObject);
             contextServiceClient.create(contextBean);
+            // only cache it if the SDK filled in lastUpdated, which is needed to update it
+            if (contextBean.getLastUpdated() != null) {
+                entityCache.put(contextBean);
+            }
 
             String uri = type + "/" + contextBean.getId().toString();
             return Response.created(new URI(uri)).build();
@@ -56,8 +113,12 @@ public class ContextService {
     @PUT
     @Path("/{type}/{id}")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response update(@PathParam("type") String type, @PathParam("id") String id, RESTContextObject restContextObject) throws ContextException {
+    public void update(@PathParam("type") String type, @PathParam("id") String id, RESTContextObject restContextObject,
+                       @Suspended AsyncResponse asyncResponse) {
+        asyncExecutor.submit(asyncResponse, () -> updateObject(type, id, restContextObject));
+    }
 
+    private Response updateObject(String type, String id, RESTContextObject restContextObject) throws ContextException {
         validateType(type, restContextObject);
 
         if (restContextObject.getId()!=null
@@ -65,9 +126,11 @@ public class ContextService {
                 && !StringUtils.equals(restContextObject.getId().toString(), id)) {
             throw new ContextException("context object ID '" + restContextObject.getId() + "' does not match query parameter id '" + id + "'");
         }
-        ContextObject contextBean = contextServiceClient.getContextObject(type, id);
-        RESTContextObject.copyToContextBean(contextBean, restContextObject);
-        ClientResponse update = contextServiceClient.update(contextBean);
+        // every field is replaced from the request, so a cached copy will usually do
+        changeObject(type, id, contextBean -> {
+            RESTContextObject.copyToContextBean(contextBean, restContextObject);
+            ClientResponse update = contextServiceClient.update(contextBean);
+        });
         return Response.accepted().build();
     }
 
@@ -77,9 +140,18 @@ public class ContextService {
     @GET
     @Path("/{type}/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response get(@PathParam("type") String type, @PathParam("id") String id) {
-        ContextObject contextBean = contextServiceClient.getContextObject(type, id);
-        return Response.ok().entity(new RESTContextObject(contextBean)).build();
+    public void get(@PathParam("type") String type, @PathParam("id") String id, @Suspended AsyncResponse asyncResponse) {
+        // a cached object doesn't need to wait for a thread
+        ContextObject cached = entityCache.getIfCached(type, id);
+        if (cached != null) {
+            asyncResponse.resume(Response.ok().entity(new RESTContextObject(cached)).build());
+            return;
+        }
+        asyncExecutor.submit(asyncResponse, () -> {
+            // concurrent requests for the same object wait for the cache's fetch, so this needn't be shared too
+            ContextObject contextBean = entityCache.get(type, id, contextServiceClient::getContextObject);
+            return Response.ok().entity(new RESTContextObject(contextBean)).build();
+        });
     }
 
     /**
@@ -87,22 +159,172 @@ public class ContextService {
      */
     @DELETE
     @Path("/{type}/{id}")
-    public Response delete(@PathParam("type") String type, @PathParam("id") String id) {
-        // first have to do a GET
-        ContextObject contextBean = contextServiceClient.getContextObject(type, id);
+    public void delete(@PathParam("type") String type, @PathParam("id") String id, @Suspended AsyncResponse asyncResponse) {
+        asyncExecutor.submit(asyncResponse, () -> deleteObject(type, id));
+    }
 
-        // now we can do the delete.
-        contextServiceClient.delete(contextBean);
+    private Response deleteObject(String type, String id) {
+        // first have to do a GET, which the cache can answer
+        changeObject(type, id, contextBean -> contextServiceClient.delete(contextBean));
         return Response.accepted().build();
     }
 
     /**
-     * Search for objects
+     * Updates or deletes an object, starting from a copy of the cached object if there is one, and otherwise from
+     * the object fetched from Context Service.  The cached object may be out of date, if another client changed the
+     * object, so if Context Service turns the change down as a conflict, it is made once more to the current object.
+     * Any other error is thrown as it is.
+     */
+    void changeObject(String type, String id, Consumer<ContextObject> change) {
+        ContextObject cached = entityCache.take(type, id);
+        try {
+            if (cached == null) {
+                // the fetched object may be shared with other requests, so change a copy of it
+                change.accept(EntityCache.copy(singleFlightClient.getContextObject(type, id)));
+                return;
+            }
+            try {
+                change.accept(cached);
+            } catch (ApiException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                // a fetch which was already running could return the same old version, so this one isn't shared
+                LOGGER.debug("change to cached " + type + " " + id + " failed, retrying with the current version: " + e);
+                change.accept(contextServiceClient.getContextObject(type, id));
+            }
+        } finally {
+            // a GET could have cached the old version while changing it
+            entityCache.invalidate(type, id);
+        }
+    }
+
+    /**
+     * Whether Context Service turned a change down because the object has been changed since the version it was
+     * made to, which is the only error that making it to the current version can fix.
+     */
+    static boolean isConflict(ApiException e) {
+        return e.getError() != null && ApiErrorType.CONFLICT.equals(e.getError().getErrorType());
+    }
+
+    /**
+     * Runs a batch of creates, updates and deletes, given as a JSON array or as NDJSON, several at a time.
+     * The result of each operation is streamed back as a line of NDJSON as soon as it completes, so the results
+     * are not in the same order as the operations; each result has the index of its operation.
+     */
+    @POST
+    @Path("/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, NDJSON})
+    @Produces(NDJSON)
+    public Response bulk(InputStream inputStream) throws ContextException {
+        Gson gson = GsonJerseyProvider.getGson();
+        // read the whole request first, so that a malformed request fails before any operation runs
+        List<BulkOperation> operations = BulkOperation.readAll(inputStream, gson,
+                Integer.getInteger(BULK_MAX_OPERATIONS_PROP, DEFAULT_BULK_MAX_OPERATIONS));
+
+        StreamingOutput output = outputStream -> {
+            CompletionService<Map<String, Object>> completionService = new ExecutorCompletionService<>(RestApiContextListener.getBulkExecutor());
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < operations.size(); i++) {
+                int index = i;
+                futures.add(completionService.submit(() -> runBulkOperation(index, operations.get(index))));
+            }
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try {
+                for (int i = 0; i < operations.size(); i++) {
+                    Future<Map<String, Object>> result = completionService.poll();
+                    if (result == null) {
+                        // send what is done so far while waiting for the next one
+                        writer.flush();
+                        result = completionService.take();
+                    }
+                    writer.write(gson.toJson(result.get()));
+                    writer.write('\n');
+                }
+                writer.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while running bulk operations", e);
+            } catch (ExecutionException e) {
+                throw new IOException("bulk operation failed", e.getCause()); // runBulkOperation catches its exceptions
+            } finally {
+                // if the client has gone away, don't start the rest
+                for (Future<Map<String, Object>> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    /**
+     * Runs one operation of a bulk request.
+     * @return the result to send back: the index, op, type and id, and the HTTP status it would have had on its own,
+     * with the error if it failed
+     */
+    private Map<String, Object> runBulkOperation(int index, BulkOperation operation) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        try {
+            if (operation == null || operation.getOp() == null) {
+                throw new ContextException("op must be one of " + BulkOperation.CREATE + ", " + BulkOperation.UPDATE + " or " + BulkOperation.DELETE);
+            }
+            result.put("op", operation.getOp());
+            String type = operation.getType() == null && operation.getObject() != null ? operation.getObject().getType() : operation.getType();
+            result.put("type", type);
+            result.put("id", operation.getId());
+
+            Response response;
+            switch (operation.getOp()) {
+                case BulkOperation.CREATE:
+                    if (operation.getObject() == null) {
+                        throw new ContextException("create needs an object");
+                    }
+                    response = createObject(operation.getObject());
+                    String location = response.getLocation().toString();
+                    result.put("id", location.substring(location.lastIndexOf('/') + 1));
+                    break;
+                case BulkOperation.UPDATE:
+                    if (type == null || operation.getId() == null || operation.getObject() == null) {
+                        throw new ContextException("update needs a type, id and object");
+                    }
+                    response = updateObject(type, operation.getId(), operation.getObject());
+                    break;
+                case BulkOperation.DELETE:
+                    if (type == null || operation.getId() == null) {
+                        throw new ContextException("delete needs a type and id");
+                    }
+                    response = deleteObject(type, operation.getId());
+                    break;
+                default:
+                    throw new ContextException("unknown op '" + operation.getOp() + "'");
+            }
+            result.put("status", response.getStatus());
+        } catch (Exception e) {
+            // the same statuses as ContextExceptionMapper
+            if (e instanceof ContextException) {
+                result.put("status", Response.Status.BAD_REQUEST.getStatusCode());
+            } else {
+                LOGGER.error("bulk operation " + index + " failed", e);
+                result.put("status", Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            }
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Search for objects.  Given a limit, returns at most that many, and if there may be more, the cursor to get
+     * the next page with in the X-Next-Cursor header.
      */
     @POST
     @Path("/search/{type}")
-    public Response search(@PathParam("type") String type, SearchParams searchParams) {
+    public void search(@PathParam("type") String type, SearchParams searchParams, @Suspended AsyncResponse asyncResponse) {
+        asyncExecutor.submit(asyncResponse, () -> searchObjects(type, searchParams));
+    }
 
+    private Response searchObjects(String type, SearchParams searchParams) {
         if (searchParams.getOperation()==null) {
             throw new ContextException("invalid search parameter operation " + searchParams.operation);
         }
@@ -124,12 +346,57 @@ public class ContextService {
             searchParameters.put("type", Arrays.asList(type));
         }
 
-        List<? extends ContextBean> contextBeans = contextServiceClient.search(ContextObject.class, searchParameters, searchParams.getOperation());
-        List<RESTContextObject> restContextObjects = new ArrayList<>();
+        Gson gson = GsonJerseyProvider.getGson();
+        Integer limit = searchParams.limit;
+        SearchCursor cursor = SearchCursor.decode(searchParams.cursor, gson);
+        if (limit != null && limit < 1) {
+            throw new ContextException("invalid limit " + limit + ", must be at least 1");
+        }
+        if (cursor != null && limit == null) {
+            throw new ContextException("a cursor needs a limit");
+        }
+        int maxEntries = 0;
+        if (limit != null) {
+            // the objects of the last page updated at the same time as its end are found again, and left out
+            maxEntries = limit + (cursor != null ? cursor.getSeen().size() : 0);
+            searchParameters.put("maxEntries", Arrays.asList(Integer.toString(maxEntries)));
+            if (cursor != null) {
+                List<String> endDates = searchParameters.get("endDate");
+                searchParameters.put("endDate", Arrays.asList(cursor.endDate(endDates != null && !endDates.isEmpty() ? endDates.get(0) : null)));
+            }
+        }
+
+        List<ContextObject> page = new ArrayList<>();
+        List<? extends ContextBean> contextBeans = singleFlightClient.search(searchParameters, searchParams.getOperation());
+        if (limit != null) {
+            SearchCursor.checkNewestFirst(contextBeans);
+        }
         for (ContextBean contextBean : contextBeans) {
-            restContextObjects.add(new RESTContextObject((ContextObject) contextBean));
+            if (limit != null && page.size() == limit) {
+                break;
+            }
+            if (cursor == null || !cursor.getSeen().contains(contextBean.getId().toString())) {
+                page.add((ContextObject) contextBean);
+            }
         }
-        return Response.ok().entity(restContextObjects).build();
+        // a full page means there may be more
+        SearchCursor nextCursor = limit != null && contextBeans.size() >= maxEntries ? SearchCursor.after(page, cursor) : null;
+
+        // each object is converted as it is written, rather than all of them first
+        StreamingOutput output = outputStream -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+            writer.beginArray();
+            for (ContextObject contextObject : page) {
+                gson.toJson(new RESTContextObject(contextObject), RESTContextObject.class, writer);
+            }
+            writer.endArray();
+            writer.flush();
+        };
+        Response.ResponseBuilder response = Response.ok(output, MediaType.APPLICATION_JSON_TYPE);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor.encode(gson));
+        }
+        return response.build();
     }
 
     /**
@@ -138,9 +405,21 @@ public class ContextService {
     @GET
     @Path("/status")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getStatus() {
-        String status = contextServiceClient.getStatus();
-        return Response.ok().entity(status).build();
+    public void getStatus(@Suspended AsyncResponse asyncResponse) {
+        asyncExecutor.submit(asyncResponse, () -> {
+            String status = contextServiceClient.getStatus();
+            return Response.ok().entity(status).build();
+        });
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the object cache.
+     */
+    @GET
+    @Path("/cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCacheStats() {
+        return Response.ok().entity(entityCache.getStats()).build();
     }
 
     private static void validateType(String type, RESTContextObject restContextObject) throws ContextException {
@@ -0,0 +1,150 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded in-process cache of Context Service objects, keyed by type and ID, so that the objects agents look at
+ * over and over are not fetched from Context Service every time.
+ *
+ * Objects are evicted when the cache is full (least frequently used first) and a fixed time after they were
+ * fetched, so an object changed by another client is at most that old.  Objects updated or deleted through this
+ * webapp are removed straight away.
+ *
+ * The size and time to live can be set with the entity.cache.size and entity.cache.ttl.seconds system properties.
+ */
+public class EntityCache {
+    private static final String SIZE_PROP = "entity.cache.size";
+    private static final String TTL_PROP = "entity.cache.ttl.seconds";
+    private static final long DEFAULT_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 30;
+
+    private final Cache<String, ContextObject> cache;
+    // kept so that getIfCached() and take() can count their hits and misses too
+    private final StatsCounter statsCounter = new ConcurrentStatsCounter();
+
+    /**
+     * @param maximumSize most objects to hold
+     * @param ttlSeconds how long after being fetched an object is evicted
+     * @param ticker source of time, Ticker.systemTicker() except when testing
+     */
+    EntityCache(long maximumSize, long ttlSeconds, Ticker ticker) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats(() -> statsCounter)
+                .build();
+    }
+
+    /**
+     * Creates the cache with the size and time to live from the system properties, or the defaults.
+     */
+    public static EntityCache fromSystemProperties() {
+        return new EntityCache(Long.getLong(SIZE_PROP, DEFAULT_SIZE), Long.getLong(TTL_PROP, DEFAULT_TTL_SECONDS), Ticker.systemTicker());
+    }
+
+    /**
+     * Returns the cached object, or fetches and caches it if it isn't cached.  Concurrent requests for the same
+     * object wait for a single fetch.
+     * @param loader fetches the object from Context Service, given its type and ID
+     */
+    public ContextObject get(String type, String id, BiFunction<String, String, ContextObject> loader) {
+        return cache.get(key(type, id), key -> loader.apply(type, id));
+    }
+
+    /**
+     * Returns the cached object, or null if it isn't cached.
+     */
+    public ContextObject getIfCached(String type, String id) {
+        // asMap().get() doesn't count a miss, since get() is called next and counts it
+        ContextObject contextObject = cache.asMap().get(key(type, id));
+        if (contextObject != null) {
+            statsCounter.recordHits(1);
+        }
+        return contextObject;
+    }
+
+    /**
+     * Removes the object from the cache and returns a copy of it, or null if it isn't cached.  Used before changing
+     * or deleting an object: the caller can modify the copy, while a concurrent GET may still be sending the cached
+     * object back.
+     */
+    public ContextObject take(String type, String id) {
+        ContextObject contextObject = cache.asMap().remove(key(type, id));
+        if (contextObject == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return copy(contextObject);
+    }
+
+    /**
+     * Caches an object that was just created.
+     */
+    public void put(ContextObject contextObject) {
+        cache.put(key(contextObject.getType(), contextObject.getId().toString()), contextObject);
+    }
+
+    /**
+     * Removes the object from the cache, after it has been changed or deleted.
+     */
+    public void invalidate(String type, String id) {
+        cache.invalidate(key(type, id));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts since the cache was created.
+     */
+    public Map<String, Object> getStats() {
+        cache.cleanUp();
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("averageLoadMillis", stats.averageLoadPenalty() / 1000000.0);
+        return result;
+    }
+
+    /**
+     * Copies the fields of an object which can be set through the SDK.
+     */
+    static ContextObject copy(ContextObject contextObject) {
+        ContextObject copy = new ContextObject(contextObject.getType());
+        copy.setId(contextObject.getId());
+        copy.setCustomerId(contextObject.getCustomerId());
+        copy.setParentId(contextObject.getParentId());
+        copy.setCreated(contextObject.getCreated());
+        copy.setLastUpdated(contextObject.getLastUpdated());
+        copy.setMediaType(contextObject.getMediaType());
+        copy.setState(contextObject.getState());
+        copy.setFieldsets(contextObject.getFieldsets() != null ? new ArrayList<>(contextObject.getFieldsets()) : null);
+        copy.setDataElements(contextObject.getDataElements() != null ? new HashSet<>(contextObject.getDataElements()) : null);
+        return copy;
+    }
+
+    private static String key(String type, String id) {
+        return type + "/" + id;
+    }
+}
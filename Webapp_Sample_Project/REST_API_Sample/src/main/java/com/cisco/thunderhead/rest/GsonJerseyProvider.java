@@ -8,6 +8,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
@@ -29,11 +30,14 @@ public class GsonJerseyProvider implements MessageBodyWriter<Object>,
         MessageBodyReader<Object> {
 
     private static final String UTF_8 = "UTF-8";
+    // Gson is thread-safe, so one instance is shared by every request
+    private static final Gson GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
 
     @Override
     public boolean isReadable(Class<?> type, Type genericType,
                               java.lang.annotation.Annotation[] annotations, MediaType mediaType) {
-        return true;
+        // resources that read the body themselves, such as bulk, take an InputStream
+        return !InputStream.class.isAssignableFrom(type);
     }
 
     @Override
@@ -56,7 +60,8 @@ public class GsonJerseyProvider implements MessageBodyWriter<Object>,
     @Override
     public boolean isWriteable(Class<?> type, Type genericType,
                                Annotation[] annotations, MediaType mediaType) {
-        return true;
+        // resources that write the body themselves, such as search, return a StreamingOutput
+        return !StreamingOutput.class.isAssignableFrom(type);
     }
 
     @Override
@@ -79,7 +84,7 @@ public class GsonJerseyProvider implements MessageBodyWriter<Object>,
         }
     }
 
-    private Gson getGson() {
-        return new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
+    static Gson getGson() {
+        return GSON;
     }
 }
@@ -5,12 +5,21 @@ import com.cisco.thunderhead.client.ContextServiceClient;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Initializes the application.  Invoked during startup/shutdown.
  */
 public class RestApiContextListener implements ServletContextListener {
+    private static final String BULK_CONCURRENCY_PROP = "bulk.concurrency";
+    private static final int DEFAULT_BULK_CONCURRENCY = 8;
     private static ContextServiceClient contextServiceClient;
+    private static SingleFlightClient singleFlightClient;
+    private static EntityCache entityCache;
+    private static ExecutorService bulkExecutor;
+    private static AsyncExecutor asyncExecutor;
 
     /**
      * Invoked during web application startup.
@@ -21,6 +30,18 @@ public class RestApiContextListener implements ServletContextListener {
 
         String connectionData = Utils.getConnectionData();
         contextServiceClient = Utils.getInitializedContextServiceClient(connectorPropertyFile, connectionData);
+        singleFlightClient = new SingleFlightClient(contextServiceClient);
+        entityCache = EntityCache.fromSystemProperties();
+        asyncExecutor = AsyncExecutor.fromSystemProperties();
+
+        // bounds how many bulk operations run at once, over all bulk requests
+        int bulkConcurrency = Integer.getInteger(BULK_CONCURRENCY_PROP, DEFAULT_BULK_CONCURRENCY);
+        AtomicInteger threadNumber = new AtomicInteger();
+        bulkExecutor = Executors.newFixedThreadPool(bulkConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -28,10 +49,34 @@ public class RestApiContextListener implements ServletContextListener {
      */
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+        if (bulkExecutor != null) {
+            bulkExecutor.shutdownNow();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
     }
 
     public static ContextServiceClient getContextServiceClient() {
         return contextServiceClient;
     }
+
+    public static SingleFlightClient getSingleFlightClient() {
+        return singleFlightClient;
+    }
+
+    public static EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    public static ExecutorService getBulkExecutor() {
+        return bulkExecutor;
+    }
+
+    public static AsyncExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
 }
@@ -0,0 +1,125 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextBean;
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Where the next page of a search starts.
+ *
+ * Context Service returns search results newest first (by lastUpdated), so the next page is the same search, ending
+ * at the lastUpdated of the last object of this page.  The end date is inclusive, so the IDs of the objects of this
+ * page updated at that same time are kept too, to leave them out of the next page.  Paging relies on that order, so
+ * results which aren't newest first are turned down by {@link #checkNewestFirst(List)} rather than paged through.
+ *
+ * Sent to clients as an opaque string: Base64 (URL-safe) of the JSON.
+ */
+public class SearchCursor {
+    private String endDate;
+    private List<String> seen = new ArrayList<>();
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * The end date to search the next page up to: the cursor's, or the one the client searched with if that is
+     * earlier, so that a cursor never widens the search.
+     * @param requested the endDate the client searched with, or null if none
+     */
+    public String endDate(String requested) throws ContextException {
+        if (requested == null) {
+            return endDate;
+        }
+        return time(requested) < time(endDate) ? requested : endDate;
+    }
+
+    /**
+     * The IDs of the objects updated at the end date that have already been returned.
+     */
+    public List<String> getSeen() {
+        return seen != null ? seen : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the cursor for the page after the given one, or null if the page is empty or has an object without
+     * lastUpdated, so the next page can't be found.
+     * @param previous the cursor the page was searched with, or null for the first page
+     */
+    public static SearchCursor after(List<ContextObject> page, SearchCursor previous) {
+        if (page.isEmpty() || page.get(page.size() - 1).getLastUpdated() == null) {
+            return null;
+        }
+        SearchCursor cursor = new SearchCursor();
+        cursor.endDate = page.get(page.size() - 1).getLastUpdated().toString();
+        // a page of objects all updated at the same time as the end of the last page
+        if (previous != null && cursor.endDate.equals(previous.endDate)) {
+            cursor.seen.addAll(previous.getSeen());
+        }
+        for (int i = page.size() - 1; i >= 0 && page.get(i).getLastUpdated() != null
+                && cursor.endDate.equals(page.get(i).getLastUpdated().toString()); i--) {
+            cursor.seen.add(page.get(i).getId().toString());
+        }
+        return cursor;
+    }
+
+    /**
+     * Checks that search results are newest first, as each page ends at the lastUpdated of its last object, and an
+     * object listed after an older one would never be returned.  Objects without lastUpdated are not checked.
+     * @throws IllegalStateException if they are in some other order
+     */
+    public static void checkNewestFirst(List<? extends ContextBean> results) {
+        long previous = Long.MAX_VALUE;
+        for (ContextBean contextBean : results) {
+            if (contextBean.getLastUpdated() == null) {
+                continue;
+            }
+            long lastUpdated = contextBean.getLastUpdated().getDate().getTime();
+            if (lastUpdated > previous) {
+                throw new IllegalStateException("search results are not newest first, so they can't be paged through: "
+                        + contextBean.getId() + " was updated at " + contextBean.getLastUpdated() + ", after the one before it");
+            }
+            previous = lastUpdated;
+        }
+    }
+
+    public String encode(Gson gson) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor sent by a client, or returns null if there is none.
+     */
+    public static SearchCursor decode(String encoded, Gson gson) throws ContextException {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            SearchCursor cursor = gson.fromJson(json, SearchCursor.class);
+            if (cursor == null || cursor.endDate == null) {
+                throw new ContextException("invalid cursor " + encoded);
+            }
+            return cursor;
+        } catch (IllegalArgumentException | JsonParseException e) {
+            throw new ContextException("invalid cursor " + encoded, e);
+        }
+    }
+
+    private static long time(String date) throws ContextException {
+        try {
+            return new RFC3339Date(date).getDate().getTime();
+        } catch (ParseException e) {
+            throw new ContextException("invalid date " + date, e);
+        }
+    }
+}
@@ -19,6 +19,11 @@ public class SearchParams {
 
     @ExposeMember public Map<String,List<String>> query;
 
+    // optional: the most objects to return, and where to start, from the X-Next-Cursor header of the previous page
+    @ExposeMember public Integer limit;
+
+    @ExposeMember public String cursor;
+
     public SearchParams(String operation, Map<String,List<String>> query) {
         this.operation = operation;
         this.query = query;
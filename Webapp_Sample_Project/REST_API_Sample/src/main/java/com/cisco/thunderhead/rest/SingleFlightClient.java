@@ -0,0 +1,116 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.client.ContextServiceClient;
+import com.cisco.thunderhead.client.Operation;
+import com.cisco.thunderhead.client.SearchParameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Reads from Context Service, sharing one call among concurrent identical requests.  While an object is being
+ * fetched, or a search is running, further requests for the same object or the same search wait for that call and
+ * get its result (or its exception) rather than making their own.  Once the call returns the next request makes a
+ * new one, so this doesn't cache anything.
+ *
+ * This is used for searches, and for fetching an object that is about to be changed when it isn't cached.  GETs of
+ * an object go through EntityCache instead, which already makes concurrent requests for an object wait for a
+ * single fetch.
+ *
+ * Results are shared between requests, so they must not be modified: an object that is about to be changed is
+ * copied first.
+ */
+public class SingleFlightClient {
+    private final ContextServiceClient contextServiceClient;
+    private final ConcurrentMap<String, CompletableFuture<ContextObject>> gets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<Object>, CompletableFuture<List<ContextObject>>> searches = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder sharedCalls = new LongAdder();
+
+    public SingleFlightClient(ContextServiceClient contextServiceClient) {
+        this.contextServiceClient = contextServiceClient;
+    }
+
+    public ContextObject getContextObject(String type, String id) {
+        return share(gets, type + "/" + id, () -> contextServiceClient.getContextObject(type, id));
+    }
+
+    public List<ContextObject> search(SearchParameters searchParameters, Operation operation) {
+        return share(searches, searchKey(searchParameters, operation),
+                () -> contextServiceClient.search(ContextObject.class, searchParameters, operation));
+    }
+
+    /**
+     * Returns the number of calls made to Context Service.
+     */
+    long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of requests that shared a call made for another request.
+     */
+    long getSharedCalls() {
+        return sharedCalls.sum();
+    }
+
+    private <K, V> V share(ConcurrentMap<K, CompletableFuture<V>> inFlight, K key, Supplier<V> call) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            sharedCalls.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                // thrown as it was to the request that made the call, so that it maps to the same response
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        calls.increment();
+        V result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        // removed first, so that a request arriving from now on makes a new call
+        inFlight.remove(key, future);
+        future.complete(result);
+        return result;
+    }
+
+    /**
+     * Returns a key that is the same for searches that differ only in the order of their fields or of the values of
+     * a field.
+     */
+    static List<Object> searchKey(SearchParameters searchParameters, Operation operation) {
+        Map<String, List<String>> normalized = new TreeMap<>();
+        for (Map.Entry<String, List<String>> entry : searchParameters.entrySet()) {
+            List<String> values = entry.getValue() != null ? new ArrayList<>(entry.getValue()) : new ArrayList<>();
+            Collections.sort(values, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+            normalized.put(entry.getKey(), values);
+        }
+        return Arrays.asList(operation, normalized);
+    }
+}
@@ -0,0 +1,235 @@
+package com.cisco.thunderhead.rest;
+
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests running suspended requests, without Tomcat or Context Service.
+ */
+public class AsyncExecutorTest {
+
+    @Test
+    public void testResume() throws Exception {
+        AsyncExecutor executor = new AsyncExecutor(2, 2, 30, true);
+        try {
+            FakeAsyncResponse ok = new FakeAsyncResponse();
+            executor.submit(ok, () -> Response.accepted().build());
+            assertEquals(202, ((Response) ok.await()).getStatus());
+            assertEquals(30, ok.timeoutSeconds);
+
+            // exceptions go to ContextExceptionMapper
+            FakeAsyncResponse failed = new FakeAsyncResponse();
+            ContextException exception = new ContextException("bad request");
+            executor.submit(failed, () -> {
+                throw exception;
+            });
+            assertSame(exception, failed.await());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadShedding() throws Exception {
+        testLoadShedding(false);
+        // the same with virtual threads, when the JVM running the test has them
+        testLoadShedding(true);
+    }
+
+    private void testLoadShedding(boolean virtualThreads) throws Exception {
+        AsyncExecutor executor = new AsyncExecutor(1, 1, 30, virtualThreads);
+        try {
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger calls = new AtomicInteger();
+
+            FakeAsyncResponse running = new FakeAsyncResponse();
+            executor.submit(running, () -> {
+                calls.incrementAndGet();
+                blocked.countDown();
+                release.await();
+                return Response.ok().build();
+            });
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            FakeAsyncResponse waiting = new FakeAsyncResponse();
+            executor.submit(waiting, () -> {
+                calls.incrementAndGet();
+                return Response.ok().build();
+            });
+
+            // running one, and waiting one, so this is turned away
+            FakeAsyncResponse rejected = new FakeAsyncResponse();
+            executor.submit(rejected, () -> {
+                calls.incrementAndGet();
+                return Response.ok().build();
+            });
+            Response response = (Response) rejected.await();
+            assertEquals(503, response.getStatus());
+            assertEquals("1", response.getHeaderString("Retry-After"));
+            assertFalse(waiting.isDone());
+
+            release.countDown();
+            assertEquals(200, ((Response) running.await()).getStatus());
+            assertEquals(200, ((Response) waiting.await()).getStatus());
+            assertEquals(2, calls.get());
+
+            // there is room again
+            FakeAsyncResponse later = new FakeAsyncResponse();
+            executor.submit(later, () -> Response.ok().build());
+            assertEquals(200, ((Response) later.await()).getStatus());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // room for the request after the ones that time out to wait too
+        AsyncExecutor executor = new AsyncExecutor(1, 2, 5, false);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            FakeAsyncResponse running = new FakeAsyncResponse();
+            executor.submit(running, () -> {
+                release.await();
+                return Response.ok().build();
+            });
+
+            AtomicInteger calls = new AtomicInteger();
+            FakeAsyncResponse waiting = new FakeAsyncResponse();
+            executor.submit(waiting, () -> {
+                calls.incrementAndGet();
+                return Response.ok().build();
+            });
+
+            // both time out, which resumes them with 503
+            running.timeOut();
+            waiting.timeOut();
+            assertEquals(503, ((Response) running.await()).getStatus());
+            assertEquals(503, ((Response) waiting.await()).getStatus());
+
+            // the waiting call is never made once it has timed out; the later one waits behind it
+            release.countDown();
+            FakeAsyncResponse later = new FakeAsyncResponse();
+            executor.submit(later, () -> Response.ok().build());
+            assertEquals(200, ((Response) later.await()).getStatus());
+            assertEquals(0, calls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Records what the request is resumed with; only the first resume counts, as in Jersey.
+     */
+    private static class FakeAsyncResponse implements AsyncResponse {
+        private final CountDownLatch resumed = new CountDownLatch(1);
+        private volatile Object result;
+        private volatile TimeoutHandler timeoutHandler;
+        private volatile long timeoutSeconds;
+
+        Object await() throws InterruptedException {
+            assertTrue("should have been resumed", resumed.await(10, TimeUnit.SECONDS));
+            return result;
+        }
+
+        void timeOut() {
+            timeoutHandler.handleTimeout(this);
+        }
+
+        private synchronized boolean complete(Object result) {
+            if (isDone()) {
+                return false;
+            }
+            this.result = result;
+            resumed.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean resume(Object response) {
+            return complete(response);
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            return complete(response);
+        }
+
+        @Override
+        public boolean cancel() {
+            return complete(null);
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            return complete(null);
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            return complete(null);
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return !isDone();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return resumed.getCount() == 0;
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            timeoutSeconds = unit.toSeconds(time);
+            return true;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            timeoutHandler = handler;
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cisco.thunderhead.rest;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests reading the operations of a bulk request.
+ */
+public class BulkOperationTest {
+    private static final String CREATE = "{\"op\":\"create\",\"object\":{\"type\":\"pod\",\"fieldsets\":[\"cisco.base.pod\"]," +
+            "\"dataElements\":[{\"key\":\"Context_Notes\",\"value\":\"bulk\",\"type\":\"string\"}]}}";
+    private static final String DELETE = "{\"op\":\"delete\",\"type\":\"pod\",\"id\":\"6a4ba6e0-6d5c-11e7-b5ba-a52c0ba4ee68\"}";
+
+    private final Gson gson = GsonJerseyProvider.getGson();
+
+    @Test
+    public void testJsonArray() {
+        List<BulkOperation> operations = read("[" + CREATE + "," + DELETE + "]", 10);
+        assertEquals(2, operations.size());
+        assertEquals(BulkOperation.CREATE, operations.get(0).getOp());
+        assertEquals("pod", operations.get(0).getObject().getType());
+        assertEquals("bulk", operations.get(0).getObject().getDataElements().get(0).getValue());
+        assertNull(operations.get(0).getId());
+        assertEquals(BulkOperation.DELETE, operations.get(1).getOp());
+        assertEquals("6a4ba6e0-6d5c-11e7-b5ba-a52c0ba4ee68", operations.get(1).getId());
+
+        assertEquals(0, read("[]", 10).size());
+    }
+
+    @Test
+    public void testNdjson() {
+        List<BulkOperation> operations = read(CREATE + "\n" + DELETE + "\n" + CREATE + "\n", 10);
+        assertEquals(3, operations.size());
+        assertEquals(BulkOperation.DELETE, operations.get(1).getOp());
+        assertEquals(BulkOperation.CREATE, operations.get(2).getOp());
+    }
+
+    @Test
+    public void testInvalid() {
+        assertInvalid("[" + CREATE + "," + CREATE + "," + CREATE + "]", 2, "too many operations");
+        assertInvalid(CREATE + "\n" + CREATE + "\n" + CREATE, 2, "too many operations");
+        assertInvalid("[" + CREATE + "," + DELETE, 10, "operation 2 could not be read");
+        assertInvalid(CREATE + "\n{\"op\":", 10, "operation 1 could not be read");
+        assertInvalid("", 10, "operation 0 could not be read");
+    }
+
+    private List<BulkOperation> read(String json, int maxOperations) {
+        return BulkOperation.readAll(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), gson, maxOperations);
+    }
+
+    private void assertInvalid(String json, int maxOperations, String expectedMessage) {
+        try {
+            read(json, maxOperations);
+            fail("should have failed: " + json);
+        } catch (ContextException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+}
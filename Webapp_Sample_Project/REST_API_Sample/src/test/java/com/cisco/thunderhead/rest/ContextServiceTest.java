@@ -0,0 +1,91 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.client.ContextServiceClient;
+import com.cisco.thunderhead.errors.ApiError;
+import com.cisco.thunderhead.errors.ApiErrorType;
+import com.cisco.thunderhead.errors.ApiException;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests changing a cached object, against a stand-in for Context Service which only answers reads.
+ */
+public class ContextServiceTest {
+    private static final String POD_TYPE = "pod";
+
+    private final List<String> getCalls = new ArrayList<>();
+    private final EntityCache entityCache = new EntityCache(100, 30, System::nanoTime);
+    private final ContextService contextService = new ContextService(client(), null, entityCache, null);
+
+    /**
+     * A change turned down because the cached object was out of date is made once more to the current object.
+     */
+    @Test
+    public void testConflictIsRetried() {
+        String id = cachedPod();
+        List<ContextObject> changed = new ArrayList<>();
+
+        contextService.changeObject(POD_TYPE, id, contextObject -> {
+            changed.add(contextObject);
+            if (changed.size() == 1) {
+                throw new ApiException(new ApiError(ApiErrorType.CONFLICT, "the object has been changed", null));
+            }
+        });
+        assertEquals(2, changed.size());
+        assertNotSame(changed.get(0), changed.get(1));
+        assertEquals(1, getCalls.size());
+    }
+
+    /**
+     * Any other error, such as a bad request, is thrown as it is, without making the change again.
+     */
+    @Test
+    public void testBadRequestIsNotRetried() {
+        String id = cachedPod();
+        ApiException badRequest = new ApiException(new ApiError(ApiErrorType.ELEMENT_DATA_TYPE_ERROR, "bad request", null));
+        List<ContextObject> changed = new ArrayList<>();
+
+        try {
+            contextService.changeObject(POD_TYPE, id, contextObject -> {
+                changed.add(contextObject);
+                throw badRequest;
+            });
+            fail("the error should have been thrown");
+        } catch (ApiException e) {
+            assertSame(badRequest, e);
+        }
+        assertEquals(1, changed.size());
+        assertEquals("the object should not have been fetched", 0, getCalls.size());
+        assertNull("the cached object should have been invalidated", entityCache.take(POD_TYPE, id));
+    }
+
+    private String cachedPod() {
+        ContextObject pod = new ContextObject(POD_TYPE);
+        pod.setId(UUID.randomUUID());
+        entityCache.put(pod);
+        return pod.getId().toString();
+    }
+
+    private ContextServiceClient client() {
+        return (ContextServiceClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ContextServiceClient.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("getContextObject")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            getCalls.add((String) args[1]);
+            ContextObject contextObject = new ContextObject((String) args[0]);
+            contextObject.setId(UUID.fromString((String) args[1]));
+            return contextObject;
+        });
+    }
+}
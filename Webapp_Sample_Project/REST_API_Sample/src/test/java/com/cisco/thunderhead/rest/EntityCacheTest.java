@@ -0,0 +1,99 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the object cache, without Context Service.
+ */
+public class EntityCacheTest {
+    private static final String POD_TYPE = "pod";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final BiFunction<String, String, ContextObject> loader = (type, id) -> {
+        fetches.incrementAndGet();
+        ContextObject contextObject = new ContextObject(type);
+        contextObject.setId(UUID.fromString(id));
+        return contextObject;
+    };
+
+    @Test
+    public void testReadThroughAndExpiry() {
+        EntityCache cache = new EntityCache(100, 30, nanos::get);
+        String id = UUID.randomUUID().toString();
+
+        ContextObject first = cache.get(POD_TYPE, id, loader);
+        assertSame("should be cached", first, cache.get(POD_TYPE, id, loader));
+        assertEquals(1, fetches.get());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertNotSame("should have expired", first, cache.get(POD_TYPE, id, loader));
+        assertEquals(2, fetches.get());
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hitCount"));
+        assertEquals(2L, stats.get("missCount"));
+        assertEquals(1L, stats.get("evictionCount"));
+    }
+
+    @Test
+    public void testTakeAndInvalidate() {
+        EntityCache cache = new EntityCache(100, 30, nanos::get);
+        String id = UUID.randomUUID().toString();
+
+        // an update or delete takes the cached object, so the next read fetches it again
+        ContextObject cached = cache.get(POD_TYPE, id, loader);
+        cached.setCustomerId(UUID.randomUUID());
+        cached.setFieldsets(new ArrayList<>(Collections.singletonList("cisco.base.pod")));
+        ContextObject taken = cache.take(POD_TYPE, id);
+        assertEquals(1, fetches.get());
+        assertNotSame(cached, cache.get(POD_TYPE, id, loader));
+        assertEquals(2, fetches.get());
+
+        // it is a copy, which can be changed without changing the object a concurrent GET may have
+        assertNotSame(cached, taken);
+        assertEquals(cached.getId(), taken.getId());
+        assertEquals(cached.getCustomerId(), taken.getCustomerId());
+        assertEquals(cached.getFieldsets(), taken.getFieldsets());
+        taken.getFieldsets().add("cisco.base.ccc.pod");
+        taken.setCustomerId(null);
+        assertEquals(1, cached.getFieldsets().size());
+        assertNotNull(cached.getCustomerId());
+
+        cache.invalidate(POD_TYPE, id);
+        assertNull("not cached", cache.take(POD_TYPE, id));
+        assertEquals(2, fetches.get());
+
+        // created objects are cached
+        ContextObject created = loader.apply(POD_TYPE, UUID.randomUUID().toString());
+        cache.put(created);
+        assertSame(created, cache.get(POD_TYPE, created.getId().toString(), loader));
+    }
+
+    @Test
+    public void testSizeBound() {
+        EntityCache cache = new EntityCache(10, 30, nanos::get);
+        for (int i = 0; i < 100; i++) {
+            cache.get(POD_TYPE, UUID.randomUUID().toString(), loader);
+        }
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(10L, stats.get("size"));
+        assertEquals(90L, stats.get("evictionCount"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.util.RFC3339Date;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the cursor used to page through search results.
+ */
+public class SearchCursorTest {
+    private static final long TIME = 1500000000000L;
+
+    private final Gson gson = GsonJerseyProvider.getGson();
+
+    @Test
+    public void testAfter() {
+        // newest first, the last two updated at the same time
+        ContextObject newest = pod(TIME + 2000);
+        ContextObject tied1 = pod(TIME);
+        ContextObject tied2 = pod(TIME);
+        SearchCursor cursor = SearchCursor.after(Arrays.asList(newest, tied1, tied2), null);
+        assertEquals(new RFC3339Date(TIME).toString(), cursor.getEndDate());
+        assertEquals(Arrays.asList(tied2.getId().toString(), tied1.getId().toString()), cursor.getSeen());
+
+        // a page all updated at the same time as the end of the last one adds to what has been seen
+        ContextObject tied3 = pod(TIME);
+        SearchCursor next = SearchCursor.after(Collections.singletonList(tied3), cursor);
+        assertEquals(cursor.getEndDate(), next.getEndDate());
+        assertEquals(3, next.getSeen().size());
+        assertTrue(next.getSeen().contains(tied3.getId().toString()));
+
+        // an older page starts afresh
+        ContextObject older = pod(TIME - 1000);
+        next = SearchCursor.after(Arrays.asList(tied3, older), cursor);
+        assertEquals(new RFC3339Date(TIME - 1000).toString(), next.getEndDate());
+        assertEquals(Collections.singletonList(older.getId().toString()), next.getSeen());
+
+        assertNull(SearchCursor.after(new ArrayList<>(), null));
+    }
+
+    /**
+     * The next page ends at the cursor's end date, unless the client searched up to an earlier one.
+     */
+    @Test
+    public void testEndDate() {
+        SearchCursor cursor = SearchCursor.after(Collections.singletonList(pod(TIME)), null);
+        assertEquals(cursor.getEndDate(), cursor.endDate(null));
+        assertEquals(cursor.getEndDate(), cursor.endDate(new RFC3339Date(TIME + 1000).toString()));
+        String earlier = new RFC3339Date(TIME - 1000).toString();
+        assertEquals(earlier, cursor.endDate(earlier));
+        try {
+            cursor.endDate("yesterday");
+            fail("should have failed");
+        } catch (ContextException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("invalid date"));
+        }
+    }
+
+    @Test
+    public void testCheckNewestFirst() {
+        ContextObject noDate = pod(TIME);
+        noDate.setLastUpdated(null);
+        SearchCursor.checkNewestFirst(Arrays.asList(pod(TIME + 1000), pod(TIME + 1000), noDate, pod(TIME)));
+        SearchCursor.checkNewestFirst(new ArrayList<ContextObject>());
+        try {
+            SearchCursor.checkNewestFirst(Arrays.asList(pod(TIME + 1000), pod(TIME), pod(TIME + 500)));
+            fail("should have failed");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("search results are not newest first"));
+        }
+    }
+
+    @Test
+    public void testEncode() {
+        SearchCursor cursor = SearchCursor.after(Arrays.asList(pod(TIME + 1000), pod(TIME)), null);
+        String encoded = cursor.encode(gson);
+        // safe to use in a URL or header as it is
+        assertTrue(encoded, encoded.matches("[A-Za-z0-9_-]+"));
+
+        SearchCursor decoded = SearchCursor.decode(encoded, gson);
+        assertEquals(cursor.getEndDate(), decoded.getEndDate());
+        assertEquals(cursor.getSeen(), decoded.getSeen());
+
+        assertNull(SearchCursor.decode(null, gson));
+        assertNull(SearchCursor.decode("", gson));
+        for (String invalid : new String[]{"not a cursor!", "e30", "bm90IGpzb24"}) {
+            try {
+                SearchCursor.decode(invalid, gson);
+                fail("should have failed: " + invalid);
+            } catch (ContextException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("invalid cursor"));
+            }
+        }
+    }
+
+    private static ContextObject pod(long lastUpdated) {
+        ContextObject pod = new ContextObject("pod");
+        pod.setId(UUID.randomUUID());
+        pod.setLastUpdated(new RFC3339Date(lastUpdated));
+        return pod;
+    }
+}
@@ -0,0 +1,215 @@
+package com.cisco.thunderhead.rest;
+
+import com.cisco.thunderhead.ContextObject;
+import com.cisco.thunderhead.client.ContextServiceClient;
+import com.cisco.thunderhead.client.Operation;
+import com.cisco.thunderhead.client.SearchParameters;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests sharing calls among concurrent identical requests, against a stand-in for Context Service that takes a
+ * while to answer.
+ */
+public class SingleFlightClientTest {
+    private static final int REQUESTS = 200;
+
+    private final AtomicInteger getCalls = new AtomicInteger();
+    private final AtomicInteger searchCalls = new AtomicInteger();
+    // each call waits for this, then takes the latency
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private volatile long latencyMillis;
+    private volatile RuntimeException failure;
+
+    @Test
+    public void testGetFanIn() throws Exception {
+        SingleFlightClient client = new SingleFlightClient(slowClient());
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            String id = UUID.randomUUID().toString();
+            List<Future<ContextObject>> results = submitAll(executor, REQUESTS, i -> () -> client.getContextObject("pod", id));
+            // the first request's call is held up until all the others are waiting for it
+            awaitShared(client, REQUESTS - 1);
+            release.countDown();
+
+            ContextObject first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<ContextObject> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, getCalls.get());
+            assertEquals(1, client.getCalls());
+
+            // once it has returned, the next request makes its own call
+            assertNotSame(first, client.getContextObject("pod", id));
+            assertEquals(2, getCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStress() throws Exception {
+        SingleFlightClient client = new SingleFlightClient(slowClient());
+        latencyMillis = 20;
+        String[] ids = new String[4];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            int rounds = 10;
+            for (int round = 0; round < rounds; round++) {
+                List<Future<ContextObject>> results = submitAll(executor, REQUESTS, i -> () -> client.getContextObject("pod", ids[i % ids.length]));
+                for (int i = 0; i < REQUESTS; i++) {
+                    // every request gets the object it asked for
+                    assertEquals(ids[i % ids.length], results.get(i).get(10, TimeUnit.SECONDS).getId().toString());
+                }
+            }
+            int requests = rounds * REQUESTS;
+            assertEquals(requests, client.getCalls() + client.getSharedCalls());
+            assertEquals(getCalls.get(), client.getCalls());
+            // at least a call per object per round, and far fewer than a call per request
+            assertTrue("calls " + getCalls.get(), getCalls.get() >= rounds * ids.length);
+            assertTrue("calls " + getCalls.get(), getCalls.get() < requests / 4);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSearchFanIn() throws Exception {
+        SingleFlightClient client = new SingleFlightClient(slowClient());
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            // the same search, with the fields and values in a different order for every other request
+            List<Future<List<ContextObject>>> results = submitAll(executor, REQUESTS, i -> () -> {
+                SearchParameters searchParameters = new SearchParameters();
+                if (i % 2 == 0) {
+                    searchParameters.put("type", Collections.singletonList("pod"));
+                    searchParameters.put("Context_Notes", Arrays.asList("a", "b"));
+                } else {
+                    searchParameters.put("Context_Notes", Arrays.asList("b", "a"));
+                    searchParameters.put("type", Collections.singletonList("pod"));
+                }
+                return client.search(searchParameters, Operation.OR);
+            });
+            awaitShared(client, REQUESTS - 1);
+            release.countDown();
+            for (Future<List<ContextObject>> result : results) {
+                assertSame(results.get(0).get(10, TimeUnit.SECONDS), result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, searchCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // a different operation is a different search
+        SearchParameters searchParameters = new SearchParameters();
+        searchParameters.put("Context_Notes", Arrays.asList("a", "b"));
+        searchParameters.put("type", Collections.singletonList("pod"));
+        assertEquals(SingleFlightClient.searchKey(searchParameters, Operation.OR),
+                SingleFlightClient.searchKey(searchParameters, Operation.OR));
+        assertFalse(SingleFlightClient.searchKey(searchParameters, Operation.OR).equals(
+                SingleFlightClient.searchKey(searchParameters, Operation.AND)));
+    }
+
+    @Test
+    public void testFailureShared() throws Exception {
+        SingleFlightClient client = new SingleFlightClient(slowClient());
+        release = new CountDownLatch(1);
+        failure = new ContextException("object not found");
+        String id = UUID.randomUUID().toString();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<ContextObject>> results = submitAll(executor, 10, i -> () -> client.getContextObject("pod", id));
+            awaitShared(client, 9);
+            release.countDown();
+            for (Future<ContextObject> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("should have failed");
+                } catch (ExecutionException e) {
+                    assertSame(failure, e.getCause());
+                }
+            }
+            assertEquals(1, getCalls.get());
+
+            // a failed call isn't remembered
+            failure = null;
+            client.getContextObject("pod", id);
+            assertEquals(2, getCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> List<Future<T>> submitAll(ExecutorService executor, int count, IntFunction<Callable<T>> request) {
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(executor.submit(request.apply(i)));
+        }
+        return results;
+    }
+
+    private static void awaitShared(SingleFlightClient client, long sharedCalls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (client.getSharedCalls() < sharedCalls) {
+            assertTrue("only " + client.getSharedCalls() + " waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stands in for Context Service, answering getContextObject() and search() after the latency.
+     */
+    private ContextServiceClient slowClient() {
+        return (ContextServiceClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ContextServiceClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getContextObject":
+                            getCalls.incrementAndGet();
+                            break;
+                        case "search":
+                            searchCalls.incrementAndGet();
+                            break;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                    release.await();
+                    Thread.sleep(latencyMillis);
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (method.getName().equals("search")) {
+                        return new ArrayList<>(Collections.singletonList(new ContextObject("pod")));
+                    }
+                    ContextObject contextObject = new ContextObject((String) args[0]);
+                    contextObject.setId(UUID.fromString((String) args[1]));
+                    return contextObject;
+                });
+    }
+}